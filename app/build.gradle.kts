@@ -40,6 +40,7 @@ dependencies {
     implementation(libs.volley)
     implementation(libs.work.runtime)
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
     implementation ("androidx.recyclerview:recyclerview:1.3.2")
@@ -22,6 +22,8 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.RequestBuilder;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.signature.ObjectKey;
+import com.example.falconrepresentator.Models.CatalogView;
 import com.example.falconrepresentator.Models.OrderManager;
 import com.example.falconrepresentator.Models.Product;
 import com.example.falconrepresentator.Models.ProductVariant;
@@ -30,7 +32,6 @@ import com.example.falconrepresentator.R;
 import com.example.falconrepresentator.SessionManager;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Locale;
 import java.util.Map;
 
@@ -41,16 +42,26 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ViewHold
     }
 
     private final Context context;
-    private final ArrayList<Product> products;
+    private CatalogView products;
     private final OnBillActionListener billActionListener;
 
 
-    public ProductAdapter(Context context, ArrayList<Product> products, OnBillActionListener listener) {
+    public ProductAdapter(Context context, CatalogView products, OnBillActionListener listener) {
         this.context = context;
         this.products = products;
         this.billActionListener = listener;
     }
 
+    // Swaps the backing rows, e.g. between a CatalogPager and a page of search results.
+    public void setProducts(CatalogView products) {
+        this.products = products;
+        notifyDataSetChanged();
+    }
+
+    public CatalogView getProducts() {
+        return products;
+    }
+
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -60,12 +71,19 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ViewHold
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Product product = products.get(position);
+        final CatalogView rows = products;
+        if (!rows.isLoaded(position)) {
+            // Row of a page that is still loading; the pager rebinds it once the page arrives.
+            bindPlaceholder(holder);
+            return;
+        }
 
-        holder.tvProductName.setText(product.getName());
+        // Bound from the columns; a Product is only built when the row is added to the bill.
+        holder.tvProductName.setText(rows.getName(position));
 
         // --- NEW VARIANT DISPLAY LOGIC ---
-        boolean hasVariants = product.getVariants() != null && !product.getVariants().isEmpty();
+        int variantCount = rows.getVariantCount(position);
+        boolean hasVariants = variantCount > 0;
 
         if (hasVariants) {
             holder.tvProductPrice.setVisibility(View.GONE);
@@ -74,14 +92,14 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ViewHold
 
             // Inflate a dedicated layout for each variant for better formatting
             LayoutInflater inflater = LayoutInflater.from(context);
-            for (ProductVariant variant : product.getVariants()) {
+            for (int v = 0; v < variantCount; v++) {
                 View variantView = inflater.inflate(R.layout.list_item_product_variant_detail, holder.variantsContainer, false);
 
                 TextView variantName = variantView.findViewById(R.id.tv_variant_name_detail);
                 TextView variantPrice = variantView.findViewById(R.id.tv_variant_price_detail);
 
-                variantName.setText(variant.getVariantName());
-                variantPrice.setText(String.format(Locale.getDefault(), "Rs. %.2f", variant.getPrice()));
+                variantName.setText(rows.getVariantName(position, v));
+                variantPrice.setText(String.format(Locale.getDefault(), "Rs. %.2f", rows.getVariantPrice(position, v)));
 
                 holder.variantsContainer.addView(variantView);
             }
@@ -89,20 +107,23 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ViewHold
             // If no variants, show the main price and hide the variants container
             holder.tvProductPrice.setVisibility(View.VISIBLE);
             holder.variantsContainer.setVisibility(View.GONE);
-            holder.tvProductPrice.setText(String.format(Locale.getDefault(), "Rs. %.2f", product.getPrice()));
+            holder.tvProductPrice.setText(String.format(Locale.getDefault(), "Rs. %.2f", rows.getPrice(position)));
         }
         // --- END OF NEW LOGIC ---
 
 
         RequestBuilder<Drawable> requestBuilder;
-        String localPath = product.getLocalPath();
-        String imageUrl = product.getMainImage();
+        // The grid-sized rendition, so a cell never decodes a full-size photo. Memory-cached,
+        // keyed on the file's timestamp in case the image is downloaded again.
+        String localPath = rows.getThumbPath(position) != null ? rows.getThumbPath(position) : rows.getLocalPath(position);
+        String imageUrl = rows.getImageUrl(position);
+        File localFile = localPath != null && !localPath.isEmpty() ? new File(localPath) : null;
 
-        if (localPath != null && !localPath.isEmpty() && new File(localPath).exists()) {
+        if (localFile != null && localFile.exists()) {
             requestBuilder = Glide.with(context)
-                    .load(new File(localPath))
-                    .diskCacheStrategy(DiskCacheStrategy.NONE)
-                    .skipMemoryCache(true);
+                    .load(localFile)
+                    .signature(new ObjectKey(localFile.lastModified()))
+                    .diskCacheStrategy(DiskCacheStrategy.NONE);
         } else {
             requestBuilder = Glide.with(context)
                     .load(imageUrl)
@@ -113,13 +134,21 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ViewHold
                 .error(R.drawable.error_image)
                 .into(holder.ivProductImage);
 
+        final int itemId = rows.getItemId(position);
         holder.itemView.setOnClickListener(v -> {
             Intent intent = new Intent(context, ProductDetailActivity.class);
-            intent.putExtra("PRODUCT_ID", product.getItemId());
+            intent.putExtra("PRODUCT_ID", itemId);
             context.startActivity(intent);
         });
 
+        final int row = position;
         holder.btnAddToBill.setOnClickListener(v -> {
+            // The row's page may have been evicted since it was bound. isLoaded asks the pager to
+            // load it again, and the row is rebound once it is back.
+            if (!rows.isLoaded(row) || rows.getItemId(row) != itemId) {
+                return;
+            }
+            Product product = rows.getProduct(row);
             if (hasVariants) {
                 showVariantSelectionDialog(product);
             } else {
@@ -133,6 +162,17 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ViewHold
         return products.size();
     }
 
+    private void bindPlaceholder(ViewHolder holder) {
+        holder.tvProductName.setText("");
+        holder.tvProductPrice.setVisibility(View.GONE);
+        holder.variantsContainer.removeAllViews();
+        holder.variantsContainer.setVisibility(View.GONE);
+        Glide.with(context).clear(holder.ivProductImage);
+        holder.ivProductImage.setImageResource(R.drawable.image_placeholder);
+        holder.itemView.setOnClickListener(null);
+        holder.btnAddToBill.setOnClickListener(null);
+    }
+
     private void showVariantSelectionDialog(Product product) {
         AlertDialog.Builder builder = new AlertDialog.Builder(context);
         LayoutInflater inflater = LayoutInflater.from(context);
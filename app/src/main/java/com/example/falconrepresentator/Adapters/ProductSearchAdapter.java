@@ -10,6 +10,7 @@ import android.widget.ImageButton;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
+import com.example.falconrepresentator.CatalogRepository;
 import com.example.falconrepresentator.Models.Product;
 import com.example.falconrepresentator.R;
 import java.util.ArrayList;
@@ -22,15 +23,16 @@ public class ProductSearchAdapter extends RecyclerView.Adapter<ProductSearchAdap
         void onProductAdded(Product product);
     }
 
+    private static final int MAX_RESULTS = 50;
+
     private final Context context;
-    private List<Product> productList; // The list currently displayed
-    private final List<Product> productListFull; // A copy of the full list for filtering
+    private final List<Product> productList = new ArrayList<>(); // The list currently displayed
+    private final CatalogRepository catalog; // Search goes to the products_fts index, not an in-memory copy
     private final OnProductAddListener listener;
 
-    public ProductSearchAdapter(Context context, List<Product> productList, OnProductAddListener listener) {
+    public ProductSearchAdapter(Context context, CatalogRepository catalog, OnProductAddListener listener) {
         this.context = context;
-        this.productList = new ArrayList<>(productList);
-        this.productListFull = new ArrayList<>(productList);
+        this.catalog = catalog;
         this.listener = listener;
     }
 
@@ -60,19 +62,14 @@ public class ProductSearchAdapter extends RecyclerView.Adapter<ProductSearchAdap
     private final Filter productFilter = new Filter() {
         @Override
         protected FilterResults performFiltering(CharSequence constraint) {
+            // Runs on the Filter's worker thread, so querying the database here is safe.
             List<Product> filteredList = new ArrayList<>();
             if (constraint == null || constraint.length() == 0) {
                 // If search is empty, we can show the full list or keep it empty
                 // For a search UI, it's better to show nothing until the user searches
                 // So we will return an empty list.
             } else {
-                String filterPattern = constraint.toString().toLowerCase(Locale.getDefault()).trim();
-                for (Product product : productListFull) {
-                    if (product.getName().toLowerCase(Locale.getDefault()).contains(filterPattern) ||
-                            (product.getSku() != null && product.getSku().toLowerCase(Locale.getDefault()).contains(filterPattern))) {
-                        filteredList.add(product);
-                    }
-                }
+                filteredList = catalog.searchProducts(constraint.toString(), 0, 0, MAX_RESULTS);
             }
             FilterResults results = new FilterResults();
             results.values = filteredList;
@@ -16,6 +16,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.RequestBuilder;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.signature.ObjectKey;
 import com.example.falconrepresentator.Models.ProductVariant;
 import com.example.falconrepresentator.R;
 import java.io.File;
@@ -104,7 +105,7 @@ public class ProductVariantAdapter extends RecyclerView.Adapter<ProductVariantAd
 
             // Image loading logic remains the same
             RequestBuilder<Drawable> requestBuilder;
-            String localPath = variant.getLocalPath();
+            String localPath = variant.getThumbPath() != null ? variant.getThumbPath() : variant.getLocalPath();
             String imageUrl = variant.getImageUrl();
 
             if (localPath != null && !localPath.isEmpty() && !localPath.equals("null")) {
@@ -112,8 +113,8 @@ public class ProductVariantAdapter extends RecyclerView.Adapter<ProductVariantAd
                 if (localFile.exists()) {
                     requestBuilder = Glide.with(itemView.getContext())
                             .load(localFile)
-                            .diskCacheStrategy(DiskCacheStrategy.NONE)
-                            .skipMemoryCache(true);
+                            .signature(new ObjectKey(localFile.lastModified()))
+                            .diskCacheStrategy(DiskCacheStrategy.NONE);
                 } else {
                     requestBuilder = Glide.with(itemView.getContext()).load(imageUrl);
                 }
@@ -48,7 +48,8 @@ public class AddNewCustomerActivity extends AppCompatActivity {
     private Button btnSaveCustomer;
     private ProgressBar progressBar;
 
-    private DatabaseHelper dbHelper;
+    private CustomerRepository customers;
+    private OutboxRepository outbox;
     private SessionManager sessionManager;
     private List<DatabaseHelper.Route> routesList = new ArrayList<>();
     private ArrayAdapter<DatabaseHelper.Route> routeAdapter;
@@ -58,7 +59,8 @@ public class AddNewCustomerActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_add_new_customer);
 
-        dbHelper = new DatabaseHelper(this);
+        customers = new CustomerRepository(this);
+        outbox = new OutboxRepository(this);
         sessionManager = new SessionManager(this);
 
         initializeViews();
@@ -88,7 +90,7 @@ public class AddNewCustomerActivity extends AppCompatActivity {
         Handler handler = new Handler(Looper.getMainLooper());
 
         executor.execute(() -> {
-            routesList = dbHelper.getAllRoutes();
+            routesList = customers.getRoutes();
             handler.post(() -> {
                 routeAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, routesList);
                 routeAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
@@ -161,11 +163,13 @@ public class AddNewCustomerActivity extends AppCompatActivity {
                     if (response.optBoolean("success")) {
                         int serverId = response.optInt("customer_id");
                         Log.d(TAG, "Online save successful. Server ID: " + serverId);
-                        dbHelper.insertSyncedCustomer(serverId, shopName, contactNumber, address, routeId, userId);
                         DatabaseHelper.Route route = (DatabaseHelper.Route) spinnerRoutes.getSelectedItem();
-                        OrderManager.Customer newCustomer = new OrderManager.Customer(serverId, shopName, route.name);
-                        newCustomer.setAddress(address);
-                        finishWithResult(newCustomer);
+                        DatabaseWriter.execute(() -> {
+                            customers.insertSyncedCustomer(serverId, shopName, contactNumber, address, routeId, userId);
+                            OrderManager.Customer newCustomer = new OrderManager.Customer(serverId, shopName, route.name);
+                            newCustomer.setAddress(address);
+                            finishWithResult(newCustomer);
+                        });
                     } else {
                         Log.w(TAG, "Online save failed on server. Saving offline instead.");
                         saveCustomerOffline(shopName, contactNumber, address, routeId, userId);
@@ -180,20 +184,22 @@ public class AddNewCustomerActivity extends AppCompatActivity {
     }
 
     private void saveCustomerOffline(String shopName, String contactNumber, String address, int routeId, int userId) {
-        long localId = dbHelper.savePendingCustomerLocally(shopName, contactNumber, address, routeId, userId);
-
-        if (localId != -1) {
-            Log.d(TAG, "Offline save successful. Local ID: " + localId);
-            DatabaseHelper.Route route = (DatabaseHelper.Route) spinnerRoutes.getSelectedItem();
-            OrderManager.Customer newCustomer = new OrderManager.Customer((int) -localId, shopName, route.name);
-            newCustomer.setAddress(address);
-            finishWithResult(newCustomer);
-        } else {
-            runOnUiThread(() -> {
-                setLoadingState(false);
-                Toast.makeText(this, "Failed to save customer locally.", Toast.LENGTH_SHORT).show();
-            });
-        }
+        DatabaseWriter.execute(() -> {
+            long localId = outbox.addPendingCustomer(shopName, contactNumber, address, routeId, userId);
+
+            if (localId != -1) {
+                Log.d(TAG, "Offline save successful. Local ID: " + localId);
+                DatabaseHelper.Route route = (DatabaseHelper.Route) spinnerRoutes.getSelectedItem();
+                OrderManager.Customer newCustomer = new OrderManager.Customer((int) -localId, shopName, route.name);
+                newCustomer.setAddress(address);
+                finishWithResult(newCustomer);
+            } else {
+                runOnUiThread(() -> {
+                    setLoadingState(false);
+                    Toast.makeText(this, "Failed to save customer locally.", Toast.LENGTH_SHORT).show();
+                });
+            }
+        });
     }
 
     private void finishWithResult(OrderManager.Customer newCustomer) {
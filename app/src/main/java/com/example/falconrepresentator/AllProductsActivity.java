@@ -17,9 +17,10 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 import com.example.falconrepresentator.Adapters.ProductAdapter;
+import com.example.falconrepresentator.Models.CatalogView;
+import com.example.falconrepresentator.Models.ColumnarCatalog;
 import com.example.falconrepresentator.Models.MainCategory;
 import com.example.falconrepresentator.Models.OrderManager;
-import com.example.falconrepresentator.Models.Product;
 import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton;
 
 import java.util.ArrayList;
@@ -32,9 +33,9 @@ public class AllProductsActivity extends AppCompatActivity implements OrderManag
     private static final String TAG = "AllProductsActivity";
     private RecyclerView rvAllProducts;
     private ProductAdapter adapter;
-    private ArrayList<Product> allProducts = new ArrayList<>();
-    private ArrayList<Product> filteredProducts = new ArrayList<>();
-    private DatabaseHelper dbHelper;
+    private CatalogPager catalogPager;
+    private CatalogView filteredProducts = ColumnarCatalog.EMPTY;
+    private CatalogRepository catalog;
     private ProgressBar progressBar;
     private SearchView searchView;
     private SwipeRefreshLayout swipeRefreshLayout;
@@ -44,6 +45,9 @@ public class AllProductsActivity extends AppCompatActivity implements OrderManag
     private ArrayAdapter<String> categorySpinnerAdapter;
     private int selectedCategoryId = 0;
     private ExtendedFloatingActionButton fabGoToBill;
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+    private final android.os.Handler searchHandler = new android.os.Handler(Looper.getMainLooper());
+    private int searchGeneration = 0;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -81,6 +85,10 @@ public class AllProductsActivity extends AppCompatActivity implements OrderManag
     protected void onDestroy() {
         super.onDestroy();
         OrderManager.getInstance().unregisterListener(this);
+        searchExecutor.shutdownNow();
+        if (catalogPager != null) {
+            catalogPager.close();
+        }
     }
 
     private void initializeViews() {
@@ -92,7 +100,7 @@ public class AllProductsActivity extends AppCompatActivity implements OrderManag
         spinnerCategories = findViewById(R.id.spinnerCategories);
         fabGoToBill = findViewById(R.id.fabGoToBill);
 
-        dbHelper = new DatabaseHelper(this);
+        catalog = new CatalogRepository(this);
         syncManager = new SyncManager(this);
     }
 
@@ -101,7 +109,7 @@ public class AllProductsActivity extends AppCompatActivity implements OrderManag
         android.os.Handler handler = new android.os.Handler(Looper.getMainLooper());
 
         executor.execute(() -> {
-            List<MainCategory> fetchedCategories = dbHelper.getAllMainCategories();
+            List<MainCategory> fetchedCategories = catalog.getMainCategories();
             handler.post(() -> {
                 mainCategoriesList.clear();
                 mainCategoriesList.add(0, new MainCategory(0, "All Categories"));
@@ -130,6 +138,7 @@ public class AllProductsActivity extends AppCompatActivity implements OrderManag
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                 selectedCategoryId = mainCategoriesList.get(position).getCategoryId();
                 Log.d(TAG, "Selected category: " + mainCategoriesList.get(position).getCategoryName() + " (ID: " + selectedCategoryId + ")");
+                new CategoryUsage(AllProductsActivity.this).mainCategoryOpened(selectedCategoryId);
                 loadProductsBasedOnCategorySelection(selectedCategoryId);
             }
             @Override
@@ -143,31 +152,37 @@ public class AllProductsActivity extends AppCompatActivity implements OrderManag
         }
         rvAllProducts.setVisibility(View.GONE);
 
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        android.os.Handler handler = new android.os.Handler(Looper.getMainLooper());
+        if (catalogPager != null) {
+            catalogPager.close();
+        }
+        Log.d(TAG, categoryId == 0 ? "Loading ALL products." : "Loading products for category ID: " + categoryId);
 
-        executor.execute(() -> {
-            ArrayList<Product> products;
-            if (categoryId == 0) {
-                products = dbHelper.getAllProducts();
-                Log.d(TAG, "Loading ALL products.");
-            } else {
-                products = dbHelper.getProductsForMainCategory(categoryId);
-                Log.d(TAG, "Loading products for category ID: " + categoryId);
+        // Only the first page is read before the grid is shown; the rest is paged in on scroll.
+        final CatalogPager pager = new CatalogPager(catalog, categoryId, 0, new CatalogPager.Listener() {
+            @Override
+            public void onPageLoaded(int start, int count) {
+                if (adapter.getProducts() == catalogPager) {
+                    adapter.notifyItemRangeChanged(start, count);
+                }
             }
 
-            handler.post(() -> {
-                allProducts.clear();
-                allProducts.addAll(products);
-                filter(searchView.getQuery().toString());
+            @Override
+            public void onSizeChanged() {
+                if (adapter.getProducts() == catalogPager) {
+                    adapter.notifyDataSetChanged();
+                }
+            }
+        });
+        catalogPager = pager;
+        pager.start(() -> {
+            filter(searchView.getQuery().toString());
 
-                progressBar.setVisibility(View.GONE);
-                rvAllProducts.setVisibility(View.VISIBLE);
+            progressBar.setVisibility(View.GONE);
+            rvAllProducts.setVisibility(View.VISIBLE);
 
-                if (allProducts.isEmpty()) {
-                    Toast.makeText(this, "No products found for this selection. Pull down to sync.", Toast.LENGTH_LONG).show();
-                }
-            });
+            if (pager.isEmpty()) {
+                Toast.makeText(this, "No products found for this selection. Pull down to sync.", Toast.LENGTH_LONG).show();
+            }
         });
     }
 
@@ -210,20 +225,22 @@ public class AllProductsActivity extends AppCompatActivity implements OrderManag
     }
 
     private void filter(String text) {
-        filteredProducts.clear();
-        if (text.isEmpty()) {
-            filteredProducts.addAll(allProducts);
-        } else {
-            text = text.toLowerCase(Locale.getDefault());
-            for (Product item : allProducts) {
-                if (item.getName().toLowerCase(Locale.getDefault()).contains(text) ||
-                        (item.getDescription() != null && item.getDescription().toLowerCase(Locale.getDefault()).contains(text)) ||
-                        (item.getSku() != null && item.getSku().toLowerCase(Locale.getDefault()).contains(text))) {
-                    filteredProducts.add(item);
-                }
-            }
+        final int generation = ++searchGeneration;
+        if (text.trim().isEmpty()) {
+            adapter.setProducts(catalogPager != null ? catalogPager : filteredProducts);
+            return;
         }
-        adapter.notifyDataSetChanged();
+
+        final int mainCategoryId = selectedCategoryId;
+        searchExecutor.execute(() -> {
+            ColumnarCatalog results = catalog.searchCatalog(text, mainCategoryId, 0, DatabaseHelper.SEARCH_RESULT_LIMIT);
+            searchHandler.post(() -> {
+                // Drop results for queries the user has already typed past.
+                if (generation != searchGeneration) return;
+                filteredProducts = results;
+                adapter.setProducts(filteredProducts);
+            });
+        });
     }
 
     @Override
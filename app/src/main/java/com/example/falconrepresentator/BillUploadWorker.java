@@ -57,9 +57,9 @@ public class BillUploadWorker extends Worker {
     @Override
     public Result doWork() {
         Log.d(TAG, "BillUploadWorker started.");
-        DatabaseHelper dbHelper = new DatabaseHelper(context);
+        OutboxRepository outbox = new OutboxRepository(context);
 
-        List<DatabaseHelper.PendingOrder> pendingOrders = dbHelper.getPendingOrdersForUpload();
+        List<DatabaseHelper.PendingOrder> pendingOrders = outbox.getPendingOrders();
         if (pendingOrders.isEmpty()) {
             Log.d(TAG, "No pending bills to upload. Worker finishing.");
             return Result.success();
@@ -119,7 +119,7 @@ public class BillUploadWorker extends Worker {
                         syncedOrderIds.add(syncedIdsArray.getLong(i));
                     }
                     if (!syncedOrderIds.isEmpty()) {
-                        dbHelper.deleteSyncedOrdersByIds(syncedOrderIds);
+                        outbox.removeUploadedOrders(syncedOrderIds);
                     }
                 }
                 showNotification("Upload Complete", pendingOrders.size() + " pending bill(s) have been successfully synced.", BILL_UPLOAD_FINAL_ID, false);
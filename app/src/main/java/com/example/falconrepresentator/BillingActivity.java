@@ -50,8 +50,13 @@ public class BillingActivity extends AppCompatActivity implements
 
     // Core Components
     private OrderManager orderManager;
-    private DatabaseHelper dbHelper;
+    private CustomerRepository customers;
+    private OrderRepository orders;
+    private CatalogRepository catalog;
     private SessionManager sessionManager;
+    // Loads for this screen; the bill itself is saved on DatabaseWriter.
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     // Customer Selection UI
     private RecyclerView rvCustomers;
@@ -68,7 +73,6 @@ public class BillingActivity extends AppCompatActivity implements
     private SearchView searchViewProduct;
     private RecyclerView rvProductSearchResults;
     private ProductSearchAdapter productSearchAdapter;
-    private List<Product> allProductsForSearch = new ArrayList<>();
 
     // Bill Items UI
     private RecyclerView rvBillItems;
@@ -96,7 +100,9 @@ public class BillingActivity extends AppCompatActivity implements
         setContentView(R.layout.activity_billing);
 
         orderManager = OrderManager.getInstance();
-        dbHelper = new DatabaseHelper(this);
+        customers = new CustomerRepository(this);
+        orders = new OrderRepository(this);
+        catalog = new CatalogRepository(this);
         sessionManager = new SessionManager(this);
 
         initializeViews();
@@ -105,7 +111,6 @@ public class BillingActivity extends AppCompatActivity implements
         setupBillItemsList();
 
         loadCustomers(-1);
-        loadAllProductsForSearch();
     }
 
     @Override
@@ -114,6 +119,12 @@ public class BillingActivity extends AppCompatActivity implements
         updateBillUI();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        loadExecutor.shutdownNow();
+    }
+
     private void initializeViews() {
         Toolbar toolbar = findViewById(R.id.toolbar_billing);
         setSupportActionBar(toolbar);
@@ -169,14 +180,9 @@ public class BillingActivity extends AppCompatActivity implements
     }
 
     private void loadCustomers(int customerToSelectId) {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Handler handler = new Handler(Looper.getMainLooper());
-        executor.execute(() -> {
-            // CHANGE THIS LINE
-            customerList = dbHelper.getAllCustomersForBilling(); // Use the new combined method
-
-            // The rest of the method stays the same
-            handler.post(() -> {
+        loadExecutor.execute(() -> {
+            customerList = customers.getCustomersForBilling();
+            mainHandler.post(() -> {
                 customerAdapter.updateList(customerList);
                 if (customerToSelectId != -1) {
                     for (OrderManager.Customer c : customerList) {
@@ -218,7 +224,7 @@ public class BillingActivity extends AppCompatActivity implements
     // --- Product Search & Add Logic ---
     private void setupProductSearch() {
         rvProductSearchResults.setLayoutManager(new LinearLayoutManager(this));
-        productSearchAdapter = new ProductSearchAdapter(this, allProductsForSearch, this);
+        productSearchAdapter = new ProductSearchAdapter(this, catalog, this);
         rvProductSearchResults.setAdapter(productSearchAdapter);
 
         searchViewProduct.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
@@ -238,18 +244,6 @@ public class BillingActivity extends AppCompatActivity implements
         });
     }
 
-    private void loadAllProductsForSearch() {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Handler handler = new Handler(Looper.getMainLooper());
-        executor.execute(() -> {
-            allProductsForSearch = dbHelper.getAllProducts();
-            handler.post(() -> {
-                productSearchAdapter = new ProductSearchAdapter(this, allProductsForSearch, this);
-                rvProductSearchResults.setAdapter(productSearchAdapter);
-            });
-        });
-    }
-
     @Override
     public void onProductAdded(Product product) {
         // FIXED: Replaced the crash-prone logic with the robust dialog system
@@ -533,12 +527,9 @@ public class BillingActivity extends AppCompatActivity implements
         double billDiscountPercentage = orderManager.getBillDiscountPercentage();
         String currentDate = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date());
 
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Handler handler = new Handler(Looper.getMainLooper());
-
-        executor.execute(() -> {
-            long savedOrderId = dbHelper.saveOrder(customerId, repId, currentDate, total, billDiscountPercentage, orderManager.getCurrentBillItems());
-            handler.post(() -> {
+        DatabaseWriter.execute(() -> {
+            long savedOrderId = orders.saveOrder(customerId, repId, currentDate, total, billDiscountPercentage, orderManager.getCurrentBillItems());
+            mainHandler.post(() -> {
                 if (savedOrderId != -1) {
                     Toast.makeText(BillingActivity.this, "Bill finalized and saved locally!", Toast.LENGTH_LONG).show();
                     orderManager.clearBill();
@@ -0,0 +1,107 @@
+package com.example.falconrepresentator;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bulk write path for sync. Each statement is compiled once and rebound for every row, and the
+ * whole ingest is one transaction, committed by finish(). Work too large for one transaction
+ * (the catalog's product chunks) runs one ingest per chunk.
+ * Use close() in a finally block: if finish() was not reached the ingest is rolled back.
+ */
+public class BulkIngest implements Closeable {
+
+    private static final String TAG = "BulkIngest";
+
+    private final SQLiteDatabase db;
+    private final String label;
+    private final List<SQLiteStatement> statements = new ArrayList<>();
+    private final long startMillis;
+    private int totalRows = 0;
+    private long elapsedMillis = 0;
+    private boolean finished = false;
+
+    BulkIngest(SQLiteDatabase db, String label) {
+        this.db = db;
+        this.label = label;
+        this.startMillis = SystemClock.elapsedRealtime();
+        db.beginTransaction();
+    }
+
+    public SQLiteStatement prepareInsert(String table, boolean replace, String... columns) {
+        StringBuilder sql = new StringBuilder(replace ? "INSERT OR REPLACE INTO " : "INSERT INTO ");
+        sql.append(table).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        return prepare(sql.toString());
+    }
+
+    public SQLiteStatement prepare(String sql) {
+        SQLiteStatement statement = db.compileStatement(sql);
+        statements.add(statement);
+        return statement;
+    }
+
+    /** Runs a prepared insert with its current bindings and counts it as one row. */
+    public void insert(SQLiteStatement statement) {
+        statement.executeInsert();
+        statement.clearBindings();
+        totalRows++;
+    }
+
+    /** Runs a prepared delete/update with its current bindings. Not counted as an ingested row. */
+    public void execute(SQLiteStatement statement) {
+        statement.executeUpdateDelete();
+        statement.clearBindings();
+    }
+
+    /** Commits the ingest and returns the number of rows written. */
+    public int finish() {
+        db.setTransactionSuccessful();
+        db.endTransaction();
+        finished = true;
+        elapsedMillis = Math.max(1, SystemClock.elapsedRealtime() - startMillis);
+        Log.d(TAG, label + ": " + totalRows + " rows in " + elapsedMillis + " ms (" + Math.round(getRowsPerSecond()) + " rows/s)");
+        return totalRows;
+    }
+
+    public int getTotalRows() {
+        return totalRows;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? 0 : totalRows * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public void close() {
+        if (!finished) {
+            db.endTransaction();
+            finished = true;
+        }
+        for (SQLiteStatement statement : statements) {
+            statement.close();
+        }
+        statements.clear();
+    }
+
+    public static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
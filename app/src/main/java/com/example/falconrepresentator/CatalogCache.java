@@ -0,0 +1,223 @@
+package com.example.falconrepresentator;
+
+import android.util.Log;
+
+import com.example.falconrepresentator.Models.ColumnarCatalog;
+import com.example.falconrepresentator.Models.MainCategory;
+import com.example.falconrepresentator.Models.Product;
+import com.example.falconrepresentator.Models.ProductVariant;
+import com.example.falconrepresentator.Models.SubCategory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide memory cache behind CatalogRepository, so moving between catalog screens reads
+ * categories, product pages and opened products from SQLite once per sync instead of once per
+ * screen.
+ *
+ * Only SyncManager invalidates it, right after it commits catalog changes; the image worker
+ * patches local paths. Every entry is tagged with the generation it was loaded in, so a load
+ * that raced an invalidation is dropped instead of bringing back the old rows.
+ * Thread-safe. Nothing it holds is changed while a screen can see it: category lists and
+ * Products go in and out as copies, and a patched page is replaced by a patched copy.
+ *
+ * It also holds the mapped CatalogSnapshot, opened on first use and dropped with the products.
+ */
+final class CatalogCache {
+
+    private static final String TAG = "CatalogCache";
+
+    // Pages of CatalogPager.PAGE_SIZE rows, across every screen and category.
+    private static final int MAX_PAGES = 64;
+    private static final int MAX_DETAIL_PRODUCTS = 100;
+
+    private static final CatalogCache INSTANCE = new CatalogCache();
+
+    static CatalogCache getInstance() {
+        return INSTANCE;
+    }
+
+    private long generation = 0;
+    private CatalogSnapshot snapshot;
+    private boolean snapshotChecked = false;
+    // Product {localPath, thumbPath} saved since the snapshot file was written, replayed onto it when mapped.
+    private final Map<Integer, String[]> snapshotImagePaths = new HashMap<>();
+    private ArrayList<MainCategory> mainCategories;
+    private final Map<Integer, ArrayList<SubCategory>> subCategories = new HashMap<>();
+    private final Map<String, Integer> productCounts = new HashMap<>();
+    private final Map<String, ColumnarCatalog> productPages = new LinkedHashMap<String, ColumnarCatalog>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ColumnarCatalog> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    // Full records for the detail screen; list pages only hold the list columns.
+    private final Map<Integer, Product> detailProducts = new LinkedHashMap<Integer, Product>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Product> eldest) {
+            return size() > MAX_DETAIL_PRODUCTS;
+        }
+    };
+
+    private CatalogCache() {
+    }
+
+    /** Read before querying the database and pass to the put method with the result. */
+    synchronized long generation() {
+        return generation;
+    }
+
+    // --- Categories ---
+
+    synchronized ArrayList<MainCategory> getMainCategories() {
+        return mainCategories != null ? new ArrayList<>(mainCategories) : null;
+    }
+
+    synchronized void putMainCategories(long loadedIn, ArrayList<MainCategory> categories) {
+        if (loadedIn == generation) {
+            mainCategories = new ArrayList<>(categories);
+        }
+    }
+
+    synchronized ArrayList<SubCategory> getSubCategories(int mainCategoryId) {
+        ArrayList<SubCategory> cached = subCategories.get(mainCategoryId);
+        return cached != null ? new ArrayList<>(cached) : null;
+    }
+
+    synchronized void putSubCategories(long loadedIn, int mainCategoryId, ArrayList<SubCategory> categories) {
+        if (loadedIn == generation) {
+            subCategories.put(mainCategoryId, new ArrayList<>(categories));
+        }
+    }
+
+    // --- Products ---
+
+    synchronized Integer getProductCount(int mainCategoryId, int subCategoryId) {
+        return productCounts.get(mainCategoryId + ":" + subCategoryId);
+    }
+
+    synchronized void putProductCount(long loadedIn, int mainCategoryId, int subCategoryId, int count) {
+        if (loadedIn == generation) {
+            productCounts.put(mainCategoryId + ":" + subCategoryId, count);
+        }
+    }
+
+    // A NULL anchor name leaves the key's last field empty; a name, even "" or "null", is quoted.
+    static String pageKey(int mainCategoryId, int subCategoryId, String anchorName, int anchorItemId, int pageSize) {
+        return mainCategoryId + ":" + subCategoryId + ":" + pageSize + ":" + anchorItemId + ":" + (anchorName != null ? "'" + anchorName : "");
+    }
+
+    synchronized ColumnarCatalog getProductsPage(String key) {
+        return productPages.get(key);
+    }
+
+    synchronized void putProductsPage(long loadedIn, String key, ColumnarCatalog rows) {
+        if (loadedIn == generation) {
+            productPages.put(key, rows);
+        }
+    }
+
+    synchronized Product getProduct(int itemId) {
+        Product cached = detailProducts.get(itemId);
+        return cached != null ? cached.copy() : null;
+    }
+
+    synchronized void putProduct(long loadedIn, Product product) {
+        if (loadedIn == generation && product != null) {
+            detailProducts.put(product.getItemId(), product.copy());
+        }
+    }
+
+    // --- Snapshot ---
+
+    /** The mapped snapshot, or null if there is none; the file is only looked at once per generation. */
+    synchronized CatalogSnapshot getSnapshot(File file) {
+        if (!snapshotChecked) {
+            snapshotChecked = true;
+            if (file.exists()) {
+                try {
+                    snapshot = CatalogSnapshot.open(file);
+                    for (Map.Entry<Integer, String[]> paths : snapshotImagePaths.entrySet()) {
+                        snapshot.overrideImagePaths(paths.getKey(), paths.getValue()[0], paths.getValue()[1]);
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Ignoring unreadable catalog snapshot", e);
+                    file.delete();
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /** A new snapshot file is in place; it is mapped on the next read. */
+    synchronized void snapshotWritten() {
+        snapshot = null;
+        snapshotChecked = false;
+        snapshotImagePaths.clear();
+    }
+
+    // --- Changes ---
+
+    /**
+     * Updates the local image and rendition paths of every cached copy; prefix is "product_" or
+     * "variant_". Pages are replaced; the detail Products are the cache's own copies.
+     */
+    synchronized void patchImagePaths(int id, String prefix, String localPath, String thumbPath, String detailPath) {
+        boolean isProduct = "product_".equals(prefix);
+        // Pages hold the list columns only, which have no variant image paths.
+        if (isProduct) {
+            // setValue does not count as an access, so the LRU order is left alone.
+            for (Map.Entry<String, ColumnarCatalog> page : productPages.entrySet()) {
+                page.setValue(page.getValue().withImagePaths(id, localPath, thumbPath));
+            }
+        }
+        for (Product product : detailProducts.values()) {
+            if (isProduct) {
+                if (product.getItemId() == id) {
+                    product.setLocalPath(localPath);
+                    product.setThumbPath(thumbPath);
+                    product.setDetailPath(detailPath);
+                }
+                continue;
+            }
+            for (ProductVariant variant : product.getVariants()) {
+                if (variant.getVariantId() == id) {
+                    variant.setLocalPath(localPath);
+                    variant.setThumbPath(thumbPath);
+                    variant.setDetailPath(detailPath);
+                }
+            }
+        }
+        if (isProduct && localPath != null) {
+            snapshotImagePaths.put(id, new String[]{localPath, thumbPath});
+            if (snapshot != null) {
+                snapshot.overrideImagePaths(id, localPath, thumbPath);
+            }
+        }
+    }
+
+    /** Products, variants or search rows changed: drops every product entry. */
+    synchronized void invalidateProducts() {
+        generation++;
+        snapshotWritten();
+        productCounts.clear();
+        productPages.clear();
+        detailProducts.clear();
+    }
+
+    /**
+     * Categories changed. Pages filtered by main category join through the sub-categories, so
+     * the product entries go too.
+     */
+    synchronized void invalidateCategories() {
+        invalidateProducts();
+        mainCategories = null;
+        subCategories.clear();
+    }
+}
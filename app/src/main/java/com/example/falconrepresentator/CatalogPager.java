@@ -0,0 +1,228 @@
+package com.example.falconrepresentator;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.falconrepresentator.Models.CatalogView;
+import com.example.falconrepresentator.Models.ColumnarCatalog;
+import com.example.falconrepresentator.Models.Product;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Read-only, keyset-paged view of the catalog for the product grids.
+ *
+ * Only a handful of pages are kept in memory, each as a ColumnarCatalog; isLoaded() is false
+ * for a row whose page is not loaded yet and schedules the load, and the Listener is told when
+ * the rows arrive so the adapter can rebind them. All methods must be called on the main thread.
+ */
+public class CatalogPager implements CatalogView {
+
+    public interface Listener {
+        void onPageLoaded(int start, int count);
+        void onSizeChanged();
+    }
+
+    private static final String TAG = "CatalogPager";
+    public static final int PAGE_SIZE = 40;
+    private static final int MAX_CACHED_PAGES = 6;
+
+    private final CatalogRepository catalog;
+    private final int mainCategoryId;
+    private final int subCategoryId;
+    private final Listener listener;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // anchors.get(k) is the last row of page k - 1, i.e. where page k starts. Page 0 starts at null.
+    private final List<Anchor> anchors = new ArrayList<>();
+    private final Map<Integer, ColumnarCatalog> pages = new LinkedHashMap<Integer, ColumnarCatalog>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ColumnarCatalog> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    private final Set<Integer> loadingPages = new HashSet<>();
+    // The last page asked for that had no anchor yet; pages are loaded toward it as anchors arrive.
+    private int wantedPage = -1;
+    private int totalCount = 0;
+    private boolean closed = false;
+
+    public CatalogPager(CatalogRepository catalog, int mainCategoryId, int subCategoryId, Listener listener) {
+        this.catalog = catalog;
+        this.mainCategoryId = mainCategoryId;
+        this.subCategoryId = subCategoryId;
+        this.listener = listener;
+        anchors.add(null);
+    }
+
+    /** Counts the rows and loads the first page, then runs onFirstPage on the main thread. */
+    public void start(Runnable onFirstPage) {
+        executor.execute(() -> {
+            int count = catalog.countProducts(mainCategoryId, subCategoryId);
+            ColumnarCatalog firstPage = catalog.getProductsPage(mainCategoryId, subCategoryId, null, 0, PAGE_SIZE);
+            handler.post(() -> {
+                if (closed) return;
+                totalCount = count;
+                onPageArrived(0, firstPage, false);
+                onFirstPage.run();
+            });
+        });
+    }
+
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        pages.clear();
+    }
+
+    @Override
+    public int size() {
+        return totalCount;
+    }
+
+    @Override
+    public boolean isLoaded(int position) {
+        int page = position / PAGE_SIZE;
+        int offset = position % PAGE_SIZE;
+
+        // Read ahead once the user is halfway through a page.
+        if (offset >= PAGE_SIZE / 2 && (page + 1) * PAGE_SIZE < totalCount) {
+            requestPage(page + 1);
+        }
+
+        ColumnarCatalog rows = pages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            return false;
+        }
+        return offset < rows.size();
+    }
+
+    // The row accessors below are only valid once isLoaded(position) returned true.
+
+    private ColumnarCatalog pageOf(int position) {
+        return pages.get(position / PAGE_SIZE);
+    }
+
+    @Override
+    public int getItemId(int position) {
+        return pageOf(position).getItemId(position % PAGE_SIZE);
+    }
+
+    @Override
+    public String getName(int position) {
+        return pageOf(position).getName(position % PAGE_SIZE);
+    }
+
+    @Override
+    public double getPrice(int position) {
+        return pageOf(position).getPrice(position % PAGE_SIZE);
+    }
+
+    @Override
+    public String getSku(int position) {
+        return pageOf(position).getSku(position % PAGE_SIZE);
+    }
+
+    @Override
+    public String getImageUrl(int position) {
+        return pageOf(position).getImageUrl(position % PAGE_SIZE);
+    }
+
+    @Override
+    public String getLocalPath(int position) {
+        return pageOf(position).getLocalPath(position % PAGE_SIZE);
+    }
+
+    @Override
+    public String getThumbPath(int position) {
+        return pageOf(position).getThumbPath(position % PAGE_SIZE);
+    }
+
+    @Override
+    public int getVariantCount(int position) {
+        return pageOf(position).getVariantCount(position % PAGE_SIZE);
+    }
+
+    @Override
+    public String getVariantName(int position, int variant) {
+        return pageOf(position).getVariantName(position % PAGE_SIZE, variant);
+    }
+
+    @Override
+    public double getVariantPrice(int position, int variant) {
+        return pageOf(position).getVariantPrice(position % PAGE_SIZE, variant);
+    }
+
+    @Override
+    public Product getProduct(int position) {
+        return pageOf(position).getProduct(position % PAGE_SIZE);
+    }
+
+    private void requestPage(int page) {
+        if (closed || pages.containsKey(page)) {
+            return;
+        }
+        // Keyset paging can only walk forward from a known anchor, so a long jump loads the pages
+        // in between one at a time, each arrival requesting the next until the wanted one is in.
+        final int target = Math.min(page, anchors.size() - 1);
+        wantedPage = target < page ? page : -1;
+        if (pages.containsKey(target) || !loadingPages.add(target)) {
+            return;
+        }
+        final Anchor anchor = anchors.get(target);
+        executor.execute(() -> {
+            ColumnarCatalog rows = anchor == null
+                    ? catalog.getProductsPage(mainCategoryId, subCategoryId, null, 0, PAGE_SIZE)
+                    : catalog.getProductsPage(mainCategoryId, subCategoryId, anchor.name, anchor.itemId, PAGE_SIZE);
+            handler.post(() -> {
+                loadingPages.remove(target);
+                if (closed) return;
+                onPageArrived(target, rows, true);
+            });
+        });
+    }
+
+    private void onPageArrived(int page, ColumnarCatalog rows, boolean notify) {
+        pages.put(page, rows);
+        if (rows.size() == PAGE_SIZE && anchors.size() == page + 1) {
+            int last = rows.size() - 1;
+            anchors.add(new Anchor(rows.getName(last), rows.getItemId(last)));
+        }
+
+        int start = page * PAGE_SIZE;
+        int expected = Math.max(0, Math.min(PAGE_SIZE, totalCount - start));
+        if (rows.size() < expected) {
+            // Rows were removed since the count was taken; trim so the tail does not stay blank.
+            Log.d(TAG, "Catalog shrank while paging; trimming to " + (start + rows.size()) + " rows.");
+            totalCount = start + rows.size();
+            listener.onSizeChanged();
+        } else if (notify) {
+            listener.onPageLoaded(start, rows.size());
+        }
+
+        if (wantedPage > page && wantedPage * PAGE_SIZE < totalCount) {
+            requestPage(wantedPage);
+        }
+    }
+
+    // The last row of a page. name is as stored, so NULL for a product without one.
+    private static class Anchor {
+        final String name;
+        final int itemId;
+
+        Anchor(String name, int itemId) {
+            this.name = name;
+            this.itemId = itemId;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.falconrepresentator;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.falconrepresentator.Models.ColumnarCatalog;
+import com.example.falconrepresentator.Models.MainCategory;
+import com.example.falconrepresentator.Models.Product;
+import com.example.falconrepresentator.Models.SubCategory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read access to the product catalog (categories, products, variants, search) plus the local
+ * image paths the image worker fills in. The catalog itself is only written by SyncManager.
+ *
+ * Backed by the process-wide DatabaseHelper and CatalogCache, so creating one is cheap and a
+ * screen reopened after another one re-reads nothing until the next sync. Product lists, counts
+ * and search results come from the mapped CatalogSnapshot when there is one, and from SQLite
+ * otherwise. Call the methods off the main thread; attachImage and writeSnapshot
+ * belong on DatabaseWriter.
+ */
+public class CatalogRepository {
+
+    private static final String TAG = "CatalogRepository";
+
+    private final DatabaseHelper dbHelper;
+    private final CatalogCache cache = CatalogCache.getInstance();
+    private final File snapshotFile;
+
+    public CatalogRepository(Context context) {
+        this.dbHelper = DatabaseHelper.getInstance(context);
+        this.snapshotFile = CatalogSnapshot.file(context);
+    }
+
+    public ArrayList<MainCategory> getMainCategories() {
+        ArrayList<MainCategory> categories = cache.getMainCategories();
+        if (categories == null) {
+            long generation = cache.generation();
+            categories = dbHelper.getAllMainCategories();
+            cache.putMainCategories(generation, categories);
+        }
+        return categories;
+    }
+
+    public ArrayList<SubCategory> getSubCategories(int mainCategoryId) {
+        ArrayList<SubCategory> categories = cache.getSubCategories(mainCategoryId);
+        if (categories == null) {
+            long generation = cache.generation();
+            categories = dbHelper.getSubCategoriesForMain(mainCategoryId);
+            cache.putSubCategories(generation, mainCategoryId, categories);
+        }
+        return categories;
+    }
+
+    /** The full record; list and search results leave out the detail-only columns. */
+    public Product getProduct(int itemId) {
+        Product product = cache.getProduct(itemId);
+        if (product == null) {
+            long generation = cache.generation();
+            product = dbHelper.getProductById(itemId);
+            cache.putProduct(generation, product);
+        }
+        return product;
+    }
+
+    /** One keyset page of products in columnar form; see CatalogPager. */
+    public ColumnarCatalog getProductsPage(int mainCategoryId, int subCategoryId, String anchorName, int anchorItemId, int pageSize) {
+        String key = CatalogCache.pageKey(mainCategoryId, subCategoryId, anchorName, anchorItemId, pageSize);
+        ColumnarCatalog page = cache.getProductsPage(key);
+        if (page == null) {
+            long generation = cache.generation();
+            CatalogSnapshot snapshot = cache.getSnapshot(snapshotFile);
+            page = snapshot != null
+                    ? snapshot.getProductsPage(mainCategoryId, subCategoryId, anchorName, anchorItemId, pageSize)
+                    : ColumnarCatalog.of(dbHelper.getProductsPage(mainCategoryId, subCategoryId, anchorName, anchorItemId, pageSize));
+            cache.putProductsPage(generation, key, page);
+        }
+        return page;
+    }
+
+    public int countProducts(int mainCategoryId, int subCategoryId) {
+        Integer count = cache.getProductCount(mainCategoryId, subCategoryId);
+        if (count == null) {
+            long generation = cache.generation();
+            CatalogSnapshot snapshot = cache.getSnapshot(snapshotFile);
+            count = snapshot != null
+                    ? snapshot.countProducts(mainCategoryId, subCategoryId)
+                    : dbHelper.countProducts(mainCategoryId, subCategoryId);
+            cache.putProductCount(generation, mainCategoryId, subCategoryId, count);
+        }
+        return count;
+    }
+
+    /**
+     * Ranked by the products_fts index in SQLite; the matching rows come from the snapshot if
+     * there is one, in columnar form for the product grids.
+     */
+    public ColumnarCatalog searchCatalog(String text, int mainCategoryId, int subCategoryId, int limit) {
+        List<Integer> itemIds = dbHelper.searchProductIds(text, mainCategoryId, subCategoryId, limit);
+        CatalogSnapshot snapshot = cache.getSnapshot(snapshotFile);
+        return snapshot != null ? snapshot.getProducts(itemIds) : ColumnarCatalog.of(dbHelper.getListProducts(itemIds));
+    }
+
+    /** Same rows as searchCatalog, as Products for the billing search. */
+    public ArrayList<Product> searchProducts(String text, int mainCategoryId, int subCategoryId, int limit) {
+        List<Integer> itemIds = dbHelper.searchProductIds(text, mainCategoryId, subCategoryId, limit);
+        CatalogSnapshot snapshot = cache.getSnapshot(snapshotFile);
+        if (snapshot == null) {
+            return dbHelper.getListProducts(itemIds);
+        }
+        ColumnarCatalog rows = snapshot.getProducts(itemIds);
+        ArrayList<Product> products = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            products.add(rows.getProduct(i));
+        }
+        return products;
+    }
+
+    public List<DatabaseHelper.MissingImage> getMissingImages() {
+        return dbHelper.getMissingImages();
+    }
+
+    /**
+     * Points every product and variant in owners at a stored image and its renditions, and
+     * records the blob as what url serves. Returns false if the blob was released in the
+     * meantime, in which case nothing changed.
+     */
+    public boolean attachImage(String url, ImageStore.Blob blob, List<DatabaseHelper.MissingImage> owners) {
+        if (!dbHelper.attachImageBlob(url, blob, owners)) {
+            return false;
+        }
+        for (DatabaseHelper.MissingImage owner : owners) {
+            cache.patchImagePaths(owner.id, owner.prefix, blob.path, blob.thumbPath, blob.detailPath);
+        }
+        return true;
+    }
+
+    /**
+     * Rewrites the snapshot from SQLite. Runs on DatabaseWriter, so no catalog commit can land
+     * while it reads; without a snapshot the reads simply stay on SQLite.
+     */
+    public void writeSnapshot() {
+        try {
+            CatalogSnapshot.write(dbHelper.getReadableDatabase(), snapshotFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write the catalog snapshot", e);
+            snapshotFile.delete();
+        }
+        cache.snapshotWritten();
+    }
+
+    /** Deletes the snapshot before a catalog commit so it never describes an older catalog. */
+    public void dropSnapshot() {
+        snapshotFile.delete();
+    }
+}
@@ -0,0 +1,431 @@
+package com.example.falconrepresentator;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.falconrepresentator.Models.ColumnarCatalog;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only copy of the catalog's list columns in one memory-mapped file, so the first catalog
+ * screen after process death pages through products without building them from cursors.
+ * SQLite stays the source of truth: SyncManager deletes the file before every catalog commit
+ * and writes a new one once the sync is over, and CatalogRepository falls back to SQLite
+ * whenever there is no snapshot.
+ *
+ * Layout (big-endian):
+ *   header    magic, version, product count, variant count, then the offsets of the four
+ *             sections below and the string table length
+ *   products  PRODUCT_RECORD bytes each, in list order (name, item_id) as SQLite sorts it
+ *   variants  VARIANT_RECORD bytes each, grouped by product in product order
+ *   id index  one int per product: its record number, sorted by item_id
+ *   strings   int byte length + UTF-8 bytes each; records point at them by offset, -1 for null
+ *
+ * Readers only use absolute gets, so one instance can be shared by every thread.
+ */
+final class CatalogSnapshot {
+
+    static final String FILE_NAME = "catalog.snapshot";
+
+    private static final int MAGIC = 0x46435331; // "FCS1"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 36;
+
+    // itemId, subCategoryId, mainCategoryId, price, name, sku, imageUrl, localPath, thumbPath, firstVariant, variantCount
+    private static final int PRODUCT_RECORD = 4 + 4 + 4 + 8 + 4 + 4 + 4 + 4 + 4 + 4 + 4;
+    // variantId, itemId, price, name, sku, imageUrl
+    private static final int VARIANT_RECORD = 4 + 4 + 8 + 4 + 4 + 4;
+    private static final int NO_STRING = -1;
+
+    private final ByteBuffer buffer;
+    private final int productCount;
+    private final int productsOffset;
+    private final int variantsOffset;
+    private final int idIndexOffset;
+    private final int stringsOffset;
+    // {localPath, thumbPath} saved since the file was written; see CatalogCache.patchImagePaths.
+    private final Map<Integer, String[]> imagePathOverrides = new ConcurrentHashMap<>();
+
+    private CatalogSnapshot(ByteBuffer buffer, int productCount, int productsOffset, int variantsOffset, int idIndexOffset, int stringsOffset) {
+        this.buffer = buffer;
+        this.productCount = productCount;
+        this.productsOffset = productsOffset;
+        this.variantsOffset = variantsOffset;
+        this.idIndexOffset = idIndexOffset;
+        this.stringsOffset = stringsOffset;
+    }
+
+    static File file(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    // --- Reading ---
+
+    /** Maps the file read-only. Throws if it is not a complete snapshot of this version. */
+    static CatalogSnapshot open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a catalog snapshot: " + file);
+        }
+        int productCount = buffer.getInt(8);
+        int variantCount = buffer.getInt(12);
+        int productsOffset = buffer.getInt(16);
+        int variantsOffset = buffer.getInt(20);
+        int idIndexOffset = buffer.getInt(24);
+        int stringsOffset = buffer.getInt(28);
+        int stringsLength = buffer.getInt(32);
+        if (productsOffset != HEADER_SIZE
+                || variantsOffset != productsOffset + productCount * PRODUCT_RECORD
+                || idIndexOffset != variantsOffset + variantCount * VARIANT_RECORD
+                || stringsOffset != idIndexOffset + productCount * 4
+                || buffer.capacity() != stringsOffset + stringsLength) {
+            throw new IOException("Truncated catalog snapshot: " + file);
+        }
+        return new CatalogSnapshot(buffer, productCount, productsOffset, variantsOffset, idIndexOffset, stringsOffset);
+    }
+
+    int productCount() {
+        return productCount;
+    }
+
+    /** Same rows as DatabaseHelper.countProducts. */
+    int countProducts(int mainCategoryId, int subCategoryId) {
+        int count = 0;
+        for (int i = 0; i < productCount; i++) {
+            if (matches(i, mainCategoryId, subCategoryId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Same rows and order as DatabaseHelper.getProductsPage, read straight into columns. */
+    ColumnarCatalog getProductsPage(int mainCategoryId, int subCategoryId, String anchorName, int anchorItemId, int pageSize) {
+        ColumnarCatalog.Builder page = new ColumnarCatalog.Builder();
+        int rows = 0;
+        int i = anchorItemId == 0 ? 0 : firstAfter(anchorName != null ? anchorName.getBytes(StandardCharsets.UTF_8) : null, anchorItemId);
+        for (; i < productCount && rows < pageSize; i++) {
+            if (matches(i, mainCategoryId, subCategoryId)) {
+                readProduct(i, page);
+                rows++;
+            }
+        }
+        return page.build();
+    }
+
+    /** The given products in the given order, read straight into columns; ids that are not in the snapshot are skipped. */
+    ColumnarCatalog getProducts(List<Integer> itemIds) {
+        ColumnarCatalog.Builder rows = new ColumnarCatalog.Builder();
+        for (int itemId : itemIds) {
+            int record = findRecord(itemId);
+            if (record >= 0) {
+                readProduct(record, rows);
+            }
+        }
+        return rows.build();
+    }
+
+    void overrideImagePaths(int itemId, String localPath, String thumbPath) {
+        if (localPath != null) {
+            imagePathOverrides.put(itemId, new String[]{localPath, thumbPath});
+        }
+    }
+
+    private int productAt(int record) {
+        return productsOffset + record * PRODUCT_RECORD;
+    }
+
+    private boolean matches(int record, int mainCategoryId, int subCategoryId) {
+        int at = productAt(record);
+        return (subCategoryId <= 0 || buffer.getInt(at + 4) == subCategoryId)
+                && (mainCategoryId <= 0 || buffer.getInt(at + 8) == mainCategoryId);
+    }
+
+    // Binary search for the first record after the (name, item_id) anchor, with the page query's
+    // semantics: names compare as UTF-8 bytes like SQLite's BINARY collation, and NULL names sort
+    // first, so a NULL-named record is only after an anchor that is NULL-named too.
+    private int firstAfter(byte[] anchorName, int anchorItemId) {
+        int low = 0;
+        int high = productCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int at = productAt(mid);
+            int name = buffer.getInt(at + 20);
+            boolean after;
+            if (name == NO_STRING) {
+                after = anchorName == null && buffer.getInt(at) > anchorItemId;
+            } else if (anchorName == null) {
+                after = true;
+            } else {
+                int cmp = compareString(name, anchorName);
+                after = cmp > 0 || (cmp == 0 && buffer.getInt(at) > anchorItemId);
+            }
+            if (after) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private int findRecord(int itemId) {
+        int low = 0;
+        int high = productCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = buffer.getInt(idIndexOffset + mid * 4);
+            int id = buffer.getInt(productAt(record));
+            if (id < itemId) {
+                low = mid + 1;
+            } else if (id > itemId) {
+                high = mid - 1;
+            } else {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    private void readProduct(int record, ColumnarCatalog.Builder out) {
+        int at = productAt(record);
+        int itemId = buffer.getInt(at);
+        String[] paths = imagePathOverrides.get(itemId);
+        if (paths == null) {
+            paths = new String[]{readString(buffer.getInt(at + 32)), readString(buffer.getInt(at + 36))};
+        }
+        out.addProduct(itemId, readString(buffer.getInt(at + 20)), buffer.getDouble(at + 12),
+                readString(buffer.getInt(at + 24)), readString(buffer.getInt(at + 28)), paths[0], paths[1]);
+
+        int firstVariant = buffer.getInt(at + 40);
+        int variantCount = buffer.getInt(at + 44);
+        for (int v = firstVariant; v < firstVariant + variantCount; v++) {
+            int vat = variantsOffset + v * VARIANT_RECORD;
+            out.addVariant(buffer.getInt(vat), readString(buffer.getInt(vat + 16)), readString(buffer.getInt(vat + 20)),
+                    buffer.getDouble(vat + 8), readString(buffer.getInt(vat + 24)));
+        }
+    }
+
+    private String readString(int offset) {
+        if (offset == NO_STRING) {
+            return null;
+        }
+        int at = stringsOffset + offset;
+        byte[] bytes = new byte[buffer.getInt(at)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(at + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int compareString(int offset, byte[] other) {
+        int at = stringsOffset + offset;
+        int length = buffer.getInt(at);
+        int common = Math.min(length, other.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = (buffer.get(at + 4 + i) & 0xff) - (other[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - other.length;
+    }
+
+    // --- Writing ---
+
+    /**
+     * Writes the live catalog to file via a temporary file and a rename, so a reader never maps
+     * a half-written snapshot. Run on DatabaseWriter so no catalog commit lands in between the
+     * product and variant reads.
+     */
+    static void write(SQLiteDatabase db, File file) throws IOException {
+        StringTable strings = new StringTable();
+
+        List<Row> products = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(DatabaseHelper.SQL_SNAPSHOT_PRODUCTS, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    Row product = new Row();
+                    product.id = cursor.getInt(0);
+                    product.subCategoryId = cursor.getInt(1);
+                    product.mainCategoryId = cursor.isNull(2) ? 0 : cursor.getInt(2);
+                    product.price = cursor.getDouble(3);
+                    product.name = strings.add(cursor.getString(4));
+                    product.sku = strings.add(cursor.getString(5));
+                    product.imageUrl = strings.add(cursor.getString(6));
+                    product.localPath = strings.add(cursor.getString(7));
+                    product.thumbPath = strings.add(cursor.getString(8));
+                    products.add(product);
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        Map<Integer, List<Row>> variantsByItem = new HashMap<>();
+        try {
+            cursor = db.rawQuery(DatabaseHelper.SQL_ALL_VARIANTS, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                int id = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_VAR_ID);
+                int itemId = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_VAR_ITEM_ID);
+                int name = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_VAR_NAME);
+                int sku = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_VAR_SKU);
+                int price = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_VAR_PRICE);
+                int imageUrl = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_VAR_IMAGE_URL);
+                do {
+                    Row variant = new Row();
+                    variant.id = cursor.getInt(id);
+                    variant.itemId = cursor.getInt(itemId);
+                    variant.price = cursor.getDouble(price);
+                    variant.name = strings.add(cursor.getString(name));
+                    variant.sku = strings.add(cursor.getString(sku));
+                    variant.imageUrl = strings.add(cursor.getString(imageUrl));
+                    List<Row> forItem = variantsByItem.get(variant.itemId);
+                    if (forItem == null) {
+                        forItem = new ArrayList<>();
+                        variantsByItem.put(variant.itemId, forItem);
+                    }
+                    forItem.add(variant);
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        // Variants are laid out in product order; ones whose product is gone are left out.
+        List<Row> variants = new ArrayList<>();
+        for (Row product : products) {
+            List<Row> forItem = variantsByItem.get(product.id);
+            product.firstVariant = variants.size();
+            product.variantCount = forItem != null ? forItem.size() : 0;
+            if (forItem != null) {
+                variants.addAll(forItem);
+            }
+        }
+
+        Integer[] idIndex = new Integer[products.size()];
+        for (int i = 0; i < idIndex.length; i++) {
+            idIndex[i] = i;
+        }
+        Arrays.sort(idIndex, (a, b) -> Integer.compare(products.get(a).id, products.get(b).id));
+
+        int productsOffset = HEADER_SIZE;
+        int variantsOffset = productsOffset + products.size() * PRODUCT_RECORD;
+        int idIndexOffset = variantsOffset + variants.size() * VARIANT_RECORD;
+        int stringsOffset = idIndexOffset + products.size() * 4;
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(products.size());
+            out.writeInt(variants.size());
+            out.writeInt(productsOffset);
+            out.writeInt(variantsOffset);
+            out.writeInt(idIndexOffset);
+            out.writeInt(stringsOffset);
+            out.writeInt(strings.size());
+            for (Row p : products) {
+                out.writeInt(p.id);
+                out.writeInt(p.subCategoryId);
+                out.writeInt(p.mainCategoryId);
+                out.writeDouble(p.price);
+                out.writeInt(p.name);
+                out.writeInt(p.sku);
+                out.writeInt(p.imageUrl);
+                out.writeInt(p.localPath);
+                out.writeInt(p.thumbPath);
+                out.writeInt(p.firstVariant);
+                out.writeInt(p.variantCount);
+            }
+            for (Row v : variants) {
+                out.writeInt(v.id);
+                out.writeInt(v.itemId);
+                out.writeDouble(v.price);
+                out.writeInt(v.name);
+                out.writeInt(v.sku);
+                out.writeInt(v.imageUrl);
+            }
+            for (Integer record : idIndex) {
+                out.writeInt(record);
+            }
+            strings.writeTo(out);
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not move the catalog snapshot into place");
+        }
+    }
+
+    // A product or variant record on its way to the file; strings are already table offsets.
+    private static class Row {
+        int id;
+        int itemId;
+        int subCategoryId;
+        int mainCategoryId;
+        double price;
+        int name;
+        int sku;
+        int imageUrl;
+        int localPath = NO_STRING;
+        int thumbPath = NO_STRING;
+        int firstVariant;
+        int variantCount;
+    }
+
+    // Deduplicates strings (variant names and image hosts repeat a lot) into one table.
+    private static class StringTable {
+        private final Map<String, Integer> offsets = new HashMap<>();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        int add(String value) throws IOException {
+            if (value == null) {
+                return NO_STRING;
+            }
+            Integer offset = offsets.get(value);
+            if (offset == null) {
+                offset = bytes.size();
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+                offsets.put(value, offset);
+            }
+            return offset;
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            bytes.writeTo(target);
+        }
+    }
+}
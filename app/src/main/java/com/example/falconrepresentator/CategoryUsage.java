@@ -0,0 +1,56 @@
+package com.example.falconrepresentator;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Remembers which catalog categories the rep opens, so background work can favour them.
+ *
+ * Each category keeps a score that goes up by one per open and halves every HALF_LIFE_MS, so
+ * both categories opened often and categories opened lately rank high.
+ */
+final class CategoryUsage {
+
+    private static final String PREF_NAME = "CategoryUsage";
+    private static final long HALF_LIFE_MS = 3L * 24 * 60 * 60 * 1000;
+
+    private final SharedPreferences pref;
+
+    CategoryUsage(Context context) {
+        pref = context.getApplicationContext().getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    void mainCategoryOpened(int mainCategoryId) {
+        opened("main_" + mainCategoryId);
+    }
+
+    void subCategoryOpened(int subCategoryId) {
+        opened("sub_" + subCategoryId);
+    }
+
+    /** How much the rep uses a product's categories right now; 0 if never opened. */
+    double score(int mainCategoryId, int subCategoryId) {
+        long now = System.currentTimeMillis();
+        return score("sub_" + subCategoryId, now) + score("main_" + mainCategoryId, now);
+    }
+
+    private void opened(String key) {
+        if (key.endsWith("_0")) {
+            return; // "All categories" and rows without a category
+        }
+        long now = System.currentTimeMillis();
+        pref.edit()
+                .putFloat(key + "_score", (float) (score(key, now) + 1))
+                .putLong(key + "_at", now)
+                .apply();
+    }
+
+    private double score(String key, long now) {
+        float score = pref.getFloat(key + "_score", 0f);
+        if (score == 0f) {
+            return 0;
+        }
+        long elapsed = Math.max(0, now - pref.getLong(key + "_at", now));
+        return score * Math.pow(0.5, (double) elapsed / HALF_LIFE_MS);
+    }
+}
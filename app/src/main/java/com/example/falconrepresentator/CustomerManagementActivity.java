@@ -42,7 +42,8 @@ public class CustomerManagementActivity extends AppCompatActivity implements Cus
 
     private RecyclerView rvCustomers;
     private FloatingActionButton fabAddCustomer;
-    private DatabaseHelper databaseHelper;
+    private CustomerRepository customers;
+    private OutboxRepository outbox;
     private CustomerManagementAdapter adapter; // Will be initialized once in onCreate
     private ProgressBar progressBar;
     private SearchView searchView;
@@ -59,7 +60,8 @@ public class CustomerManagementActivity extends AppCompatActivity implements Cus
             getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         }
 
-        databaseHelper = new DatabaseHelper(this);
+        customers = new CustomerRepository(this);
+        outbox = new OutboxRepository(this);
 
         rvCustomers = findViewById(R.id.rv_customer_list);
         fabAddCustomer = findViewById(R.id.fab_add_customer);
@@ -115,7 +117,7 @@ public class CustomerManagementActivity extends AppCompatActivity implements Cus
         Handler handler = new Handler(Looper.getMainLooper());
 
         executor.execute(() -> {
-            List<CustomerListItem> allCustomers = databaseHelper.getAllCustomersForManagement();
+            List<CustomerListItem> allCustomers = customers.getCustomersForManagement();
             handler.post(() -> {
                 progressBar.setVisibility(View.GONE);
                 rvCustomers.setVisibility(View.VISIBLE);
@@ -150,7 +152,7 @@ public class CustomerManagementActivity extends AppCompatActivity implements Cus
         ExecutorService executor = Executors.newSingleThreadExecutor();
         Handler handler = new Handler(Looper.getMainLooper());
         executor.execute(() -> {
-            List<DatabaseHelper.Route> routes = databaseHelper.getAllRoutes();
+            List<DatabaseHelper.Route> routes = customers.getRoutes();
             handler.post(() -> {
                 ArrayAdapter<DatabaseHelper.Route> routeAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, routes);
                 routeAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
@@ -204,9 +206,13 @@ public class CustomerManagementActivity extends AppCompatActivity implements Cus
         JsonObjectRequest request = new JsonObjectRequest(Request.Method.POST, url, payload,
                 response -> {
                     if (response.optBoolean("success")) {
-                        databaseHelper.updateSyncedCustomer(customer.getCustomerId(), shopName, contact, address, routeId);
-                        Toast.makeText(this, "Customer updated successfully.", Toast.LENGTH_SHORT).show();
-                        loadCustomers();
+                        DatabaseWriter.execute(() -> {
+                            customers.updateSyncedCustomer(customer.getCustomerId(), shopName, contact, address, routeId);
+                            runOnUiThread(() -> {
+                                Toast.makeText(this, "Customer updated successfully.", Toast.LENGTH_SHORT).show();
+                                loadCustomers();
+                            });
+                        });
                     } else {
                         Toast.makeText(this, "Server error: " + response.optString("message"), Toast.LENGTH_LONG).show();
                     }
@@ -233,12 +239,17 @@ public class CustomerManagementActivity extends AppCompatActivity implements Cus
     }
 
     private void deletePendingCustomer(long localId) {
-        if (databaseHelper.deletePendingCustomer(localId)) {
-            Toast.makeText(this, "Pending customer deleted.", Toast.LENGTH_SHORT).show();
-            loadCustomers();
-        } else {
-            Toast.makeText(this, "Failed to delete pending customer.", Toast.LENGTH_SHORT).show();
-        }
+        DatabaseWriter.execute(() -> {
+            boolean deleted = outbox.deletePendingCustomer(localId);
+            runOnUiThread(() -> {
+                if (deleted) {
+                    Toast.makeText(this, "Pending customer deleted.", Toast.LENGTH_SHORT).show();
+                    loadCustomers();
+                } else {
+                    Toast.makeText(this, "Failed to delete pending customer.", Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
     }
 
     private void deleteSyncedCustomer(int customerId) {
@@ -261,9 +272,13 @@ public class CustomerManagementActivity extends AppCompatActivity implements Cus
         JsonObjectRequest request = new JsonObjectRequest(Request.Method.POST, url, payload,
                 response -> {
                     if (response.optBoolean("success")) {
-                        databaseHelper.deleteSyncedCustomer(customerId);
-                        Toast.makeText(this, "Customer deleted successfully.", Toast.LENGTH_SHORT).show();
-                        loadCustomers();
+                        DatabaseWriter.execute(() -> {
+                            customers.deleteSyncedCustomer(customerId);
+                            runOnUiThread(() -> {
+                                Toast.makeText(this, "Customer deleted successfully.", Toast.LENGTH_SHORT).show();
+                                loadCustomers();
+                            });
+                        });
                     } else {
                         Toast.makeText(this, "Server error: " + response.optString("message"), Toast.LENGTH_LONG).show();
                     }
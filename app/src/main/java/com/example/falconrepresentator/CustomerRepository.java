@@ -0,0 +1,49 @@
+package com.example.falconrepresentator;
+
+import android.content.Context;
+
+import com.example.falconrepresentator.Models.CustomerListItem;
+import com.example.falconrepresentator.Models.OrderManager;
+
+import java.util.List;
+
+/**
+ * Customers and routes that the server already knows about. Customers created offline live in
+ * OutboxRepository until they are uploaded.
+ *
+ * Backed by the process-wide DatabaseHelper. Call it off the main thread: the writes run on
+ * DatabaseWriter and wait for it.
+ */
+public class CustomerRepository {
+
+    private final DatabaseHelper dbHelper;
+
+    public CustomerRepository(Context context) {
+        this.dbHelper = DatabaseHelper.getInstance(context);
+    }
+
+    public List<DatabaseHelper.Route> getRoutes() {
+        return dbHelper.getAllRoutes();
+    }
+
+    /** Synced and pending customers together, for the management screen. */
+    public List<CustomerListItem> getCustomersForManagement() {
+        return dbHelper.getAllCustomersForManagement();
+    }
+
+    public List<OrderManager.Customer> getCustomersForBilling() {
+        return dbHelper.getAllCustomersForBilling();
+    }
+
+    public void insertSyncedCustomer(int serverId, String shopName, String contact, String address, int routeId, int userId) {
+        DatabaseWriter.run(() -> dbHelper.insertSyncedCustomer(serverId, shopName, contact, address, routeId, userId));
+    }
+
+    public boolean updateSyncedCustomer(long customerId, String shopName, String contactNumber, String address, int routeId) {
+        return DatabaseWriter.call(() -> dbHelper.updateSyncedCustomer(customerId, shopName, contactNumber, address, routeId));
+    }
+
+    public boolean deleteSyncedCustomer(long customerId) {
+        return DatabaseWriter.call(() -> dbHelper.deleteSyncedCustomer(customerId));
+    }
+}
@@ -57,9 +57,9 @@ public class CustomerUploadWorker extends Worker {
     @Override
     public Result doWork() {
         Log.d(TAG, "CustomerUploadWorker started.");
-        DatabaseHelper dbHelper = new DatabaseHelper(context);
+        OutboxRepository outbox = new OutboxRepository(context);
 
-        List<PendingCustomer> pendingCustomers = dbHelper.getAllPendingCustomers();
+        List<PendingCustomer> pendingCustomers = outbox.getPendingCustomers();
         if (pendingCustomers.isEmpty()) {
             Log.d(TAG, "No pending customers to upload. Worker finishing.");
             return Result.success();
@@ -95,7 +95,7 @@ public class CustomerUploadWorker extends Worker {
                 if (response.optBoolean("success")) {
                     int serverId = response.optInt("customer_id");
                     // Sync was successful, move data from pending to main table
-                    dbHelper.movePendingCustomerToMainTable(customer.getLocalId(), serverId);
+                    outbox.markCustomerUploaded(customer.getLocalId(), serverId);
                     successCount++;
                     Log.d(TAG, "Successfully synced customer: " + customer.getShopName());
                 } else {
@@ -2,9 +2,12 @@ package com.example.falconrepresentator;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.example.falconrepresentator.Models.CustomerListItem;
@@ -17,14 +20,19 @@ import com.example.falconrepresentator.Models.SubCategory;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "falcon_catalog.db";
-    private static final int DATABASE_VERSION = 8;
+    private static final int DATABASE_VERSION = 11;
     private static final String TAG = "DatabaseHelper";
 
     // Inner classes for Upload Worker
@@ -96,6 +104,25 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
+    // A product or variant image that is not downloaded yet, or lacks renditions.
+    public static class MissingImage {
+        public final String prefix; // "product_" or "variant_"
+        public final int id;
+        public final String url;
+        public final String localPath; // the original, if it is already on disk
+        public final int mainCategoryId;
+        public final int subCategoryId;
+
+        public MissingImage(String prefix, int id, String url, String localPath, int mainCategoryId, int subCategoryId) {
+            this.prefix = prefix;
+            this.id = id;
+            this.url = url;
+            this.localPath = localPath;
+            this.mainCategoryId = mainCategoryId;
+            this.subCategoryId = subCategoryId;
+        }
+    }
+
     // Table and column constants...
     public static final String TABLE_PRODUCTS = "products";
     public static final String COLUMN_ID = "item_id";
@@ -112,6 +139,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_CARTOON_PCS = "cartoon_pcs";
     public static final String COLUMN_BULK_DESCRIPTION = "bulk_description";
     public static final String COLUMN_SKU = "sku";
+    public static final String COLUMN_THUMB_PATH = "thumb_path";
+    public static final String COLUMN_DETAIL_PATH = "detail_path";
     public static final String TABLE_VARIANTS = "variants";
     public static final String COLUMN_VAR_ID = "variant_id";
     public static final String COLUMN_VAR_ITEM_ID = "item_id";
@@ -120,6 +149,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_VAR_PRICE = "variant_price";
     public static final String COLUMN_VAR_IMAGE_URL = "variant_image_url";
     public static final String COLUMN_VAR_LOCAL_PATH = "variant_local_path";
+    public static final String COLUMN_VAR_THUMB_PATH = "variant_thumb_path";
+    public static final String COLUMN_VAR_DETAIL_PATH = "variant_detail_path";
     public static final String TABLE_MAIN_CATEGORIES = "main_categories";
     public static final String COLUMN_MC_ID = "mc_id";
     public static final String COLUMN_MC_NAME = "mc_name";
@@ -164,35 +195,71 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_PC_ROUTE_ID = "route_id";
     public static final String COLUMN_PC_USER_ID = "user_id";
 
+    // Full-text search index over the catalog. The docid of each row is the product's item_id.
+    public static final String TABLE_PRODUCTS_FTS = "products_fts";
+    public static final String COLUMN_FTS_VARIANT_TEXT = "variant_text";
+    public static final int SEARCH_RESULT_LIMIT = 200;
+
+    // Shadow copies of the catalog that product sync writes into; see beginCatalogStaging.
+    public static final String TABLE_PRODUCTS_NEXT = "products_next";
+    public static final String TABLE_VARIANTS_NEXT = "variants_next";
+    public static final String TABLE_PRODUCTS_FTS_NEXT = "products_fts_next";
+
+    // Content-addressed image store (schema v11); see ImageStore. A blob is one distinct image,
+    // named by the SHA-256 of its bytes; image_urls remembers which blob each URL served and
+    // image_refs which blob each product and variant shows.
+    public static final String TABLE_IMAGE_BLOBS = "image_blobs";
+    public static final String COLUMN_BLOB_HASH = "hash";
+    public static final String COLUMN_BLOB_PATH = "path";
+    public static final String COLUMN_BLOB_THUMB_PATH = "thumb_path";
+    public static final String COLUMN_BLOB_DETAIL_PATH = "detail_path";
+    public static final String TABLE_IMAGE_URLS = "image_urls";
+    public static final String COLUMN_IMAGE_URL_URL = "url";
+    public static final String COLUMN_IMAGE_URL_HASH = "hash";
+    public static final String TABLE_IMAGE_REFS = "image_refs";
+    public static final String COLUMN_REF_PREFIX = "owner_prefix";
+    public static final String COLUMN_REF_OWNER_ID = "owner_id";
+    public static final String COLUMN_REF_HASH = "hash";
+
     // --- Create Table Statements ---
-    private static final String CREATE_TABLE_PRODUCTS =
-            "CREATE TABLE " + TABLE_PRODUCTS + " (" +
-                    COLUMN_ID + " INTEGER PRIMARY KEY, " +
-                    COLUMN_PROD_SUB_CATEGORY_ID + " INTEGER, " +
-                    COLUMN_NAME + " TEXT, " +
-                    COLUMN_PRICE + " REAL, " +
-                    COLUMN_DESCRIPTION + " TEXT, " +
-                    COLUMN_IMAGE_URL + " TEXT, " +
-                    COLUMN_LOCAL_PATH + " TEXT, " +
-                    COLUMN_LAST_UPDATED + " TEXT, " +
-                    COLUMN_BRAND_NAME + " TEXT, " +
-                    COLUMN_QTY_PER_BOX + " INTEGER, " +
-                    COLUMN_BULK_PRICE + " REAL, " +
-                    COLUMN_CARTOON_PCS + " TEXT, " +
-                    COLUMN_BULK_DESCRIPTION + " TEXT, " +
-                    COLUMN_SKU + " TEXT" +
-                    ");";
+    private static final String CREATE_TABLE_PRODUCTS = createProductsTableSql(TABLE_PRODUCTS);
+
+    private static String createProductsTableSql(String table) {
+        return "CREATE TABLE " + table + " (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_PROD_SUB_CATEGORY_ID + " INTEGER, " +
+                COLUMN_NAME + " TEXT, " +
+                COLUMN_PRICE + " REAL, " +
+                COLUMN_DESCRIPTION + " TEXT, " +
+                COLUMN_IMAGE_URL + " TEXT, " +
+                COLUMN_LOCAL_PATH + " TEXT, " +
+                COLUMN_LAST_UPDATED + " TEXT, " +
+                COLUMN_BRAND_NAME + " TEXT, " +
+                COLUMN_QTY_PER_BOX + " INTEGER, " +
+                COLUMN_BULK_PRICE + " REAL, " +
+                COLUMN_CARTOON_PCS + " TEXT, " +
+                COLUMN_BULK_DESCRIPTION + " TEXT, " +
+                COLUMN_SKU + " TEXT, " +
+                COLUMN_THUMB_PATH + " TEXT, " +
+                COLUMN_DETAIL_PATH + " TEXT" +
+                ");";
+    }
 
-    private static final String CREATE_TABLE_VARIANTS =
-            "CREATE TABLE " + TABLE_VARIANTS + " (" +
-                    COLUMN_VAR_ID + " INTEGER PRIMARY KEY, " +
-                    COLUMN_VAR_ITEM_ID + " INTEGER, " +
-                    COLUMN_VAR_NAME + " TEXT, " +
-                    COLUMN_VAR_SKU + " TEXT, " +
-                    COLUMN_VAR_PRICE + " REAL, " +
-                    COLUMN_VAR_IMAGE_URL + " TEXT, " +
-                    COLUMN_VAR_LOCAL_PATH + " TEXT" +
-                    ");";
+    private static final String CREATE_TABLE_VARIANTS = createVariantsTableSql(TABLE_VARIANTS);
+
+    private static String createVariantsTableSql(String table) {
+        return "CREATE TABLE " + table + " (" +
+                COLUMN_VAR_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_VAR_ITEM_ID + " INTEGER, " +
+                COLUMN_VAR_NAME + " TEXT, " +
+                COLUMN_VAR_SKU + " TEXT, " +
+                COLUMN_VAR_PRICE + " REAL, " +
+                COLUMN_VAR_IMAGE_URL + " TEXT, " +
+                COLUMN_VAR_LOCAL_PATH + " TEXT, " +
+                COLUMN_VAR_THUMB_PATH + " TEXT, " +
+                COLUMN_VAR_DETAIL_PATH + " TEXT" +
+                ");";
+    }
 
     private static final String CREATE_TABLE_MAIN_CATEGORIES =
             "CREATE TABLE " + TABLE_MAIN_CATEGORIES + " (" +
@@ -257,8 +324,260 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     COLUMN_PC_USER_ID + " INTEGER" +
                     ");";
 
-    public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    // Column order matters: it must match SEARCH_COLUMN_WEIGHTS below.
+    private static final String CREATE_TABLE_PRODUCTS_FTS = createProductSearchTableSql(TABLE_PRODUCTS_FTS);
+
+    private static String createProductSearchTableSql(String table) {
+        return "CREATE VIRTUAL TABLE IF NOT EXISTS " + table + " USING fts4(" +
+                COLUMN_NAME + ", " +
+                COLUMN_SKU + ", " +
+                COLUMN_BRAND_NAME + ", " +
+                COLUMN_DESCRIPTION + ", " +
+                COLUMN_FTS_VARIANT_TEXT +
+                ");";
+    }
+
+    private static final String[] CREATE_IMAGE_STORE = {
+            "CREATE TABLE IF NOT EXISTS " + TABLE_IMAGE_BLOBS + " (" +
+                    COLUMN_BLOB_HASH + " TEXT PRIMARY KEY, " +
+                    COLUMN_BLOB_PATH + " TEXT NOT NULL UNIQUE, " +
+                    COLUMN_BLOB_THUMB_PATH + " TEXT, " +
+                    COLUMN_BLOB_DETAIL_PATH + " TEXT" +
+                    ");",
+            "CREATE TABLE IF NOT EXISTS " + TABLE_IMAGE_URLS + " (" +
+                    COLUMN_IMAGE_URL_URL + " TEXT PRIMARY KEY, " +
+                    COLUMN_IMAGE_URL_HASH + " TEXT NOT NULL" +
+                    ");",
+            // One row per product or variant: each shows exactly one image.
+            "CREATE TABLE IF NOT EXISTS " + TABLE_IMAGE_REFS + " (" +
+                    COLUMN_REF_PREFIX + " TEXT NOT NULL, " +
+                    COLUMN_REF_OWNER_ID + " INTEGER NOT NULL, " +
+                    COLUMN_REF_HASH + " TEXT NOT NULL, " +
+                    "PRIMARY KEY (" + COLUMN_REF_PREFIX + ", " + COLUMN_REF_OWNER_ID + ")" +
+                    ");",
+            "CREATE INDEX IF NOT EXISTS idx_image_refs_hash ON " + TABLE_IMAGE_REFS + " (" + COLUMN_REF_HASH + ");",
+            "CREATE INDEX IF NOT EXISTS idx_image_urls_hash ON " + TABLE_IMAGE_URLS + " (" + COLUMN_IMAGE_URL_HASH + ");"
+    };
+
+    private static final String SEARCH_COLUMNS =
+            COLUMN_NAME + ", " + COLUMN_SKU + ", " + COLUMN_BRAND_NAME + ", " + COLUMN_DESCRIPTION + ", " + COLUMN_FTS_VARIANT_TEXT;
+
+    // --- Secondary indexes (schema v9) ---
+    private static final String[] CREATE_INDEXES = {
+            "CREATE INDEX IF NOT EXISTS idx_sub_categories_main ON " + TABLE_SUB_CATEGORIES + " (" + COLUMN_SC_MAIN_CATEGORY_ID + ");",
+            "CREATE INDEX IF NOT EXISTS idx_order_items_order_id ON " + TABLE_OFFLINE_ORDER_ITEMS + " (" + COLUMN_ITEM_ORDER_ID + ");",
+            "CREATE INDEX IF NOT EXISTS idx_offline_orders_status_date ON " + TABLE_OFFLINE_ORDERS + " (" + COLUMN_ORDER_SYNC_STATUS + ", " + COLUMN_ORDER_DATE + ");",
+            "CREATE INDEX IF NOT EXISTS idx_customers_route_shop ON " + TABLE_CUSTOMERS + " (" + COLUMN_CUST_ROUTE_ID + ", " + COLUMN_CUST_SHOP_NAME + ");"
+    };
+
+    // Indexes on the products and variants tables as {name, table, columns}; see createCatalogIndexes.
+    private static final String[][] CATALOG_INDEXES = {
+            {"idx_variants_item_id", TABLE_VARIANTS, COLUMN_VAR_ITEM_ID},
+            // Covers the keyset order and the category filter, so a main-category page walks it in order.
+            {"idx_products_name_sub_category", TABLE_PRODUCTS, COLUMN_NAME + ", " + COLUMN_ID + ", " + COLUMN_PROD_SUB_CATEGORY_ID},
+            {"idx_products_sub_category", TABLE_PRODUCTS, COLUMN_PROD_SUB_CATEGORY_ID + ", " + COLUMN_NAME}
+    };
+    // The second name of each catalog index; the staging copy takes whichever one is free.
+    private static final String ALTERNATE_INDEX_SUFFIX = "_b";
+
+    // --- List projections. The catalog lists show only these columns; ProductDetailActivity loads
+    // the full record (description, bulk pricing, brand) by id when a product is opened. ---
+    static final String PRODUCT_LIST_COLUMNS =
+            "P." + COLUMN_ID + ", P." + COLUMN_NAME + ", P." + COLUMN_PRICE + ", P." + COLUMN_SKU +
+                    ", P." + COLUMN_IMAGE_URL + ", P." + COLUMN_LOCAL_PATH + ", P." + COLUMN_THUMB_PATH;
+    static final String VARIANT_LIST_COLUMNS =
+            "V." + COLUMN_VAR_ID + ", V." + COLUMN_VAR_ITEM_ID + ", V." + COLUMN_VAR_NAME + ", V." + COLUMN_VAR_SKU +
+                    ", V." + COLUMN_VAR_PRICE + ", V." + COLUMN_VAR_IMAGE_URL;
+
+    // The whole catalog in list order with each product's main category, for CatalogSnapshot.
+    static final String SQL_SNAPSHOT_PRODUCTS =
+            "SELECT P." + COLUMN_ID + ", P." + COLUMN_PROD_SUB_CATEGORY_ID + ", SC." + COLUMN_SC_MAIN_CATEGORY_ID +
+                    ", P." + COLUMN_PRICE + ", P." + COLUMN_NAME + ", P." + COLUMN_SKU + ", P." + COLUMN_IMAGE_URL + ", P." + COLUMN_LOCAL_PATH + ", P." + COLUMN_THUMB_PATH +
+                    " FROM " + TABLE_PRODUCTS + " P" +
+                    " LEFT JOIN " + TABLE_SUB_CATEGORIES + " SC ON P." + COLUMN_PROD_SUB_CATEGORY_ID + " = SC." + COLUMN_SC_ID +
+                    " ORDER BY P." + COLUMN_NAME + " ASC, P." + COLUMN_ID + " ASC";
+
+    // --- Keyed lookups. Package-private so DatabaseQueryPlanTest can check each one hits an index. ---
+    static final String SQL_SUB_CATEGORIES_FOR_MAIN =
+            "SELECT * FROM " + TABLE_SUB_CATEGORIES + " WHERE " + COLUMN_SC_MAIN_CATEGORY_ID + " = ? ORDER BY " + COLUMN_SC_NAME + " ASC";
+    static final String SQL_ALL_VARIANTS =
+            "SELECT " + VARIANT_LIST_COLUMNS + " FROM " + TABLE_VARIANTS + " V ORDER BY V." + COLUMN_VAR_ITEM_ID + " ASC";
+    // Images not downloaded yet, or downloaded before renditions existed (local path, no thumb).
+    static final String SQL_MISSING_IMAGES =
+            "SELECT 'product_' AS prefix, P." + COLUMN_ID + " AS id, P." + COLUMN_IMAGE_URL + " AS url, P." + COLUMN_LOCAL_PATH + " AS local," +
+                    " SC." + COLUMN_SC_MAIN_CATEGORY_ID + " AS main_id, P." + COLUMN_PROD_SUB_CATEGORY_ID + " AS sub_id" +
+                    " FROM " + TABLE_PRODUCTS + " P" +
+                    " LEFT JOIN " + TABLE_SUB_CATEGORIES + " SC ON P." + COLUMN_PROD_SUB_CATEGORY_ID + " = SC." + COLUMN_SC_ID +
+                    " WHERE P." + COLUMN_IMAGE_URL + " IS NOT NULL AND P." + COLUMN_IMAGE_URL + " != ''" +
+                    " AND (P." + COLUMN_LOCAL_PATH + " IS NULL OR P." + COLUMN_LOCAL_PATH + " = '' OR P." + COLUMN_THUMB_PATH + " IS NULL)" +
+                    " UNION ALL" +
+                    " SELECT 'variant_', V." + COLUMN_VAR_ID + ", V." + COLUMN_VAR_IMAGE_URL + ", V." + COLUMN_VAR_LOCAL_PATH + "," +
+                    " SC." + COLUMN_SC_MAIN_CATEGORY_ID + ", P." + COLUMN_PROD_SUB_CATEGORY_ID +
+                    " FROM " + TABLE_VARIANTS + " V" +
+                    " LEFT JOIN " + TABLE_PRODUCTS + " P ON V." + COLUMN_VAR_ITEM_ID + " = P." + COLUMN_ID +
+                    " LEFT JOIN " + TABLE_SUB_CATEGORIES + " SC ON P." + COLUMN_PROD_SUB_CATEGORY_ID + " = SC." + COLUMN_SC_ID +
+                    " WHERE V." + COLUMN_VAR_IMAGE_URL + " IS NOT NULL AND V." + COLUMN_VAR_IMAGE_URL + " != ''" +
+                    " AND (V." + COLUMN_VAR_LOCAL_PATH + " IS NULL OR V." + COLUMN_VAR_LOCAL_PATH + " = '' OR V." + COLUMN_VAR_THUMB_PATH + " IS NULL)";
+    static final String SQL_IMAGE_BLOB_BY_URL =
+            "SELECT B.* FROM " + TABLE_IMAGE_URLS + " U JOIN " + TABLE_IMAGE_BLOBS + " B ON U." + COLUMN_IMAGE_URL_HASH + " = B." + COLUMN_BLOB_HASH +
+                    " WHERE U." + COLUMN_IMAGE_URL_URL + " = ?";
+    static final String SQL_IMAGE_BLOB_BY_HASH =
+            "SELECT * FROM " + TABLE_IMAGE_BLOBS + " WHERE " + COLUMN_BLOB_HASH + " = ?";
+    // A reference is stale once its product or variant is gone or shows another file (its image
+    // URL changed, or a publish brought back an older row).
+    static final String SQL_DELETE_STALE_IMAGE_REFS =
+            "DELETE FROM " + TABLE_IMAGE_REFS + " WHERE NOT EXISTS (" +
+                    " SELECT 1 FROM " + TABLE_IMAGE_BLOBS + " B WHERE B." + COLUMN_BLOB_HASH + " = " + TABLE_IMAGE_REFS + "." + COLUMN_REF_HASH +
+                    " AND ((" + TABLE_IMAGE_REFS + "." + COLUMN_REF_PREFIX + " = 'product_' AND EXISTS (SELECT 1 FROM " + TABLE_PRODUCTS + " P" +
+                    " WHERE P." + COLUMN_ID + " = " + TABLE_IMAGE_REFS + "." + COLUMN_REF_OWNER_ID + " AND P." + COLUMN_LOCAL_PATH + " = B." + COLUMN_BLOB_PATH + "))" +
+                    " OR (" + TABLE_IMAGE_REFS + "." + COLUMN_REF_PREFIX + " = 'variant_' AND EXISTS (SELECT 1 FROM " + TABLE_VARIANTS + " V" +
+                    " WHERE V." + COLUMN_VAR_ID + " = " + TABLE_IMAGE_REFS + "." + COLUMN_REF_OWNER_ID + " AND V." + COLUMN_VAR_LOCAL_PATH + " = B." + COLUMN_BLOB_PATH + "))))";
+    // And the other way round: every row that shows a blob holds a reference to it.
+    static final String SQL_RESTORE_IMAGE_REFS =
+            "INSERT OR REPLACE INTO " + TABLE_IMAGE_REFS + " (" + COLUMN_REF_PREFIX + ", " + COLUMN_REF_OWNER_ID + ", " + COLUMN_REF_HASH + ")" +
+                    " SELECT 'product_', P." + COLUMN_ID + ", B." + COLUMN_BLOB_HASH + " FROM " + TABLE_PRODUCTS + " P" +
+                    " JOIN " + TABLE_IMAGE_BLOBS + " B ON P." + COLUMN_LOCAL_PATH + " = B." + COLUMN_BLOB_PATH +
+                    " UNION ALL" +
+                    " SELECT 'variant_', V." + COLUMN_VAR_ID + ", B." + COLUMN_BLOB_HASH + " FROM " + TABLE_VARIANTS + " V" +
+                    " JOIN " + TABLE_IMAGE_BLOBS + " B ON V." + COLUMN_VAR_LOCAL_PATH + " = B." + COLUMN_BLOB_PATH;
+    static final String SQL_UNREFERENCED_IMAGE_BLOBS =
+            "SELECT * FROM " + TABLE_IMAGE_BLOBS + " WHERE " + COLUMN_BLOB_HASH + " NOT IN (SELECT " + COLUMN_REF_HASH + " FROM " + TABLE_IMAGE_REFS + ")";
+    static final String SQL_PRODUCT_BY_ID =
+            "SELECT * FROM " + TABLE_PRODUCTS + " WHERE " + COLUMN_ID + " = ?";
+    static final String SQL_VARIANTS_FOR_PRODUCT =
+            "SELECT * FROM " + TABLE_VARIANTS + " WHERE " + COLUMN_VAR_ITEM_ID + " = ?";
+    static final String SQL_ORDER_BY_ID =
+            "SELECT * FROM " + TABLE_OFFLINE_ORDERS + " WHERE " + COLUMN_ORDER_ID + " = ?";
+    static final String SQL_ORDER_ITEMS_FOR_ORDER =
+            "SELECT * FROM " + TABLE_OFFLINE_ORDER_ITEMS + " WHERE " + COLUMN_ITEM_ORDER_ID + " = ?";
+    static final String SQL_CUSTOMER_BY_ID =
+            "SELECT c." + COLUMN_CUST_ID + ", c." + COLUMN_CUST_SHOP_NAME + ", c." + COLUMN_CUST_ADDRESS + ", r." + COLUMN_ROUTE_NAME +
+                    " FROM " + TABLE_CUSTOMERS + " c" +
+                    " LEFT JOIN " + TABLE_ROUTES + " r ON c." + COLUMN_CUST_ROUTE_ID + " = r." + COLUMN_ROUTE_ID +
+                    " WHERE c." + COLUMN_CUST_ID + " = ?";
+    static final String SQL_PENDING_ORDERS_NEWEST_FIRST =
+            "SELECT * FROM " + TABLE_OFFLINE_ORDERS + " WHERE " + COLUMN_ORDER_SYNC_STATUS + " = ? ORDER BY " + COLUMN_ORDER_ID + " DESC";
+    // Batch loads for getTodaysPendingOrders: each bill with its customer and route, then every pending item.
+    static final String SQL_PENDING_ORDERS_WITH_CUSTOMERS =
+            "SELECT O.*, C." + COLUMN_CUST_SHOP_NAME + ", C." + COLUMN_CUST_ADDRESS + ", R." + COLUMN_ROUTE_NAME +
+                    ", C." + COLUMN_CUST_ID + " AS customer_found" +
+                    " FROM " + TABLE_OFFLINE_ORDERS + " O" +
+                    " LEFT JOIN " + TABLE_CUSTOMERS + " C ON O." + COLUMN_ORDER_CUST_ID + " = C." + COLUMN_CUST_ID +
+                    " LEFT JOIN " + TABLE_ROUTES + " R ON C." + COLUMN_CUST_ROUTE_ID + " = R." + COLUMN_ROUTE_ID +
+                    " WHERE O." + COLUMN_ORDER_SYNC_STATUS + " = ?" +
+                    " ORDER BY O." + COLUMN_ORDER_ID + " DESC";
+    static final String SQL_PENDING_ORDER_ITEMS =
+            "SELECT I.* FROM " + TABLE_OFFLINE_ORDER_ITEMS + " I" +
+                    " JOIN " + TABLE_OFFLINE_ORDERS + " O ON I." + COLUMN_ITEM_ORDER_ID + " = O." + COLUMN_ORDER_ID +
+                    " WHERE O." + COLUMN_ORDER_SYNC_STATUS + " = ?" +
+                    " ORDER BY I." + COLUMN_ITEM_ORDER_ID + " ASC, I." + COLUMN_ITEM_ID + " ASC";
+    // Upload snapshot: one row per item (or one item-less row per empty bill), grouped by order.
+    static final String SQL_PENDING_UPLOAD_SNAPSHOT =
+            "SELECT O." + COLUMN_ORDER_ID + ", O." + COLUMN_ORDER_CUST_ID + ", O." + COLUMN_ORDER_REP_ID +
+                    ", O." + COLUMN_ORDER_DATE + ", O." + COLUMN_ORDER_TOTAL + ", O." + COLUMN_ORDER_BILL_DISCOUNT +
+                    ", I." + COLUMN_ITEM_VARIANT_ID + ", I." + COLUMN_ITEM_QTY + ", I." + COLUMN_ITEM_PRICE +
+                    ", I." + COLUMN_ITEM_CUSTOM_PRICE + ", I." + COLUMN_ITEM_DISCOUNT_PERCENTAGE +
+                    " FROM " + TABLE_OFFLINE_ORDERS + " O" +
+                    " LEFT JOIN " + TABLE_OFFLINE_ORDER_ITEMS + " I ON I." + COLUMN_ITEM_ORDER_ID + " = O." + COLUMN_ORDER_ID +
+                    " WHERE O." + COLUMN_ORDER_SYNC_STATUS + " = ?" +
+                    " ORDER BY O." + COLUMN_ORDER_ID + " ASC, I." + COLUMN_ITEM_ID + " ASC";
+    static final String SQL_PENDING_ORDERS =
+            "SELECT * FROM " + TABLE_OFFLINE_ORDERS + " WHERE " + COLUMN_ORDER_SYNC_STATUS + " = ?";
+    static final String SQL_HAS_PENDING_ORDERS =
+            "SELECT 1 FROM " + TABLE_OFFLINE_ORDERS + " WHERE " + COLUMN_ORDER_SYNC_STATUS + " = 'pending' LIMIT 1";
+
+    // Relative weight of a hit in name, sku, brand, description and variant text.
+    private static final double[] SEARCH_COLUMN_WEIGHTS = {10.0, 8.0, 3.0, 1.0, 5.0};
+
+    // Robolectric tests run on the main looper, so they switch the write-thread check off.
+    static volatile boolean mainThreadWriteCheckEnabled = true;
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 1000;
+    private static final long WAL_SIZE_LIMIT_BYTES = 4L * 1024 * 1024;
+    // Set by the constructor; static so DatabaseWriter can check its callers too.
+    private static volatile boolean debuggable;
+
+    private static DatabaseHelper instance;
+
+    /**
+     * The one helper for the whole process. Screens and workers reach it through the repositories
+     * (CatalogRepository, CustomerRepository, OrderRepository, OutboxRepository); sync uses it
+     * directly for its bulk writes.
+     *
+     * Lifecycle: the database is opened on first use and stays open until the process dies.
+     * Nothing may call close() on it or on a SQLiteDatabase obtained from it, since other
+     * screens share the same connection pool. Writes go through DatabaseWriter.
+     */
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Tests open their own helper; app code uses getInstance.
+    DatabaseHelper(Context context) {
+        this(context, null);
+    }
+
+    // Lets tests observe every query the helper runs.
+    DatabaseHelper(Context context, SQLiteDatabase.CursorFactory cursorFactory) {
+        super(context, DATABASE_NAME, cursorFactory, DATABASE_VERSION);
+        debuggable = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        // In WAL mode the framework keeps a pool of reader connections next to the single writer, so
+        // catalog and billing screens read the last committed data while a sync transaction is open.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // NORMAL is durable in WAL mode up to the last checkpoint and avoids an fsync per commit.
+        db.execSQL("PRAGMA synchronous = NORMAL");
+        // Checkpoint every ~4 MB of WAL instead of the framework's small default, and trim the
+        // file back to that size afterwards so one big sync does not leave a huge WAL behind.
+        runPragma(db, "PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES);
+        runPragma(db, "PRAGMA journal_size_limit = " + WAL_SIZE_LIMIT_BYTES);
+    }
+
+    /**
+     * Folds the WAL back into the main file and truncates it. Sync calls this once it has
+     * finished writing; run it on DatabaseWriter.
+     */
+    public void checkpointWal(SQLiteDatabase db) {
+        assertNotOnMainThread();
+        runPragma(db, "PRAGMA wal_checkpoint(TRUNCATE)");
+    }
+
+    // Pragmas that report a value cannot go through execSQL.
+    private static void runPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(pragma, null);
+            if (cursor != null) cursor.moveToFirst();
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * All writes start here, or in a write method taking the SQLiteDatabase sync keeps
+     * (beginBulkIngest, the catalog staging methods); debug builds reject them on the main thread.
+     */
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        assertNotOnMainThread();
+        return super.getWritableDatabase();
+    }
+
+    /**
+     * The write-thread check. getWritableDatabase() and the helper's write methods run it, and so
+     * does DatabaseWriter.call(); a write on a SQLiteDatabase kept from earlier must go through one
+     * of them.
+     */
+    static void assertNotOnMainThread() {
+        if (debuggable && mainThreadWriteCheckEnabled && Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("Database write on the main thread. Run it on DatabaseWriter.");
+        }
     }
 
     @Override
@@ -272,6 +591,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(CREATE_TABLE_OFFLINE_ORDERS);
         db.execSQL(CREATE_TABLE_OFFLINE_ORDER_ITEMS);
         db.execSQL(CREATE_TABLE_PENDING_CUSTOMERS);
+        db.execSQL(CREATE_TABLE_PRODUCTS_FTS);
+        createIndexes(db);
+        createImageStore(db);
         Log.d(TAG, "Database tables created.");
     }
 
@@ -301,6 +623,77 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 Log.d(TAG, "Added custom_price and discount_percentage columns to offline_order_items table.");
             }
         }
+        if (oldVersion < 9) {
+            db.execSQL(CREATE_TABLE_PRODUCTS_FTS);
+            rebuildProductSearchIndex(db);
+            createIndexes(db);
+            Log.d(TAG, "Added products_fts search index and secondary indexes.");
+        }
+        if (oldVersion < 10) {
+            // Appended, so the staging copies' SELECT * still line up with createProductsTableSql.
+            db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COLUMN_THUMB_PATH + " TEXT;");
+            db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COLUMN_DETAIL_PATH + " TEXT;");
+            db.execSQL("ALTER TABLE " + TABLE_VARIANTS + " ADD COLUMN " + COLUMN_VAR_THUMB_PATH + " TEXT;");
+            db.execSQL("ALTER TABLE " + TABLE_VARIANTS + " ADD COLUMN " + COLUMN_VAR_DETAIL_PATH + " TEXT;");
+            Log.d(TAG, "Added image rendition path columns to products and variants.");
+        }
+        if (oldVersion < 11) {
+            // Images downloaded before v11 stay where their rows point and are deleted with their
+            // product as before; only those still missing renditions move into the store.
+            createImageStore(db);
+            Log.d(TAG, "Added the image store tables.");
+        }
+        // A catalog staged before the upgrade has the old schema; the next sync stages afresh.
+        dropCatalogStaging(db);
+    }
+
+    private void createImageStore(SQLiteDatabase db) {
+        for (String statement : CREATE_IMAGE_STORE) {
+            db.execSQL(statement);
+        }
+    }
+
+    private void createIndexes(SQLiteDatabase db) {
+        createCatalogIndexes(db, false);
+        for (String statement : CREATE_INDEXES) {
+            db.execSQL(statement);
+        }
+    }
+
+    /**
+     * Creates the catalog indexes missing from the live tables, or from the staging copies. An
+     * index keeps its name when its table is renamed, so after a publish the live tables hold the
+     * names the staging copies were given; each index therefore has two names, and the staging
+     * copy takes the one the live table is not using.
+     */
+    private static void createCatalogIndexes(SQLiteDatabase db, boolean staging) {
+        for (String[] index : CATALOG_INDEXES) {
+            String table = staging ? stagingTable(index[1]) : index[1];
+            String alternate = index[0] + ALTERNATE_INDEX_SUFFIX;
+            boolean exists = false;
+            boolean nameTaken = false;
+            Cursor cursor = null;
+            try {
+                cursor = db.rawQuery("SELECT name, tbl_name FROM sqlite_master WHERE type = 'index' AND name IN (?, ?)",
+                        new String[]{index[0], alternate});
+                while (cursor.moveToNext()) {
+                    if (table.equals(cursor.getString(1))) {
+                        exists = true;
+                    } else if (index[0].equals(cursor.getString(0))) {
+                        nameTaken = true;
+                    }
+                }
+            } finally {
+                if (cursor != null) cursor.close();
+            }
+            if (!exists) {
+                db.execSQL("CREATE INDEX " + (nameTaken ? alternate : index[0]) + " ON " + table + " (" + index[2] + ")");
+            }
+        }
+    }
+
+    private static String stagingTable(String table) {
+        return table.equals(TABLE_PRODUCTS) ? TABLE_PRODUCTS_NEXT : TABLE_VARIANTS_NEXT;
     }
 
     // Add this to DatabaseHelper.java
@@ -343,92 +736,293 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return rowsAffected > 0;
     }
 
-    public List<Product> getProductsWithMissingImages() {
-        List<Product> productList = new ArrayList<>();
+    /**
+     * Product and variant images that have not been downloaded yet, with the categories of
+     * their product so the downloader can rank them.
+     */
+    public List<MissingImage> getMissingImages() {
         SQLiteDatabase db = this.getReadableDatabase();
-        String selection = COLUMN_IMAGE_URL + " IS NOT NULL AND " + COLUMN_IMAGE_URL + " != '' AND (" +
-                COLUMN_LOCAL_PATH + " IS NULL OR " + COLUMN_LOCAL_PATH + " = '')";
         Cursor cursor = null;
         try {
-            cursor = db.query(TABLE_PRODUCTS, null, selection, null, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Product product = cursorToProduct(cursor);
-                    if (product.getLocalPath() == null || product.getLocalPath().isEmpty() || !new File(product.getLocalPath()).exists()) {
-                        productList.add(product);
-                    }
-                } while (cursor.moveToNext());
-            }
+            cursor = db.rawQuery(SQL_MISSING_IMAGES, null);
+            return RowMapper.readAll(cursor, MISSING_IMAGE_MAPPER, new ArrayList<MissingImage>());
         } finally {
             if (cursor != null) cursor.close();
         }
-        return productList;
     }
 
-    public List<ProductVariant> getVariantsWithMissingImages() {
-        List<ProductVariant> variantList = new ArrayList<>();
+    // --- Image store. Writes run on DatabaseWriter, which is what keeps a blob from being
+    // released between ImageStore finding it and it being attached to its rows. ---
+
+    /** The blob a URL was stored as, or null if the URL has not been stored. */
+    public ImageStore.Blob findImageBlobByUrl(String url) {
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().rawQuery(SQL_IMAGE_BLOB_BY_URL, new String[]{url});
+            return RowMapper.readFirst(cursor, IMAGE_BLOB_MAPPER);
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    public ImageStore.Blob findImageBlob(String hash) {
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().rawQuery(SQL_IMAGE_BLOB_BY_HASH, new String[]{hash});
+            return RowMapper.readFirst(cursor, IMAGE_BLOB_MAPPER);
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Records blob as what url serves and points every owner (products and variants showing that
+     * URL) at it, in one transaction. While a sync has the catalog staged, the staged rows are
+     * pointed at it too, or publishing would bring back the rows without it. Returns false,
+     * changing nothing, if the blob's file has been released since the caller found it.
+     */
+    public boolean attachImageBlob(String url, ImageStore.Blob blob, List<MissingImage> owners) {
+        if (!new File(blob.path).exists()) {
+            return false;
+        }
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            boolean staged = hasCatalogStaging(db);
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_BLOB_HASH, blob.hash);
+            values.put(COLUMN_BLOB_PATH, blob.path);
+            values.put(COLUMN_BLOB_THUMB_PATH, blob.thumbPath);
+            values.put(COLUMN_BLOB_DETAIL_PATH, blob.detailPath);
+            db.insertWithOnConflict(TABLE_IMAGE_BLOBS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+            values.clear();
+            values.put(COLUMN_IMAGE_URL_URL, url);
+            values.put(COLUMN_IMAGE_URL_HASH, blob.hash);
+            db.insertWithOnConflict(TABLE_IMAGE_URLS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+            for (MissingImage owner : owners) {
+                values.clear();
+                values.put(COLUMN_REF_PREFIX, owner.prefix);
+                values.put(COLUMN_REF_OWNER_ID, owner.id);
+                values.put(COLUMN_REF_HASH, blob.hash);
+                db.insertWithOnConflict(TABLE_IMAGE_REFS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                updateProductOrVariantImagePaths(db, staged, url, owner.id, owner.prefix, blob.path, blob.thumbPath, blob.detailPath);
+            }
+            db.setTransactionSuccessful();
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Brings image_refs in line with the live catalog, then deletes and returns the blobs no
+     * product or variant refers to any more. The caller deletes their files afterwards.
+     */
+    public List<ImageStore.Blob> releaseUnreferencedImageBlobs() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        List<ImageStore.Blob> released = new ArrayList<>();
+        db.beginTransaction();
+        try {
+            db.execSQL(SQL_DELETE_STALE_IMAGE_REFS);
+            db.execSQL(SQL_RESTORE_IMAGE_REFS);
+            Cursor cursor = null;
+            try {
+                cursor = db.rawQuery(SQL_UNREFERENCED_IMAGE_BLOBS, null);
+                RowMapper.readAll(cursor, IMAGE_BLOB_MAPPER, released);
+            } finally {
+                if (cursor != null) cursor.close();
+            }
+            for (ImageStore.Blob blob : released) {
+                String[] args = new String[]{blob.hash};
+                db.delete(TABLE_IMAGE_URLS, COLUMN_IMAGE_URL_HASH + "=?", args);
+                db.delete(TABLE_IMAGE_BLOBS, COLUMN_BLOB_HASH + "=?", args);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return released;
+    }
+
+    /**
+     * The image files, originals and renditions, that products and variants in the live or the
+     * staged catalog show from outside the image store, i.e. files downloaded before it existed.
+     */
+    public Set<String> getOlderImagePaths(String storePrefix) {
         SQLiteDatabase db = this.getReadableDatabase();
-        String selection = COLUMN_VAR_IMAGE_URL + " IS NOT NULL AND " + COLUMN_VAR_IMAGE_URL + " != '' AND (" +
-                COLUMN_VAR_LOCAL_PATH + " IS NULL OR " + COLUMN_VAR_LOCAL_PATH + " = '')";
+        StringBuilder sql = new StringBuilder();
+        appendOlderImagePaths(sql, TABLE_PRODUCTS, COLUMN_LOCAL_PATH, COLUMN_THUMB_PATH, COLUMN_DETAIL_PATH);
+        appendOlderImagePaths(sql, TABLE_VARIANTS, COLUMN_VAR_LOCAL_PATH, COLUMN_VAR_THUMB_PATH, COLUMN_VAR_DETAIL_PATH);
+        if (hasCatalogStaging(db)) {
+            appendOlderImagePaths(sql, TABLE_PRODUCTS_NEXT, COLUMN_LOCAL_PATH, COLUMN_THUMB_PATH, COLUMN_DETAIL_PATH);
+            appendOlderImagePaths(sql, TABLE_VARIANTS_NEXT, COLUMN_VAR_LOCAL_PATH, COLUMN_VAR_THUMB_PATH, COLUMN_VAR_DETAIL_PATH);
+        }
+        Set<String> paths = new HashSet<>();
         Cursor cursor = null;
         try {
-            cursor = db.query(TABLE_VARIANTS, null, selection, null, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    ProductVariant variant = cursorToVariant(cursor);
-                    if (variant.getLocalPath() == null || variant.getLocalPath().isEmpty() || !new File(variant.getLocalPath()).exists()) {
-                        variantList.add(variant);
+            cursor = db.rawQuery(sql.toString(), new String[]{storePrefix});
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < 3; i++) {
+                    String path = cursor.getString(i);
+                    if (path != null && !path.isEmpty()) {
+                        paths.add(path);
                     }
-                } while (cursor.moveToNext());
+                }
             }
         } finally {
             if (cursor != null) cursor.close();
         }
-        return variantList;
+        return paths;
     }
 
-    private Product cursorToProduct(Cursor cursor) {
-        int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID));
-        String name = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME));
-        double price = cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_PRICE));
-        String desc = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DESCRIPTION));
-        String imageUrl = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_IMAGE_URL));
-        String localPath = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LOCAL_PATH));
-        String brand = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BRAND_NAME));
-        int qtyBox = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_QTY_PER_BOX));
-        double bulkPrice = cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_BULK_PRICE));
-        String cartoonPcs = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CARTOON_PCS));
-        String bulkDesc = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BULK_DESCRIPTION));
-        String sku = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SKU));
-        return new Product(id, name, price, desc, imageUrl, localPath, brand, qtyBox, bulkPrice, cartoonPcs, bulkDesc, sku);
-    }
-
-    private ProductVariant cursorToVariant(Cursor cursor) {
-        int varId = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_VAR_ID));
-        int parentId = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_VAR_ITEM_ID));
-        String varName = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_VAR_NAME));
-        String varSku = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_VAR_SKU));
-        double varPrice = cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_VAR_PRICE));
-        String varImageUrl = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_VAR_IMAGE_URL));
-        String varLocalPath = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_VAR_LOCAL_PATH));
-        ProductVariant variant = new ProductVariant(varId, parentId, varName, varSku, varPrice, varImageUrl);
-        variant.setLocalPath(varLocalPath);
-        return variant;
+    // Rows move into the store as their images are downloaded again, so this reads fewer over time.
+    private static void appendOlderImagePaths(StringBuilder sql, String table, String local, String thumb, String detail) {
+        if (sql.length() > 0) {
+            sql.append(" UNION ALL ");
+        }
+        sql.append("SELECT ").append(local).append(", ").append(thumb).append(", ").append(detail)
+                .append(" FROM ").append(table)
+                .append(" WHERE ").append(local).append(" IS NOT NULL AND substr(").append(local).append(", 1, length(?1)) != ?1");
     }
 
+    // --- Row mappers. Each resolves its column indices once per cursor; see RowMapper. ---
+
+    static final RowMapper.Binder<Product> PRODUCT_MAPPER = cursor -> {
+        int id = cursor.getColumnIndexOrThrow(COLUMN_ID);
+        int name = cursor.getColumnIndex(COLUMN_NAME);
+        int price = cursor.getColumnIndex(COLUMN_PRICE);
+        int desc = cursor.getColumnIndex(COLUMN_DESCRIPTION);
+        int imageUrl = cursor.getColumnIndex(COLUMN_IMAGE_URL);
+        int localPath = cursor.getColumnIndex(COLUMN_LOCAL_PATH);
+        int brand = cursor.getColumnIndex(COLUMN_BRAND_NAME);
+        int qtyBox = cursor.getColumnIndex(COLUMN_QTY_PER_BOX);
+        int bulkPrice = cursor.getColumnIndex(COLUMN_BULK_PRICE);
+        int cartoonPcs = cursor.getColumnIndex(COLUMN_CARTOON_PCS);
+        int bulkDesc = cursor.getColumnIndex(COLUMN_BULK_DESCRIPTION);
+        int sku = cursor.getColumnIndex(COLUMN_SKU);
+        int thumbPath = cursor.getColumnIndex(COLUMN_THUMB_PATH);
+        int detailPath = cursor.getColumnIndex(COLUMN_DETAIL_PATH);
+        return c -> {
+            Product product = new Product(c.getInt(id), RowMapper.optString(c, name), RowMapper.optDouble(c, price),
+                    RowMapper.optString(c, desc), RowMapper.optString(c, imageUrl), RowMapper.optString(c, localPath),
+                    RowMapper.optString(c, brand), RowMapper.optInt(c, qtyBox), RowMapper.optDouble(c, bulkPrice),
+                    RowMapper.optString(c, cartoonPcs), RowMapper.optString(c, bulkDesc), RowMapper.optString(c, sku));
+            product.setThumbPath(RowMapper.optString(c, thumbPath));
+            product.setDetailPath(RowMapper.optString(c, detailPath));
+            return product;
+        };
+    };
+
+    static final RowMapper.Binder<ProductVariant> VARIANT_MAPPER = cursor -> {
+        int varId = cursor.getColumnIndexOrThrow(COLUMN_VAR_ID);
+        int parentId = cursor.getColumnIndex(COLUMN_VAR_ITEM_ID);
+        int varName = cursor.getColumnIndex(COLUMN_VAR_NAME);
+        int varSku = cursor.getColumnIndex(COLUMN_VAR_SKU);
+        int varPrice = cursor.getColumnIndex(COLUMN_VAR_PRICE);
+        int varImageUrl = cursor.getColumnIndex(COLUMN_VAR_IMAGE_URL);
+        int varLocalPath = cursor.getColumnIndex(COLUMN_VAR_LOCAL_PATH);
+        int varThumbPath = cursor.getColumnIndex(COLUMN_VAR_THUMB_PATH);
+        int varDetailPath = cursor.getColumnIndex(COLUMN_VAR_DETAIL_PATH);
+        return c -> {
+            ProductVariant variant = new ProductVariant(c.getInt(varId), RowMapper.optInt(c, parentId),
+                    RowMapper.optString(c, varName), RowMapper.optString(c, varSku), RowMapper.optDouble(c, varPrice),
+                    RowMapper.optString(c, varImageUrl));
+            variant.setLocalPath(RowMapper.optString(c, varLocalPath));
+            variant.setThumbPath(RowMapper.optString(c, varThumbPath));
+            variant.setDetailPath(RowMapper.optString(c, varDetailPath));
+            return variant;
+        };
+    };
+
+    private static final RowMapper.Binder<MissingImage> MISSING_IMAGE_MAPPER = cursor -> {
+        int prefix = cursor.getColumnIndexOrThrow("prefix");
+        int id = cursor.getColumnIndexOrThrow("id");
+        int url = cursor.getColumnIndexOrThrow("url");
+        int local = cursor.getColumnIndexOrThrow("local");
+        int mainId = cursor.getColumnIndexOrThrow("main_id");
+        int subId = cursor.getColumnIndexOrThrow("sub_id");
+        return c -> new MissingImage(c.getString(prefix), c.getInt(id), c.getString(url), c.getString(local),
+                c.getInt(mainId), c.getInt(subId));
+    };
+
+    private static final RowMapper.Binder<ImageStore.Blob> IMAGE_BLOB_MAPPER = cursor -> {
+        int hash = cursor.getColumnIndexOrThrow(COLUMN_BLOB_HASH);
+        int path = cursor.getColumnIndexOrThrow(COLUMN_BLOB_PATH);
+        int thumb = cursor.getColumnIndexOrThrow(COLUMN_BLOB_THUMB_PATH);
+        int detail = cursor.getColumnIndexOrThrow(COLUMN_BLOB_DETAIL_PATH);
+        return c -> new ImageStore.Blob(c.getString(hash), c.getString(path), c.getString(thumb), c.getString(detail));
+    };
+
+    private static final RowMapper.Binder<MainCategory> MAIN_CATEGORY_MAPPER = cursor -> {
+        int id = cursor.getColumnIndexOrThrow(COLUMN_MC_ID);
+        int name = cursor.getColumnIndexOrThrow(COLUMN_MC_NAME);
+        return c -> new MainCategory(c.getInt(id), c.getString(name));
+    };
+
+    private static final RowMapper.Binder<SubCategory> SUB_CATEGORY_MAPPER = cursor -> {
+        int id = cursor.getColumnIndexOrThrow(COLUMN_SC_ID);
+        int name = cursor.getColumnIndexOrThrow(COLUMN_SC_NAME);
+        return c -> new SubCategory(c.getInt(id), c.getString(name));
+    };
+
+    private static final RowMapper.Binder<Route> ROUTE_MAPPER = cursor -> {
+        int id = cursor.getColumnIndexOrThrow(COLUMN_ROUTE_ID);
+        int name = cursor.getColumnIndexOrThrow(COLUMN_ROUTE_NAME);
+        return c -> new Route(c.getInt(id), c.getString(name));
+    };
+
+    // Contact number and route id are optional, so the billing spinner can leave them out.
+    private static final RowMapper.Binder<OrderManager.Customer> CUSTOMER_MAPPER = cursor -> {
+        int id = cursor.getColumnIndexOrThrow(COLUMN_CUST_ID);
+        int name = cursor.getColumnIndexOrThrow(COLUMN_CUST_SHOP_NAME);
+        int address = cursor.getColumnIndexOrThrow(COLUMN_CUST_ADDRESS);
+        int routeName = cursor.getColumnIndexOrThrow(COLUMN_ROUTE_NAME);
+        int contact = cursor.getColumnIndex(COLUMN_CUST_CONTACT_NUMBER);
+        int routeId = cursor.getColumnIndex(COLUMN_CUST_ROUTE_ID);
+        return c -> {
+            OrderManager.Customer customer = new OrderManager.Customer(c.getInt(id), c.getString(name), c.getString(routeName));
+            customer.setAddress(c.getString(address));
+            customer.setContactNumber(RowMapper.optString(c, contact));
+            customer.setRouteId(RowMapper.optInt(c, routeId));
+            return customer;
+        };
+    };
+
+    private static final RowMapper.Binder<PendingCustomer> PENDING_CUSTOMER_MAPPER = cursor -> {
+        int localId = cursor.getColumnIndexOrThrow(COLUMN_PC_LOCAL_ID);
+        int shopName = cursor.getColumnIndexOrThrow(COLUMN_PC_SHOP_NAME);
+        int contact = cursor.getColumnIndexOrThrow(COLUMN_PC_CONTACT_NUMBER);
+        int address = cursor.getColumnIndexOrThrow(COLUMN_PC_ADDRESS);
+        int routeId = cursor.getColumnIndexOrThrow(COLUMN_PC_ROUTE_ID);
+        int userId = cursor.getColumnIndexOrThrow(COLUMN_PC_USER_ID);
+        return c -> new PendingCustomer(c.getLong(localId), c.getString(shopName), c.getString(contact),
+                c.getString(address), c.getInt(routeId), c.getInt(userId));
+    };
+
+    private static final RowMapper.Binder<OrderManager.OrderItem> ORDER_ITEM_MAPPER = cursor -> {
+        int variantId = cursor.getColumnIndexOrThrow(COLUMN_ITEM_VARIANT_ID);
+        int productName = cursor.getColumnIndexOrThrow(COLUMN_ITEM_PRODUCT_NAME);
+        int quantity = cursor.getColumnIndexOrThrow(COLUMN_ITEM_QTY);
+        int originalPrice = cursor.getColumnIndexOrThrow(COLUMN_ITEM_PRICE);
+        int customPrice = cursor.getColumnIndexOrThrow(COLUMN_ITEM_CUSTOM_PRICE);
+        int discountPercentage = cursor.getColumnIndexOrThrow(COLUMN_ITEM_DISCOUNT_PERCENTAGE);
+        return c -> {
+            ProductVariant variant = new ProductVariant(c.getInt(variantId), 0, c.getString(productName), "", c.getDouble(originalPrice), "");
+            OrderManager.OrderItem orderItem = new OrderManager.OrderItem(variant, c.getInt(quantity));
+            orderItem.setCustomPrice(c.isNull(customPrice) ? null : c.getDouble(customPrice));
+            orderItem.setDiscountPercentage(c.getDouble(discountPercentage));
+            return orderItem;
+        };
+    };
+
     public ArrayList<MainCategory> getAllMainCategories(SQLiteDatabase db) {
         ArrayList<MainCategory> categoryList = new ArrayList<>();
         Cursor cursor = null;
         try {
             cursor = db.rawQuery("SELECT * FROM " + TABLE_MAIN_CATEGORIES + " ORDER BY " + COLUMN_MC_NAME + " ASC", null);
-
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_MC_ID));
-                    String name = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_MC_NAME));
-                    categoryList.add(new MainCategory(id, name));
-                } while (cursor.moveToNext());
-            }
+            RowMapper.readAll(cursor, MAIN_CATEGORY_MAPPER, categoryList);
         } finally {
             if (cursor != null) cursor.close();
         }
@@ -441,14 +1035,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         Cursor cursor = null;
         try {
             cursor = db.rawQuery("SELECT * FROM " + TABLE_MAIN_CATEGORIES + " ORDER BY " + COLUMN_MC_NAME + " ASC", null);
-
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_MC_ID));
-                    String name = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_MC_NAME));
-                    categoryList.add(new MainCategory(id, name));
-                } while (cursor.moveToNext());
-            }
+            RowMapper.readAll(cursor, MAIN_CATEGORY_MAPPER, categoryList);
         } finally {
             if (cursor != null) cursor.close();
         }
@@ -460,176 +1047,490 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = null;
         try {
-            cursor = db.query(TABLE_SUB_CATEGORIES, null, COLUMN_SC_MAIN_CATEGORY_ID + "=?",
-                    new String[]{String.valueOf(mainCategoryId)}, null, null, COLUMN_SC_NAME + " ASC");
-
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_SC_ID));
-                    String name = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SC_NAME));
-                    subCategoryList.add(new SubCategory(id, name));
-                } while (cursor.moveToNext());
-            }
+            cursor = db.rawQuery(SQL_SUB_CATEGORIES_FOR_MAIN, new String[]{String.valueOf(mainCategoryId)});
+            RowMapper.readAll(cursor, SUB_CATEGORY_MAPPER, subCategoryList);
         } finally {
             if (cursor != null) cursor.close();
         }
         return subCategoryList;
     }
 
-    public ArrayList<Product> getProductsForSubCategory(int subCategoryId) {
+    // --- Methods for Paged Catalog Loading ---
+
+    /**
+     * Builds the keyset page query over (name, item_id). item_id is the rowid, so the name
+     * indexes already end in it and each page is a short index range read.
+     * Row-value comparisons need SQLite 3.15 (API 26), hence the expanded form; its leading
+     * name >= ? is what lets the planner start the range at the anchor.
+     * A main category filters by sub-category set rather than a join: the unary + keeps the planner
+     * off idx_products_sub_category, which would read every product of the category and sort them,
+     * and walks idx_products_name_sub_category in page order instead.
+     */
+    static String buildProductsPageQuery(int mainCategoryId, int subCategoryId, boolean hasAnchor) {
+        return buildProductsPageQuery(mainCategoryId, subCategoryId, hasAnchor ? KEYSET_AFTER_NAME : "");
+    }
+
+    // After a (name, item_id) anchor with a name.
+    static final String KEYSET_AFTER_NAME = " AND P." + COLUMN_NAME + " >= ? AND (P." + COLUMN_NAME + " > ? OR P." + COLUMN_ID + " > ?)";
+    // After an anchor whose name is NULL: NULL names sort first, so the rest of those by item_id, then every named row.
+    static final String KEYSET_AFTER_NULL_NAME = " AND P." + COLUMN_NAME + " IS NULL AND P." + COLUMN_ID + " > ?";
+    static final String KEYSET_NAMED = " AND P." + COLUMN_NAME + " IS NOT NULL";
+
+    static String buildProductsPageQuery(int mainCategoryId, int subCategoryId, String keyset) {
+        StringBuilder query = new StringBuilder("SELECT " + PRODUCT_LIST_COLUMNS + " FROM " + TABLE_PRODUCTS + " P");
+        query.append(" WHERE 1 = 1");
+        if (mainCategoryId > 0) {
+            query.append(" AND +P.").append(COLUMN_PROD_SUB_CATEGORY_ID).append(" IN (SELECT ").append(COLUMN_SC_ID)
+                    .append(" FROM ").append(TABLE_SUB_CATEGORIES).append(" WHERE ").append(COLUMN_SC_MAIN_CATEGORY_ID).append(" = ?)");
+        }
+        if (subCategoryId > 0) {
+            query.append(" AND P.").append(COLUMN_PROD_SUB_CATEGORY_ID).append(" = ?");
+        }
+        query.append(keyset);
+        query.append(" ORDER BY P.").append(COLUMN_NAME).append(" ASC, P.").append(COLUMN_ID).append(" ASC LIMIT ?");
+        return query.toString();
+    }
+
+    /**
+     * Returns the next page of list products (with variants) after the given (name, item_id) anchor,
+     * where anchorName is the anchor row's name as stored, possibly NULL. Pass anchorItemId 0 for
+     * the first page. 0 for a category id means "any".
+     */
+    public ArrayList<Product> getProductsPage(int mainCategoryId, int subCategoryId, String anchorName, int anchorItemId, int pageSize) {
         ArrayList<Product> productList = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
+        if (anchorItemId == 0) {
+            readProductsPage(db, mainCategoryId, subCategoryId, "", new String[0], pageSize, productList);
+        } else if (anchorName != null) {
+            readProductsPage(db, mainCategoryId, subCategoryId, KEYSET_AFTER_NAME,
+                    new String[]{anchorName, anchorName, String.valueOf(anchorItemId)}, pageSize, productList);
+        } else {
+            readProductsPage(db, mainCategoryId, subCategoryId, KEYSET_AFTER_NULL_NAME,
+                    new String[]{String.valueOf(anchorItemId)}, pageSize, productList);
+            if (productList.size() < pageSize) {
+                readProductsPage(db, mainCategoryId, subCategoryId, KEYSET_NAMED, new String[0],
+                        pageSize - productList.size(), productList);
+            }
+        }
+        return productList;
+    }
+
+    private void readProductsPage(SQLiteDatabase db, int mainCategoryId, int subCategoryId, String keyset, String[] keysetArgs,
+                                  int limit, List<Product> out) {
+        List<String> args = new ArrayList<>();
+        if (mainCategoryId > 0) {
+            args.add(String.valueOf(mainCategoryId));
+        }
+        if (subCategoryId > 0) {
+            args.add(String.valueOf(subCategoryId));
+        }
+        Collections.addAll(args, keysetArgs);
+        args.add(String.valueOf(limit));
+
+        String pageSql = buildProductsPageQuery(mainCategoryId, subCategoryId, keyset);
+        String[] pageArgs = args.toArray(new String[0]);
+        List<Product> rows = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = db.query(TABLE_PRODUCTS, null, COLUMN_PROD_SUB_CATEGORY_ID + "=?",
-                    new String[]{String.valueOf(subCategoryId)}, null, null, COLUMN_NAME + " ASC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    productList.add(cursorToProduct(cursor));
-                } while (cursor.moveToNext());
-            }
+            cursor = db.rawQuery(pageSql, pageArgs);
+            RowMapper.readAll(cursor, PRODUCT_MAPPER, rows);
         } finally {
             if (cursor != null) cursor.close();
         }
 
-        if (!productList.isEmpty()) {
-            attachVariantsToProducts(db, productList);
+        if (!rows.isEmpty()) {
+            mergeVariantsIntoProducts(db, rows, pageSql, pageArgs);
+            out.addAll(rows);
         }
-        return productList;
     }
 
-    public ArrayList<Product> getProductsForMainCategory(int mainCategoryId) {
-        ArrayList<Product> productList = new ArrayList<>();
+    public int countProducts(int mainCategoryId, int subCategoryId) {
         SQLiteDatabase db = this.getReadableDatabase();
+        StringBuilder query = new StringBuilder("SELECT COUNT(*) FROM " + TABLE_PRODUCTS + " P");
+        List<String> args = new ArrayList<>();
+        if (mainCategoryId > 0) {
+            query.append(" JOIN ").append(TABLE_SUB_CATEGORIES).append(" SC ON P.").append(COLUMN_PROD_SUB_CATEGORY_ID).append(" = SC.").append(COLUMN_SC_ID);
+        }
+        query.append(" WHERE 1 = 1");
+        if (mainCategoryId > 0) {
+            query.append(" AND SC.").append(COLUMN_SC_MAIN_CATEGORY_ID).append(" = ?");
+            args.add(String.valueOf(mainCategoryId));
+        }
+        if (subCategoryId > 0) {
+            query.append(" AND P.").append(COLUMN_PROD_SUB_CATEGORY_ID).append(" = ?");
+            args.add(String.valueOf(subCategoryId));
+        }
         Cursor cursor = null;
-        String query = "SELECT P.* FROM " + TABLE_PRODUCTS + " P" +
-                " JOIN " + TABLE_SUB_CATEGORIES + " SC ON P." + COLUMN_PROD_SUB_CATEGORY_ID + " = SC." + COLUMN_SC_ID +
-                " WHERE SC." + COLUMN_SC_MAIN_CATEGORY_ID + " = ?" +
-                " ORDER BY P." + COLUMN_NAME + " ASC;";
         try {
-            cursor = db.rawQuery(query, new String[]{String.valueOf(mainCategoryId)});
+            cursor = db.rawQuery(query.toString(), args.toArray(new String[0]));
             if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    productList.add(cursorToProduct(cursor));
-                } while (cursor.moveToNext());
+                return cursor.getInt(0);
             }
         } finally {
             if (cursor != null) cursor.close();
         }
+        return 0;
+    }
 
-        if (!productList.isEmpty()) {
-            attachVariantsToProducts(db, productList);
+    /**
+     * Attaches variants to products read by keysetSql, which must select those products' item_id
+     * with args. The variants are read by item_id off their index, restricted to that same query
+     * rather than to an id list, and the products are walked in item_id order alongside them, so
+     * this is one pass over each side.
+     */
+    private void mergeVariantsIntoProducts(SQLiteDatabase db, List<Product> products, String keysetSql, String[] args) {
+        List<Product> byItemId = new ArrayList<>(products);
+        Collections.sort(byItemId, (a, b) -> Integer.compare(a.getItemId(), b.getItemId()));
+
+        Cursor variantCursor = null;
+        try {
+            variantCursor = db.rawQuery(buildVariantsForKeysetQuery(keysetSql), args);
+            if (variantCursor != null && variantCursor.moveToFirst()) {
+                RowMapper<ProductVariant> mapper = VARIANT_MAPPER.bind(variantCursor);
+                int itemIdIndex = variantCursor.getColumnIndexOrThrow(COLUMN_VAR_ITEM_ID);
+                int p = 0;
+                do {
+                    int itemId = variantCursor.getInt(itemIdIndex);
+                    while (p < byItemId.size() && byItemId.get(p).getItemId() < itemId) {
+                        p++;
+                    }
+                    if (p == byItemId.size()) {
+                        break;
+                    }
+                    if (byItemId.get(p).getItemId() == itemId) {
+                        byItemId.get(p).getVariants().add(mapper.map(variantCursor));
+                    }
+                } while (variantCursor.moveToNext());
+            }
+        } finally {
+            if (variantCursor != null) variantCursor.close();
         }
-        return productList;
     }
 
-    public ArrayList<Product> getAllProducts() {
-        ArrayList<Product> productList = new ArrayList<>();
+    // The list columns of the variants of whatever products keysetSql selects, by item_id.
+    static String buildVariantsForKeysetQuery(String keysetSql) {
+        return "SELECT " + VARIANT_LIST_COLUMNS + " FROM " + TABLE_VARIANTS + " V" +
+                " WHERE V." + COLUMN_VAR_ITEM_ID + " IN (SELECT " + COLUMN_ID + " FROM (" + keysetSql + "))" +
+                " ORDER BY V." + COLUMN_VAR_ITEM_ID + " ASC";
+    }
+
+    /** The full product record with all its variants, for the detail screen. */
+    public Product getProductById(int itemId) {
         SQLiteDatabase db = this.getReadableDatabase();
+        Product product = null;
         Cursor cursor = null;
         try {
-            cursor = db.query(TABLE_PRODUCTS, null, null, null, null, null, COLUMN_NAME + " ASC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    productList.add(cursorToProduct(cursor));
-                } while (cursor.moveToNext());
+            cursor = db.rawQuery(SQL_PRODUCT_BY_ID, new String[]{String.valueOf(itemId)});
+            product = RowMapper.readFirst(cursor, PRODUCT_MAPPER);
+            if (product != null) {
+                product.setVariants(getVariantsForProduct(db, itemId));
             }
         } finally {
             if (cursor != null) cursor.close();
         }
+        return product;
+    }
 
-        if (!productList.isEmpty()) {
-            attachVariantsToProducts(db, productList);
+    public List<ProductVariant> getVariantsForProduct(SQLiteDatabase db, int itemId) {
+        List<ProductVariant> variantList = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(SQL_VARIANTS_FOR_PRODUCT, new String[]{String.valueOf(itemId)});
+            RowMapper.readAll(cursor, VARIANT_MAPPER, variantList);
+        } finally {
+            if (cursor != null) cursor.close();
         }
-        return productList;
+        return variantList;
     }
 
-    private void attachVariantsToProducts(SQLiteDatabase db, List<Product> products) {
-        Map<Integer, Product> productMap = new HashMap<>();
-        for (Product product : products) {
-            productMap.put(product.getItemId(), product);
-        }
+    // --- Methods for Product Search ---
+
+    /**
+     * Starts a bulk ingest on db; see BulkIngest. The caller must close() it in a finally block.
+     */
+    public BulkIngest beginBulkIngest(SQLiteDatabase db, String label) {
+        assertNotOnMainThread();
+        return new BulkIngest(db, label);
+    }
+
+    private void rebuildProductSearchIndex(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLE_PRODUCTS_FTS);
+        db.execSQL("INSERT INTO " + TABLE_PRODUCTS_FTS + " (docid, " + SEARCH_COLUMNS + ")" +
+                " SELECT P." + COLUMN_ID + ", P." + COLUMN_NAME + ", P." + COLUMN_SKU + ", P." + COLUMN_BRAND_NAME + ", P." + COLUMN_DESCRIPTION + "," +
+                " (SELECT group_concat(IFNULL(V." + COLUMN_VAR_NAME + ", '') || ' ' || IFNULL(V." + COLUMN_VAR_SKU + ", ''), ' ')" +
+                " FROM " + TABLE_VARIANTS + " V WHERE V." + COLUMN_VAR_ITEM_ID + " = P." + COLUMN_ID + ")" +
+                " FROM " + TABLE_PRODUCTS + " P");
+    }
 
-        List<Integer> productIds = new ArrayList<>(productMap.keySet());
-        if (productIds.isEmpty()) {
+    // --- Catalog staging ---
+
+    /**
+     * Starts a product sync in shadow tables. products_next, variants_next and products_fts_next
+     * begin as copies of the live catalog; sync edits them and publishCatalogStaging swaps them
+     * in, so readers only ever see the whole old catalog or the whole new one. Staging left behind
+     * by a sync that failed is kept as it is, chunks already written included, so the next sync
+     * carries on from it; only publishing or a schema upgrade removes it. Run on DatabaseWriter.
+     *
+     * The copy and its indexes cost time and disk in proportion to the whole catalog, however few
+     * products changed, so the time is logged on every sync. It runs only when the server reports
+     * a change, and buys a publish that renames tables instead of copying rows while the screens
+     * read.
+     */
+    public void beginCatalogStaging(SQLiteDatabase db) {
+        assertNotOnMainThread();
+        if (hasCatalogStaging(db)) {
+            Log.d(TAG, "Resuming the staged catalog of an earlier sync");
             return;
         }
+        long start = SystemClock.elapsedRealtime();
+        db.beginTransaction();
+        try {
+            db.execSQL(createProductsTableSql(TABLE_PRODUCTS_NEXT));
+            db.execSQL(createVariantsTableSql(TABLE_VARIANTS_NEXT));
+            db.execSQL(createProductSearchTableSql(TABLE_PRODUCTS_FTS_NEXT));
+            db.execSQL("INSERT INTO " + TABLE_PRODUCTS_NEXT + " SELECT * FROM " + TABLE_PRODUCTS);
+            db.execSQL("INSERT INTO " + TABLE_VARIANTS_NEXT + " SELECT * FROM " + TABLE_VARIANTS);
+            db.execSQL("INSERT INTO " + TABLE_PRODUCTS_FTS_NEXT + " (docid, " + SEARCH_COLUMNS + ")" +
+                    " SELECT docid, " + SEARCH_COLUMNS + " FROM " + TABLE_PRODUCTS_FTS);
+            // Built here rather than at publish, so publishing never sorts the catalog. Sync also
+            // replaces variants by item_id, which needs the variants index while it writes.
+            createCatalogIndexes(db, true);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "Staged the catalog in " + (SystemClock.elapsedRealtime() - start) + " ms");
+    }
 
-        StringBuilder inClause = new StringBuilder();
-        String[] args = new String[productIds.size()];
-        for (int i = 0; i < productIds.size(); i++) {
-            inClause.append("?");
-            if (i < productIds.size() - 1) {
-                inClause.append(",");
+    /**
+     * Makes the staged catalog live in one short transaction: drop the live tables and rename the
+     * shadows, already indexed, into place. No rows are copied and no index is built.
+     */
+    public void publishCatalogStaging(SQLiteDatabase db) {
+        assertNotOnMainThread();
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP TABLE " + TABLE_PRODUCTS);
+            db.execSQL("DROP TABLE " + TABLE_VARIANTS);
+            db.execSQL("DROP TABLE " + TABLE_PRODUCTS_FTS);
+            db.execSQL("ALTER TABLE " + TABLE_PRODUCTS_NEXT + " RENAME TO " + TABLE_PRODUCTS);
+            db.execSQL("ALTER TABLE " + TABLE_VARIANTS_NEXT + " RENAME TO " + TABLE_VARIANTS);
+            db.execSQL("ALTER TABLE " + TABLE_PRODUCTS_FTS_NEXT + " RENAME TO " + TABLE_PRODUCTS_FTS);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Removes products, with their variants and search rows, from the staged catalog in one transaction. */
+    public void deleteStagedProducts(SQLiteDatabase db, Collection<Integer> itemIds) {
+        assertNotOnMainThread();
+        db.beginTransaction();
+        try {
+            for (int id : itemIds) {
+                String[] args = new String[]{String.valueOf(id)};
+                db.delete(TABLE_PRODUCTS_NEXT, COLUMN_ID + "=?", args);
+                db.delete(TABLE_VARIANTS_NEXT, COLUMN_VAR_ITEM_ID + "=?", args);
+                db.delete(TABLE_PRODUCTS_FTS_NEXT, "docid=?", args);
             }
-            args[i] = String.valueOf(productIds.get(i));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
+    }
 
-        Cursor variantCursor = null;
+    /** Whether a sync has staged a catalog that is not published yet. */
+    public boolean hasCatalogStaging(SQLiteDatabase db) {
+        Cursor cursor = null;
         try {
-            variantCursor = db.query(TABLE_VARIANTS, null, COLUMN_VAR_ITEM_ID + " IN (" + inClause.toString() + ")",
-                    args, null, null, null);
+            cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?", new String[]{TABLE_PRODUCTS_NEXT});
+            return cursor.moveToFirst();
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
 
-            if (variantCursor != null && variantCursor.moveToFirst()) {
-                do {
-                    ProductVariant variant = cursorToVariant(variantCursor);
-                    Product parent = productMap.get(variant.getItemId());
-                    if (parent != null) {
-                        parent.getVariants().add(variant);
-                    }
-                } while (variantCursor.moveToNext());
+    private static void dropCatalogStaging(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCTS_NEXT);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_VARIANTS_NEXT);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCTS_FTS_NEXT);
+    }
+
+    /**
+     * Turns free text into an FTS4 MATCH expression where every word must match as a prefix,
+     * e.g. "blue pen 10" becomes "blue* pen* 10*". Returns null when there is nothing to search.
+     */
+    static String buildSearchMatchQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (token.isEmpty()) {
+                continue;
             }
-        } finally {
-            if (variantCursor != null) variantCursor.close();
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(token).append('*');
         }
+        return match.length() == 0 ? null : match.toString();
     }
 
-    public Product getProductById(int itemId) {
+    /**
+     * Ranked, prefix-aware product search backed by the products_fts index.
+     *
+     * @param mainCategoryId restrict to one main category, or 0 for all
+     * @param subCategoryId  restrict to one sub-category, or 0 for all
+     */
+    public ArrayList<Product> searchProducts(String text, int mainCategoryId, int subCategoryId, int limit) {
+        return getListProducts(searchProductIds(text, mainCategoryId, subCategoryId, limit));
+    }
+
+    /** The item ids searchProducts would return, best match first. */
+    public List<Integer> searchProductIds(String text, int mainCategoryId, int subCategoryId, int limit) {
+        List<Integer> results = new ArrayList<>();
+        String match = buildSearchMatchQuery(text);
+        if (match == null) {
+            return results;
+        }
+
         SQLiteDatabase db = this.getReadableDatabase();
-        Product product = null;
+        List<String> args = new ArrayList<>();
+        // Ranked and cut in SQL, so only the best `limit` ids ever leave SQLite. The tokenizer splits
+        // a SKU like "PN-1020" into words, so an exact SKU is checked as a whole and ranks first.
+        String sku = text.trim();
+        StringBuilder query = new StringBuilder("SELECT F.docid, " + buildExactSkuMatch(sku, args) + " AS exact_sku, " +
+                buildSearchScore(match, args) + " AS score" +
+                " FROM " + TABLE_PRODUCTS_FTS + " F" +
+                " JOIN " + TABLE_PRODUCTS + " P ON P." + COLUMN_ID + " = F.docid");
+        if (mainCategoryId > 0) {
+            query.append(" JOIN ").append(TABLE_SUB_CATEGORIES).append(" SC ON P.").append(COLUMN_PROD_SUB_CATEGORY_ID).append(" = SC.").append(COLUMN_SC_ID);
+        }
+        query.append(" WHERE ").append(TABLE_PRODUCTS_FTS).append(" MATCH ?");
+        args.add(match);
+        if (mainCategoryId > 0) {
+            query.append(" AND SC.").append(COLUMN_SC_MAIN_CATEGORY_ID).append(" = ?");
+            args.add(String.valueOf(mainCategoryId));
+        }
+        if (subCategoryId > 0) {
+            query.append(" AND P.").append(COLUMN_PROD_SUB_CATEGORY_ID).append(" = ?");
+            args.add(String.valueOf(subCategoryId));
+        }
+
+        query.append(" ORDER BY exact_sku DESC, score DESC, P.").append(COLUMN_NAME).append(" COLLATE NOCASE ASC LIMIT ?");
+        args.add(String.valueOf(limit));
+
         Cursor cursor = null;
         try {
-            cursor = db.query(TABLE_PRODUCTS, null, COLUMN_ID + "=?",
-                    new String[]{String.valueOf(itemId)}, null, null, null);
-
-            if (cursor != null && cursor.moveToFirst()) {
-                product = cursorToProduct(cursor);
-                product.setVariants(getVariantsForProduct(db, itemId));
+            cursor = db.rawQuery(query.toString(), args.toArray(new String[0]));
+            while (cursor.moveToNext()) {
+                results.add(cursor.getInt(0));
             }
+        } catch (Exception e) {
+            Log.e(TAG, "Error searching products for: " + text, e);
+            results.clear();
         } finally {
             if (cursor != null) cursor.close();
         }
-        return product;
+        return results;
     }
 
-    public List<ProductVariant> getVariantsForProduct(SQLiteDatabase db, int itemId) {
-        List<ProductVariant> variantList = new ArrayList<>();
+    /**
+     * Loads the list columns and variants of the given products, in the order given. Ids that
+     * no longer exist are skipped. Callers keep the list under SQLite's 999 bound-parameter limit.
+     */
+    public ArrayList<Product> getListProducts(List<Integer> itemIds) {
+        ArrayList<Product> results = new ArrayList<>();
+        if (itemIds.isEmpty()) {
+            return results;
+        }
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        StringBuilder inClause = new StringBuilder();
+        String[] idArgs = new String[itemIds.size()];
+        for (int i = 0; i < itemIds.size(); i++) {
+            inClause.append(i == 0 ? "?" : ",?");
+            idArgs[i] = String.valueOf(itemIds.get(i));
+        }
+        String productSql = "SELECT " + PRODUCT_LIST_COLUMNS + " FROM " + TABLE_PRODUCTS + " P" +
+                " WHERE P." + COLUMN_ID + " IN (" + inClause + ")";
+        Map<Integer, Product> byId = new HashMap<>();
         Cursor cursor = null;
         try {
-            cursor = db.query(TABLE_VARIANTS, null, COLUMN_VAR_ITEM_ID + "=?",
-                    new String[]{String.valueOf(itemId)}, null, null, null);
-
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    variantList.add(cursorToVariant(cursor));
-                } while (cursor.moveToNext());
+            cursor = db.rawQuery(productSql, idArgs);
+            for (Product product : RowMapper.readAll(cursor, PRODUCT_MAPPER, new ArrayList<Product>())) {
+                byId.put(product.getItemId(), product);
             }
         } finally {
             if (cursor != null) cursor.close();
         }
-        return variantList;
+
+        for (int itemId : itemIds) {
+            Product product = byId.get(itemId);
+            if (product != null) {
+                results.add(product);
+            }
+        }
+        if (!results.isEmpty()) {
+            mergeVariantsIntoProducts(db, results, productSql, idArgs);
+        }
+        return results;
     }
 
-    public void updateProductOrVariantLocalPath(int id, String newLocalPath, String prefix) {
-        SQLiteDatabase db = this.getWritableDatabase();
+    /**
+     * SQL for a match's score: each search word found at the start of a word in a column adds
+     * that column's weight, and a name that starts with the first word adds the name weight once
+     * more. Adds its arguments to args. Words only hold letters and digits (see
+     * buildSearchMatchQuery), so they need no LIKE escaping.
+     */
+    // 1 when the product's SKU, or one of its variants' SKUs, is the search text, ignoring case.
+    private static String buildExactSkuMatch(String sku, List<String> args) {
+        args.add(sku);
+        args.add(sku);
+        return "(P." + COLUMN_SKU + " = ? COLLATE NOCASE OR EXISTS (SELECT 1 FROM " + TABLE_VARIANTS + " V" +
+                " WHERE V." + COLUMN_VAR_ITEM_ID + " = P." + COLUMN_ID + " AND V." + COLUMN_VAR_SKU + " = ? COLLATE NOCASE))";
+    }
+
+    private static String buildSearchScore(String match, List<String> args) {
+        String[] columns = {COLUMN_NAME, COLUMN_SKU, COLUMN_BRAND_NAME, COLUMN_DESCRIPTION, COLUMN_FTS_VARIANT_TEXT};
+        StringBuilder score = new StringBuilder("(");
+        String[] words = match.replace("*", "").split(" ");
+        for (String word : words) {
+            for (int column = 0; column < columns.length; column++) {
+                score.append(score.length() > 1 ? " + " : "")
+                        .append(SEARCH_COLUMN_WEIGHTS[column])
+                        .append(" * ((' ' || IFNULL(F.").append(columns[column]).append(", '')) LIKE ?)");
+                args.add("% " + word + "%");
+            }
+        }
+        score.append(" + ").append(SEARCH_COLUMN_WEIGHTS[0]).append(" * (P.").append(COLUMN_NAME).append(" LIKE ?))");
+        args.add(words[0] + "%");
+        return score.toString();
+    }
+
+    // Updates the live row and, when staged, the same row in the staging tables unless sync has
+    // given it another image URL there.
+    private void updateProductOrVariantImagePaths(SQLiteDatabase db, boolean staged, String url, int id, String prefix, String newLocalPath, String thumbPath, String detailPath) {
         ContentValues values = new ContentValues();
-        values.put(prefix.equals("product_") ? COLUMN_LOCAL_PATH : COLUMN_VAR_LOCAL_PATH, newLocalPath);
+        boolean isProduct = prefix.equals("product_");
+        values.put(isProduct ? COLUMN_LOCAL_PATH : COLUMN_VAR_LOCAL_PATH, newLocalPath);
+        values.put(isProduct ? COLUMN_THUMB_PATH : COLUMN_VAR_THUMB_PATH, thumbPath);
+        values.put(isProduct ? COLUMN_DETAIL_PATH : COLUMN_VAR_DETAIL_PATH, detailPath);
 
         try {
+            String[] args = new String[]{String.valueOf(id)};
+            String[] stagedArgs = new String[]{String.valueOf(id), url};
             if (prefix.equals("product_")) {
-                db.update(TABLE_PRODUCTS, values, COLUMN_ID + "=?", new String[]{String.valueOf(id)});
+                db.update(TABLE_PRODUCTS, values, COLUMN_ID + "=?", args);
+                if (staged) {
+                    db.update(TABLE_PRODUCTS_NEXT, values, COLUMN_ID + "=? AND " + COLUMN_IMAGE_URL + "=?", stagedArgs);
+                }
             } else if (prefix.equals("variant_")) {
-                db.update(TABLE_VARIANTS, values, COLUMN_VAR_ID + "=?", new String[]{String.valueOf(id)});
+                db.update(TABLE_VARIANTS, values, COLUMN_VAR_ID + "=?", args);
+                if (staged) {
+                    db.update(TABLE_VARIANTS_NEXT, values, COLUMN_VAR_ID + "=? AND " + COLUMN_VAR_IMAGE_URL + "=?", stagedArgs);
+                }
             }
         } finally {
             // Intentionally not closing DB
@@ -654,22 +1555,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
         try {
             cursor = db.rawQuery(query, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CUST_ID));
-                    String name = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CUST_SHOP_NAME));
-                    String address = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CUST_ADDRESS));
-                    String contact = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CUST_CONTACT_NUMBER));
-                    int routeId = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CUST_ROUTE_ID));
-                    String routeName = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ROUTE_NAME));
-
-                    OrderManager.Customer customer = new OrderManager.Customer(id, name, routeName);
-                    customer.setAddress(address);
-                    customer.setContactNumber(contact);
-                    customer.setRouteId(routeId);
-                    customers.add(customer);
-                } while (cursor.moveToNext());
-            }
+            RowMapper.readAll(cursor, CUSTOMER_MAPPER, customers);
         } catch (Exception e) {
             Log.e(TAG, "Error fetching full customer list: " + e.getMessage());
         } finally {
@@ -742,18 +1628,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 " ORDER BY c." + COLUMN_CUST_SHOP_NAME + " ASC";
         try {
             cursor = db.rawQuery(query, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CUST_ID));
-                    String name = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CUST_SHOP_NAME));
-                    String address = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CUST_ADDRESS));
-                    String routeName = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ROUTE_NAME));
-
-                    OrderManager.Customer customer = new OrderManager.Customer(id, name, routeName);
-                    customer.setAddress(address);
-                    customers.add(customer);
-                } while (cursor.moveToNext());
-            }
+            RowMapper.readAll(cursor, CUSTOMER_MAPPER, customers);
         } finally {
             if (cursor != null) cursor.close();
         }
@@ -802,8 +1677,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         Cursor orderCursor = null;
 
         try {
-            orderCursor = db.query(TABLE_OFFLINE_ORDERS, null, COLUMN_ORDER_ID + "=?", new String[]{String.valueOf(orderId)}, null, null, null);
+            orderCursor = db.rawQuery(SQL_ORDER_BY_ID, new String[]{String.valueOf(orderId)});
             if (orderCursor != null && orderCursor.moveToFirst()) {
+                // A single row, so looking the columns up here is already once per cursor.
                 int customerId = orderCursor.getInt(orderCursor.getColumnIndexOrThrow(COLUMN_ORDER_CUST_ID));
                 String orderDate = orderCursor.getString(orderCursor.getColumnIndexOrThrow(COLUMN_ORDER_DATE));
                 double totalAmount = orderCursor.getDouble(orderCursor.getColumnIndexOrThrow(COLUMN_ORDER_TOTAL));
@@ -824,29 +1700,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         List<OrderManager.OrderItem> items = new ArrayList<>();
         Cursor itemCursor = null;
         try {
-            itemCursor = db.query(TABLE_OFFLINE_ORDER_ITEMS, null, COLUMN_ITEM_ORDER_ID + "=?", new String[]{String.valueOf(orderId)}, null, null, null);
-            if (itemCursor != null && itemCursor.moveToFirst()) {
-                do {
-                    int variantId = itemCursor.getInt(itemCursor.getColumnIndexOrThrow(COLUMN_ITEM_VARIANT_ID));
-                    String productName = itemCursor.getString(itemCursor.getColumnIndexOrThrow(COLUMN_ITEM_PRODUCT_NAME));
-                    int quantity = itemCursor.getInt(itemCursor.getColumnIndexOrThrow(COLUMN_ITEM_QTY));
-                    double originalPrice = itemCursor.getDouble(itemCursor.getColumnIndexOrThrow(COLUMN_ITEM_PRICE));
-                    double discountPercentage = itemCursor.getDouble(itemCursor.getColumnIndexOrThrow(COLUMN_ITEM_DISCOUNT_PERCENTAGE));
-
-                    Double customPrice = null;
-                    int customPriceColumnIndex = itemCursor.getColumnIndex(COLUMN_ITEM_CUSTOM_PRICE);
-                    if (!itemCursor.isNull(customPriceColumnIndex)) {
-                        customPrice = itemCursor.getDouble(customPriceColumnIndex);
-                    }
-
-                    ProductVariant variant = new ProductVariant(variantId, 0, productName, "", originalPrice, "");
-                    OrderManager.OrderItem orderItem = new OrderManager.OrderItem(variant, quantity);
-                    orderItem.setCustomPrice(customPrice);
-                    orderItem.setDiscountPercentage(discountPercentage);
-
-                    items.add(orderItem);
-                } while (itemCursor.moveToNext());
-            }
+            itemCursor = db.rawQuery(SQL_ORDER_ITEMS_FOR_ORDER, new String[]{String.valueOf(orderId)});
+            RowMapper.readAll(itemCursor, ORDER_ITEM_MAPPER, items);
         } finally {
             if (itemCursor != null) itemCursor.close();
         }
@@ -856,23 +1711,11 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private OrderManager.Customer getCustomerById(SQLiteDatabase db, int customerId) {
         OrderManager.Customer customer = null;
         Cursor custCursor = null;
-        String query = "SELECT c.*, r." + COLUMN_ROUTE_NAME +
-                " FROM " + TABLE_CUSTOMERS + " c" +
-                " LEFT JOIN " + TABLE_ROUTES + " r ON c." + COLUMN_CUST_ROUTE_ID + " = r." + COLUMN_ROUTE_ID +
-                " WHERE c." + COLUMN_CUST_ID + " = ?";
         try {
-            custCursor = db.rawQuery(query, new String[]{String.valueOf(customerId)});
-            if (custCursor != null && custCursor.moveToFirst()) {
-                String name = custCursor.getString(custCursor.getColumnIndexOrThrow(COLUMN_CUST_SHOP_NAME));
-                String address = custCursor.getString(custCursor.getColumnIndexOrThrow(COLUMN_CUST_ADDRESS));
-                String routeName = custCursor.getString(custCursor.getColumnIndexOrThrow(COLUMN_ROUTE_NAME));
-
-                customer = new OrderManager.Customer(customerId, name, routeName);
-                customer.setAddress(address);
-            } else {
-                // NEW: If customer not found, create a placeholder to prevent crashes
-                customer = new OrderManager.Customer(customerId, "Customer Not Found", "N/A");
-                customer.setAddress("This customer may have been deleted.");
+            custCursor = db.rawQuery(SQL_CUSTOMER_BY_ID, new String[]{String.valueOf(customerId)});
+            customer = RowMapper.readFirst(custCursor, CUSTOMER_MAPPER);
+            if (customer == null) {
+                customer = missingCustomer(customerId);
             }
         } finally {
             if (custCursor != null) {
@@ -882,20 +1725,70 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return customer;
     }
 
+    // Placeholder for a bill whose customer has since been deleted, so the screens do not crash.
+    private static OrderManager.Customer missingCustomer(int customerId) {
+        OrderManager.Customer customer = new OrderManager.Customer(customerId, "Customer Not Found", "N/A");
+        customer.setAddress("This customer may have been deleted.");
+        return customer;
+    }
+
+    /**
+     * Loads every pending bill with its customer and items in two queries, however many bills
+     * there are, and assembles the OrderDetails in memory.
+     */
     public List<OrderManager.OrderDetails> getTodaysPendingOrders() {
-        List<OrderManager.OrderDetails> orderDetailsList = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
-        String selection = COLUMN_ORDER_SYNC_STATUS + " = ?";
         String[] selectionArgs = {"pending"};
 
+        Map<Long, List<OrderManager.OrderItem>> itemsByOrder = new HashMap<>();
+        Cursor itemCursor = null;
         try {
-            cursor = db.query(TABLE_OFFLINE_ORDERS, null, selection, selectionArgs, null, null, COLUMN_ORDER_ID + " DESC");
+            itemCursor = db.rawQuery(SQL_PENDING_ORDER_ITEMS, selectionArgs);
+            if (itemCursor != null && itemCursor.moveToFirst()) {
+                int orderIdIndex = itemCursor.getColumnIndexOrThrow(COLUMN_ITEM_ORDER_ID);
+                RowMapper<OrderManager.OrderItem> itemMapper = ORDER_ITEM_MAPPER.bind(itemCursor);
+                do {
+                    long orderId = itemCursor.getLong(orderIdIndex);
+                    List<OrderManager.OrderItem> items = itemsByOrder.get(orderId);
+                    if (items == null) {
+                        items = new ArrayList<>();
+                        itemsByOrder.put(orderId, items);
+                    }
+                    items.add(itemMapper.map(itemCursor));
+                } while (itemCursor.moveToNext());
+            }
+        } finally {
+            if (itemCursor != null) itemCursor.close();
+        }
+
+        List<OrderManager.OrderDetails> orderDetailsList = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(SQL_PENDING_ORDERS_WITH_CUSTOMERS, selectionArgs);
 
             if (cursor != null && cursor.moveToFirst()) {
+                int orderIdIndex = cursor.getColumnIndexOrThrow(COLUMN_ORDER_ID);
+                int customerIdIndex = cursor.getColumnIndexOrThrow(COLUMN_ORDER_CUST_ID);
+                int orderDateIndex = cursor.getColumnIndexOrThrow(COLUMN_ORDER_DATE);
+                int totalIndex = cursor.getColumnIndexOrThrow(COLUMN_ORDER_TOTAL);
+                int billDiscountIndex = cursor.getColumnIndexOrThrow(COLUMN_ORDER_BILL_DISCOUNT);
+                int customerFoundIndex = cursor.getColumnIndexOrThrow("customer_found");
+                // O.customer_id doubles as the customer's id column for the mapper.
+                RowMapper<OrderManager.Customer> customerMapper = CUSTOMER_MAPPER.bind(cursor);
                 do {
-                    long orderId = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ORDER_ID));
-                    orderDetailsList.add(getOrderDetailsById(orderId));
+                    long orderId = cursor.getLong(orderIdIndex);
+                    String orderDate = cursor.getString(orderDateIndex);
+                    double totalAmount = cursor.getDouble(totalIndex);
+                    double billDiscountPercentage = cursor.getDouble(billDiscountIndex);
+                    OrderManager.Customer customer = cursor.isNull(customerFoundIndex)
+                            ? missingCustomer(cursor.getInt(customerIdIndex))
+                            : customerMapper.map(cursor);
+
+                    List<OrderManager.OrderItem> items = itemsByOrder.get(orderId);
+                    if (items == null) {
+                        items = new ArrayList<>();
+                    }
+                    orderDetailsList.add(new OrderManager.OrderDetails(orderId, customer, orderDate, totalAmount, items, billDiscountPercentage));
                 } while (cursor.moveToNext());
             }
         } finally {
@@ -904,82 +1797,60 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return orderDetailsList;
     }
 
+    /**
+     * Reads every pending bill with its items in one query for the upload workers.
+     * The read runs inside a transaction, which holds the write lock until the cursor is drained
+     * (and in WAL mode pins one snapshot), so a bill saved mid-read waits and is either wholly in
+     * the snapshot or wholly out.
+     */
     public List<PendingOrder> getPendingOrdersForUpload() {
         List<PendingOrder> pendingOrders = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
+        SQLiteDatabase db = this.getWritableDatabase();
         Cursor cursor = null;
-        String selection = COLUMN_ORDER_SYNC_STATUS + " = ?";
         String[] selectionArgs = {"pending"};
 
+        db.beginTransactionNonExclusive();
         try {
-            cursor = db.query(TABLE_OFFLINE_ORDERS, null, selection, selectionArgs, null, null, null);
+            cursor = db.rawQuery(SQL_PENDING_UPLOAD_SNAPSHOT, selectionArgs);
 
             if (cursor != null && cursor.moveToFirst()) {
+                int orderIdIndex = cursor.getColumnIndexOrThrow(COLUMN_ORDER_ID);
+                int customerIdIndex = cursor.getColumnIndexOrThrow(COLUMN_ORDER_CUST_ID);
+                int repIdIndex = cursor.getColumnIndexOrThrow(COLUMN_ORDER_REP_ID);
+                int orderDateIndex = cursor.getColumnIndexOrThrow(COLUMN_ORDER_DATE);
+                int totalIndex = cursor.getColumnIndexOrThrow(COLUMN_ORDER_TOTAL);
+                int billDiscountIndex = cursor.getColumnIndexOrThrow(COLUMN_ORDER_BILL_DISCOUNT);
+                int variantIdIndex = cursor.getColumnIndexOrThrow(COLUMN_ITEM_VARIANT_ID);
+                int quantityIndex = cursor.getColumnIndexOrThrow(COLUMN_ITEM_QTY);
+                int priceIndex = cursor.getColumnIndexOrThrow(COLUMN_ITEM_PRICE);
+                int customPriceIndex = cursor.getColumnIndexOrThrow(COLUMN_ITEM_CUSTOM_PRICE);
+                int discountIndex = cursor.getColumnIndexOrThrow(COLUMN_ITEM_DISCOUNT_PERCENTAGE);
+
+                PendingOrder current = null;
                 do {
-                    long orderId = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ORDER_ID));
-                    int customerId = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ORDER_CUST_ID));
-                    int repId = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ORDER_REP_ID));
-                    String orderDate = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ORDER_DATE));
-                    double totalAmount = cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_TOTAL));
-                    double billDiscountPercentage = cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_ORDER_BILL_DISCOUNT));
-
-                    List<PendingOrderItem> items = getPendingOrderItemsByOrderIdForUpload(db, orderId);
-                    pendingOrders.add(new PendingOrder(orderId, customerId, repId, orderDate, totalAmount, billDiscountPercentage, items));
-
+                    long orderId = cursor.getLong(orderIdIndex);
+                    if (current == null || current.orderId != orderId) {
+                        current = new PendingOrder(orderId, cursor.getInt(customerIdIndex), cursor.getInt(repIdIndex),
+                                cursor.getString(orderDateIndex), cursor.getDouble(totalIndex),
+                                cursor.getDouble(billDiscountIndex), new ArrayList<>());
+                        pendingOrders.add(current);
+                    }
+                    // A bill without items comes back as a single row with NULL item columns.
+                    if (!cursor.isNull(variantIdIndex)) {
+                        Double customPrice = cursor.isNull(customPriceIndex) ? null : cursor.getDouble(customPriceIndex);
+                        current.items.add(new PendingOrderItem(cursor.getInt(variantIdIndex), cursor.getInt(quantityIndex),
+                                cursor.getDouble(priceIndex), customPrice, cursor.getDouble(discountIndex)));
+                    }
                 } while (cursor.moveToNext());
             }
+            db.setTransactionSuccessful();
         } finally {
             if (cursor != null) cursor.close();
+            db.endTransaction();
         }
         return pendingOrders;
     }
 
-    private List<PendingOrderItem> getPendingOrderItemsByOrderIdForUpload(SQLiteDatabase db, long orderId) {
-        List<PendingOrderItem> items = new ArrayList<>();
-        Cursor itemCursor = null;
-        try {
-            itemCursor = db.query(TABLE_OFFLINE_ORDER_ITEMS, null, COLUMN_ITEM_ORDER_ID + "=?", new String[]{String.valueOf(orderId)}, null, null, null);
-            if (itemCursor != null && itemCursor.moveToFirst()) {
-                do {
-                    int variantId = itemCursor.getInt(itemCursor.getColumnIndexOrThrow(COLUMN_ITEM_VARIANT_ID));
-                    int quantity = itemCursor.getInt(itemCursor.getColumnIndexOrThrow(COLUMN_ITEM_QTY));
-                    double price = itemCursor.getDouble(itemCursor.getColumnIndexOrThrow(COLUMN_ITEM_PRICE));
-                    double discountPercentage = itemCursor.getDouble(itemCursor.getColumnIndexOrThrow(COLUMN_ITEM_DISCOUNT_PERCENTAGE));
-
-                    // FIX: Read custom_price from the cursor
-                    Double customPrice = null;
-                    int customPriceColIndex = itemCursor.getColumnIndex(COLUMN_ITEM_CUSTOM_PRICE);
-                    if (customPriceColIndex != -1 && !itemCursor.isNull(customPriceColIndex)) {
-                        customPrice = itemCursor.getDouble(customPriceColIndex);
-                    }
-
-                    // FIX: Pass custom_price to the constructor
-                    items.add(new PendingOrderItem(variantId, quantity, price, customPrice, discountPercentage));
-                } while (itemCursor.moveToNext());
-            }
-        } finally {
-            if (itemCursor != null) itemCursor.close();
-        }
-        return items;
-    }
-
-    public double getTotalSalesForPendingOrders() {
-        double totalSales = 0;
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
-        String selection = COLUMN_ORDER_SYNC_STATUS + " = ?";
-        String[] selectionArgs = {"pending"};
-        try {
-            cursor = db.rawQuery("SELECT SUM(" + COLUMN_ORDER_TOTAL + ") FROM " + TABLE_OFFLINE_ORDERS + " WHERE " + selection, selectionArgs);
-            if (cursor != null && cursor.moveToFirst()) {
-                totalSales = cursor.getDouble(0);
-            }
-        } finally {
-            if (cursor != null) cursor.close();
-        }
-        return totalSales;
-    }
-
     public void updateOrdersStatusToSynced(List<Long> orderIds) {
         SQLiteDatabase db = this.getWritableDatabase();
         db.beginTransaction();
@@ -1032,13 +1903,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         Cursor cursor = null;
         try {
             cursor = db.query(TABLE_ROUTES, new String[]{COLUMN_ROUTE_ID, COLUMN_ROUTE_NAME}, null, null, null, null, COLUMN_ROUTE_NAME + " ASC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ROUTE_ID));
-                    String name = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ROUTE_NAME));
-                    routes.add(new Route(id, name));
-                } while (cursor.moveToNext());
-            }
+            RowMapper.readAll(cursor, ROUTE_MAPPER, routes);
         } catch (Exception e) {
             Log.e(TAG, "Error fetching all routes for spinner", e);
         } finally {
@@ -1053,7 +1918,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = null;
         try {
-            cursor = db.rawQuery("SELECT 1 FROM " + TABLE_OFFLINE_ORDERS + " WHERE " + COLUMN_ORDER_SYNC_STATUS + " = 'pending' LIMIT 1", null);
+            cursor = db.rawQuery(SQL_HAS_PENDING_ORDERS, null);
             if (cursor != null && cursor.moveToFirst()) {
                 return true;
             }
@@ -1114,18 +1979,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         Cursor cursor = null;
         try {
             cursor = db.query(TABLE_PENDING_CUSTOMERS, null, null, null, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    pendingCustomers.add(new PendingCustomer(
-                            cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_PC_LOCAL_ID)),
-                            cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PC_SHOP_NAME)),
-                            cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PC_CONTACT_NUMBER)),
-                            cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PC_ADDRESS)),
-                            cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PC_ROUTE_ID)),
-                            cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PC_USER_ID))
-                    ));
-                } while (cursor.moveToNext());
-            }
+            RowMapper.readAll(cursor, PENDING_CUSTOMER_MAPPER, pendingCustomers);
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -1140,14 +1994,15 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         Cursor cursor = null;
         try {
             cursor = db.query(TABLE_PENDING_CUSTOMERS, null, COLUMN_PC_LOCAL_ID + "=?", new String[]{String.valueOf(localId)}, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
+            PendingCustomer pending = RowMapper.readFirst(cursor, PENDING_CUSTOMER_MAPPER);
+            if (pending != null) {
                 ContentValues values = new ContentValues();
                 values.put(COLUMN_CUST_ID, serverId);
-                values.put(COLUMN_CUST_SHOP_NAME, cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PC_SHOP_NAME)));
-                values.put(COLUMN_CUST_CONTACT_NUMBER, cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PC_CONTACT_NUMBER)));
-                values.put(COLUMN_CUST_ADDRESS, cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PC_ADDRESS)));
-                values.put(COLUMN_CUST_ROUTE_ID, cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PC_ROUTE_ID)));
-                values.put(COLUMN_CUST_USER_ID, cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PC_USER_ID)));
+                values.put(COLUMN_CUST_SHOP_NAME, pending.getShopName());
+                values.put(COLUMN_CUST_CONTACT_NUMBER, pending.getContactNumber());
+                values.put(COLUMN_CUST_ADDRESS, pending.getAddress());
+                values.put(COLUMN_CUST_ROUTE_ID, pending.getRouteId());
+                values.put(COLUMN_CUST_USER_ID, pending.getUserId());
                 db.insertWithOnConflict(TABLE_CUSTOMERS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
                 db.delete(TABLE_PENDING_CUSTOMERS, COLUMN_PC_LOCAL_ID + "=?", new String[]{String.valueOf(localId)});
                 db.setTransactionSuccessful();
@@ -0,0 +1,70 @@
+package com.example.falconrepresentator;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * The one thread that writes to the database. Sync, workers and screens hand their writes to it
+ * instead of running them on whatever thread a network callback happens to arrive on, so writes
+ * never block the UI and never contend with each other for the write lock.
+ *
+ * Debug builds enforce this: DatabaseHelper throws if a write is started on the main looper,
+ * whether through the helper's write methods or by waiting on call() from there.
+ */
+public final class DatabaseWriter {
+
+    private static volatile Thread writerThread;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "db-writer");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        writerThread = thread;
+        return thread;
+    });
+
+    private DatabaseWriter() {
+    }
+
+    public static void execute(Runnable write) {
+        EXECUTOR.execute(write);
+    }
+
+    public static <T> Future<T> submit(Callable<T> write) {
+        return EXECUTOR.submit(write);
+    }
+
+    /**
+     * Runs write on the writer thread and waits for its result; for the repositories, whose write
+     * methods return what the caller needs. Already on the writer thread, it just runs write.
+     * Blocks, so not for the main thread.
+     */
+    public static <T> T call(Supplier<T> write) {
+        if (Thread.currentThread() == writerThread) {
+            return write.get();
+        }
+        DatabaseHelper.assertNotOnMainThread();
+        try {
+            return EXECUTOR.submit(write::get).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a database write", e);
+        }
+    }
+
+    /** call() for a write with no result. */
+    public static void run(Runnable write) {
+        call(() -> {
+            write.run();
+            return null;
+        });
+    }
+}
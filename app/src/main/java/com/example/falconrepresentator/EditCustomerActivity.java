@@ -33,18 +33,21 @@ public class EditCustomerActivity extends AppCompatActivity {
     private Button btnSaveChanges;
     private ProgressBar progressBar;
 
-    private DatabaseHelper dbHelper;
+    private CustomerRepository customers;
     private List<DatabaseHelper.Route> routesList = new ArrayList<>();
     private ArrayAdapter<DatabaseHelper.Route> routeAdapter;
 
     private long customerId;
+    // Loads for this screen; the edit itself is saved on DatabaseWriter.
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_edit_customer);
 
-        dbHelper = new DatabaseHelper(this);
+        customers = new CustomerRepository(this);
         initializeViews();
         loadRoutesIntoSpinner();
         populateFieldsFromIntent();
@@ -52,6 +55,12 @@ public class EditCustomerActivity extends AppCompatActivity {
         btnSaveChanges.setOnClickListener(v -> attemptToSaveChanges());
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        loadExecutor.shutdownNow();
+    }
+
     private void initializeViews() {
         Toolbar toolbar = findViewById(R.id.toolbar_edit_customer);
         setSupportActionBar(toolbar);
@@ -69,12 +78,9 @@ public class EditCustomerActivity extends AppCompatActivity {
     }
 
     private void loadRoutesIntoSpinner() {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Handler handler = new Handler(Looper.getMainLooper());
-
-        executor.execute(() -> {
-            routesList = dbHelper.getAllRoutes();
-            handler.post(() -> {
+        loadExecutor.execute(() -> {
+            routesList = customers.getRoutes();
+            mainHandler.post(() -> {
                 routeAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, routesList);
                 routeAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
                 spinnerRoutes.setAdapter(routeAdapter);
@@ -121,11 +127,9 @@ public class EditCustomerActivity extends AppCompatActivity {
 
         setLoadingState(true);
 
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Handler handler = new Handler(Looper.getMainLooper());
-        executor.execute(() -> {
-            boolean success = dbHelper.updateSyncedCustomer(customerId, shopName, contactNumber, address, routeId);
-            handler.post(() -> {
+        DatabaseWriter.execute(() -> {
+            boolean success = customers.updateSyncedCustomer(customerId, shopName, contactNumber, address, routeId);
+            mainHandler.post(() -> {
                 setLoadingState(false);
                 if (success) {
                     Toast.makeText(this, "Customer updated successfully!", Toast.LENGTH_SHORT).show();
@@ -0,0 +1,219 @@
+package com.example.falconrepresentator;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads catalog images on a fixed number of threads, highest priority first.
+ *
+ * Only `threads` downloads are ever in flight, so memory stays flat however many images are
+ * missing. A failed image goes back into the queue behind the images of the same priority, up
+ * to MAX_ATTEMPTS times, unless the Downloader reports it unavailable. run() blocks until every
+ * image has succeeded or given up.
+ */
+final class ImageDownloadPipeline {
+
+    private static final String TAG = "ImageDownloadPipeline";
+    private static final int MAX_ATTEMPTS = 3;
+
+    /** One missing image. priority is set by the caller before run(). */
+    static final class Item {
+        final int id;
+        final String prefix; // "product_" or "variant_"
+        final String url;
+        final int mainCategoryId;
+        final int subCategoryId;
+        double priority;
+        int attempts;
+        long sequence;
+
+        Item(int id, String prefix, String url, int mainCategoryId, int subCategoryId) {
+            this.id = id;
+            this.prefix = prefix;
+            this.url = url;
+            this.mainCategoryId = mainCategoryId;
+            this.subCategoryId = subCategoryId;
+        }
+
+        boolean isProduct() {
+            return "product_".equals(prefix);
+        }
+    }
+
+    /**
+     * Thrown by a Downloader when retrying cannot help, e.g. the server answered 404 or sent a
+     * page instead of an image. The image is given up at once and counted as unavailable.
+     */
+    static final class UnavailableImageException extends IOException {
+        UnavailableImageException(String message) {
+            super(message);
+        }
+    }
+
+    interface Downloader {
+        /**
+         * Gets one image stored within timeoutMs and returns the bytes it fetched from the
+         * network, 0 if it needed none (the image was already stored); throws on failure.
+         */
+        long download(Item item, long timeoutMs) throws Exception;
+    }
+
+    /** Called on the download threads, once per image. Exceptions are logged and do not stop the run. */
+    interface Listener {
+        void onDownloaded(Item item);
+
+        void onFailed(Item item);
+    }
+
+    static final class Stats {
+        final int succeeded;
+        final int failed; // gave up after MAX_ATTEMPTS; may work on a later run
+        final int unavailable; // not retried, see UnavailableImageException
+        final long bytes; // fetched from the network only
+        final long elapsedNanos;
+
+        Stats(int succeeded, int failed, int unavailable, long bytes, long elapsedNanos) {
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.unavailable = unavailable;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        double imagesPerSecond() {
+            return elapsedNanos > 0 ? succeeded / (elapsedNanos / 1e9) : 0;
+        }
+
+        double bytesPerSecond() {
+            return elapsedNanos > 0 ? bytes / (elapsedNanos / 1e9) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d downloaded, %d failed, %d unavailable, %.1f images/s, %.1f KB/s",
+                    succeeded, failed, unavailable, imagesPerSecond(), bytesPerSecond() / 1024);
+        }
+    }
+
+    // Most used categories first, then product images (the grids show those) before variant
+    // images, then queue order.
+    private static final Comparator<Item> ORDER = (a, b) -> {
+        int byPriority = Double.compare(b.priority, a.priority);
+        if (byPriority != 0) return byPriority;
+        if (a.isProduct() != b.isProduct()) return a.isProduct() ? -1 : 1;
+        return Long.compare(a.sequence, b.sequence);
+    };
+
+    private final int threads;
+    private final long timeoutMs;
+    private final Downloader downloader;
+    private final PriorityBlockingQueue<Item> queue = new PriorityBlockingQueue<>(64, ORDER);
+    private final AtomicLong sequence = new AtomicLong();
+    private ExecutorService executor;
+
+    ImageDownloadPipeline(int threads, long timeoutMs, Downloader downloader) {
+        this.threads = threads;
+        this.timeoutMs = timeoutMs;
+        this.downloader = downloader;
+    }
+
+    Stats run(List<Item> items, Listener listener) throws InterruptedException {
+        for (Item item : items) {
+            item.sequence = sequence.getAndIncrement();
+            queue.add(item);
+        }
+        final AtomicInteger remaining = new AtomicInteger(items.size());
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger unavailable = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong();
+        long start = System.nanoTime();
+
+        synchronized (this) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                while (remaining.get() > 0 && !Thread.currentThread().isInterrupted()) {
+                    Item item;
+                    try {
+                        // Another thread may still put a failed image back, so wait a little.
+                        item = queue.poll(100, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (item == null) continue;
+
+                    item.attempts++;
+                    long fetched = -1;
+                    boolean retryable = true;
+                    try {
+                        fetched = downloader.download(item, timeoutMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (UnavailableImageException e) {
+                        Log.w(TAG, "Image unavailable for " + item.prefix + item.id + ": " + e.getMessage());
+                        retryable = false;
+                    } catch (Exception e) {
+                        Log.w(TAG, "Download failed for " + item.prefix + item.id + " (attempt " + item.attempts + "): " + e);
+                    }
+
+                    // A listener that throws must not leave the image counted as outstanding,
+                    // or run() would wait for it forever.
+                    boolean settled = true;
+                    try {
+                        if (fetched >= 0) {
+                            bytes.addAndGet(fetched);
+                            succeeded.incrementAndGet();
+                            listener.onDownloaded(item);
+                        } else if (!retryable) {
+                            unavailable.incrementAndGet();
+                            listener.onFailed(item);
+                        } else if (item.attempts < MAX_ATTEMPTS && !Thread.currentThread().isInterrupted()) {
+                            item.sequence = sequence.getAndIncrement();
+                            queue.add(item);
+                            settled = false;
+                        } else {
+                            failed.incrementAndGet();
+                            listener.onFailed(item);
+                        }
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Listener failed for " + item.prefix + item.id, e);
+                    } finally {
+                        if (settled) {
+                            remaining.decrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Per-item timeouts bound each wait; keep waiting for the queue to drain.
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        }
+        return new Stats(succeeded.get(), failed.get(), unavailable.get(), bytes.get(), System.nanoTime() - start);
+    }
+
+    /** Stops the download threads; images not started yet are dropped. */
+    synchronized void cancel() {
+        queue.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
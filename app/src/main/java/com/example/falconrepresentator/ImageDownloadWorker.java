@@ -8,10 +8,13 @@ import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
-import com.example.falconrepresentator.Models.Product;
-import com.example.falconrepresentator.Models.ProductVariant;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ImageDownloadWorker extends Worker {
@@ -27,6 +30,10 @@ public class ImageDownloadWorker extends Worker {
     // MODIFIED: Builder is now a member variable to update the same notification
     private NotificationCompat.Builder notificationBuilder;
 
+    private static final int DOWNLOAD_THREADS = 4;
+    private static final long IMAGE_TIMEOUT_MS = 30_000;
+    private volatile ImageDownloadPipeline pipeline;
+
     public ImageDownloadWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
         this.context = context;
@@ -38,59 +45,83 @@ public class ImageDownloadWorker extends Worker {
     public Result doWork() {
         Log.d(TAG, "Background image download worker started.");
 
-        DatabaseHelper dbHelper = new DatabaseHelper(context);
+        CatalogRepository catalog = new CatalogRepository(context);
         SyncManager syncManager = new SyncManager(context);
+        CategoryUsage usage = new CategoryUsage(context);
+        ImageStore store = new ImageStore(context);
 
-        List<Product> productsWithMissingImages = dbHelper.getProductsWithMissingImages();
-        List<ProductVariant> variantsWithMissingImages = dbHelper.getVariantsWithMissingImages();
-        int totalImagesToDownload = productsWithMissingImages.size() + variantsWithMissingImages.size();
+        List<DatabaseHelper.MissingImage> missingImages = catalog.getMissingImages();
 
-        if (totalImagesToDownload == 0) {
+        if (missingImages.isEmpty()) {
             Log.d(TAG, "No missing images to download. Worker finishing.");
             return Result.success();
         }
 
-        Log.d(TAG, "Found " + totalImagesToDownload + " missing images. Starting download.");
+        // Products and variants that share a URL share one download, ranked by whichever of them
+        // is used most; the image is then attached to all of them.
+        final Map<String, List<DatabaseHelper.MissingImage>> owners = new HashMap<>();
+        Map<String, ImageDownloadPipeline.Item> byUrl = new HashMap<>();
+        List<ImageDownloadPipeline.Item> downloads = new ArrayList<>();
+        for (DatabaseHelper.MissingImage missing : missingImages) {
+            // Images of the categories the rep browses most, and most lately, come first.
+            double priority = usage.score(missing.mainCategoryId, missing.subCategoryId);
+            ImageDownloadPipeline.Item item = byUrl.get(missing.url);
+            if (item == null) {
+                item = new ImageDownloadPipeline.Item(missing.id, missing.prefix, missing.url,
+                        missing.mainCategoryId, missing.subCategoryId);
+                item.priority = priority;
+                byUrl.put(missing.url, item);
+                owners.put(missing.url, new ArrayList<>());
+                downloads.add(item);
+            } else {
+                item.priority = Math.max(item.priority, priority);
+            }
+            owners.get(missing.url).add(missing);
+        }
+        int totalImagesToDownload = downloads.size();
+
+        Log.d(TAG, "Found " + missingImages.size() + " missing images, " + totalImagesToDownload + " distinct. Starting download.");
         // NEW: Initialize the notification builder for progress updates
         initializeProgressNotification(totalImagesToDownload);
 
-
-        final CountDownLatch latch = new CountDownLatch(totalImagesToDownload);
-        final AtomicInteger successCount = new AtomicInteger(0);
-        final AtomicInteger failureCount = new AtomicInteger(0);
         final AtomicInteger progressCount = new AtomicInteger(0);
-
-
-        for (Product product : productsWithMissingImages) {
-            syncManager.saveImageToInternalStorage(product.getMainImage(), product.getItemId(), "product_", localPath -> {
-                if (localPath != null && !localPath.isEmpty()) {
-                    dbHelper.updateProductOrVariantLocalPath(product.getItemId(), localPath, "product_");
-                    successCount.incrementAndGet();
-                } else {
-                    failureCount.incrementAndGet();
+        pipeline = new ImageDownloadPipeline(DOWNLOAD_THREADS, IMAGE_TIMEOUT_MS, (item, timeoutMs) -> {
+            List<DatabaseHelper.MissingImage> sharing = owners.get(item.url);
+            ImageStore.Blob blob = store.find(item.url);
+            long[] fetched = {0};
+            if (blob == null) {
+                // Still on a download thread, so at most DOWNLOAD_THREADS images are decoded at once.
+                File older = olderImage(sharing, store);
+                blob = store.add(older != null
+                        ? ImageStore.fromFile(older)
+                        : out -> fetched[0] = syncManager.downloadImage(item.url, out, timeoutMs));
+            }
+            ImageStore.Blob stored = blob;
+            if (!DatabaseWriter.submit(() -> catalog.attachImage(item.url, stored, sharing)).get()) {
+                throw new IOException("Image " + stored.hash + " was released before it could be attached");
+            }
+            return fetched[0];
+        });
+
+        ImageDownloadPipeline.Stats stats;
+        try {
+            stats = pipeline.run(downloads, new ImageDownloadPipeline.Listener() {
+                @Override
+                public void onDownloaded(ImageDownloadPipeline.Item item) {
+                    // Files from before the store were copied into it and are no longer shown.
+                    for (DatabaseHelper.MissingImage owner : owners.get(item.url)) {
+                        if (owner.localPath != null && !store.contains(owner.localPath)) {
+                            new File(owner.localPath).delete();
+                        }
+                    }
+                    updateProgressNotification(progressCount.incrementAndGet(), totalImagesToDownload);
                 }
-                // NEW: Update progress after each download attempt
-                updateProgressNotification(progressCount.incrementAndGet(), totalImagesToDownload);
-                latch.countDown();
-            });
-        }
 
-        for (ProductVariant variant : variantsWithMissingImages) {
-            syncManager.saveImageToInternalStorage(variant.getImageUrl(), variant.getVariantId(), "variant_", localPath -> {
-                if (localPath != null && !localPath.isEmpty()) {
-                    dbHelper.updateProductOrVariantLocalPath(variant.getVariantId(), localPath, "variant_");
-                    successCount.incrementAndGet();
-                } else {
-                    failureCount.incrementAndGet();
+                @Override
+                public void onFailed(ImageDownloadPipeline.Item item) {
+                    updateProgressNotification(progressCount.incrementAndGet(), totalImagesToDownload);
                 }
-                // NEW: Update progress after each download attempt
-                updateProgressNotification(progressCount.incrementAndGet(), totalImagesToDownload);
-                latch.countDown();
             });
-        }
-
-        try {
-            latch.await();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             Log.e(TAG, "Image download worker was interrupted.", e);
@@ -99,11 +130,36 @@ public class ImageDownloadWorker extends Worker {
         }
 
         notificationManager.cancel(IMG_PROGRESS_NOTIFICATION_ID);
-        String finalMessage = String.format("Downloaded: %d, Failed: %d", successCount.get(), failureCount.get());
+        if (stats.succeeded > 0) {
+            // Queued behind the path updates above, so the snapshot carries all of them.
+            DatabaseWriter.execute(catalog::writeSnapshot);
+        }
+        String finalMessage = String.format(Locale.US, "Downloaded: %d, Failed: %d", stats.succeeded, stats.failed + stats.unavailable);
         showFinalNotification("Image Download Complete", finalMessage);
-        Log.d(TAG, "Image download process finished. " + finalMessage);
+        Log.d(TAG, "Image download process finished. " + stats);
+
+        // Images the server does not have, or does not serve as images, would fail the same way on a retry.
+        return stats.failed > 0 ? Result.retry() : Result.success();
+    }
 
-        return failureCount.get() > 0 ? Result.retry() : Result.success();
+    // An image one of the owners downloaded before the store existed, which only lacks
+    // renditions; copied into the store instead of being downloaded again.
+    private static File olderImage(List<DatabaseHelper.MissingImage> owners, ImageStore store) {
+        for (DatabaseHelper.MissingImage owner : owners) {
+            if (owner.localPath != null && !store.contains(owner.localPath) && new File(owner.localPath).exists()) {
+                return new File(owner.localPath);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onStopped() {
+        super.onStopped();
+        ImageDownloadPipeline running = pipeline;
+        if (running != null) {
+            running.cancel();
+        }
     }
 
     // NEW: Method to create the initial progress notification
@@ -119,7 +175,8 @@ public class ImageDownloadWorker extends Worker {
     }
 
     // NEW: Method to update the existing progress notification
-    private void updateProgressNotification(int currentProgress, int maxProgress) {
+    // Called from the download threads.
+    private synchronized void updateProgressNotification(int currentProgress, int maxProgress) {
         notificationBuilder.setContentText(currentProgress + " / " + maxProgress + " images downloaded")
                 .setProgress(maxProgress, currentProgress, false);
         notificationManager.notify(IMG_PROGRESS_NOTIFICATION_ID, notificationBuilder.build());
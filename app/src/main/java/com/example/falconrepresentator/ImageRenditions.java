@@ -0,0 +1,102 @@
+package com.example.falconrepresentator;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Makes the downscaled copies of a downloaded image that the screens show: a thumbnail for the
+ * two-column grids and a detail-sized one for ProductDetailActivity. The full-size original is
+ * only decoded here, once, and by the full-screen viewer.
+ *
+ * Renditions sit next to the original as <name>_thumb.jpg and <name>_detail.jpg. An original
+ * already no larger than a rendition is used as that rendition instead of being re-encoded.
+ */
+final class ImageRenditions {
+
+    // Longest edge in pixels. A grid cell is half a phone screen wide.
+    static final int THUMB_MAX_EDGE = 360;
+    static final int DETAIL_MAX_EDGE = 1080;
+    private static final int JPEG_QUALITY = 85;
+
+    final String thumbPath;
+    final String detailPath;
+
+    private ImageRenditions(String thumbPath, String detailPath) {
+        this.thumbPath = thumbPath;
+        this.detailPath = detailPath;
+    }
+
+    /** Writes both renditions of original; throws if it cannot be decoded or written. */
+    static ImageRenditions create(File original) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(original.getPath(), bounds);
+        int longestEdge = Math.max(bounds.outWidth, bounds.outHeight);
+        if (longestEdge <= 0) {
+            throw new IOException("Cannot decode " + original);
+        }
+        if (longestEdge <= THUMB_MAX_EDGE) {
+            return new ImageRenditions(original.getPath(), original.getPath());
+        }
+
+        // Subsample while decoding so the full-resolution bitmap never exists in memory.
+        BitmapFactory.Options decode = new BitmapFactory.Options();
+        decode.inSampleSize = 1;
+        while (longestEdge / (decode.inSampleSize * 2) >= DETAIL_MAX_EDGE) {
+            decode.inSampleSize *= 2;
+        }
+        Bitmap source = BitmapFactory.decodeFile(original.getPath(), decode);
+        if (source == null) {
+            throw new IOException("Cannot decode " + original);
+        }
+        try {
+            String detailPath = original.getPath();
+            if (longestEdge > DETAIL_MAX_EDGE) {
+                detailPath = write(source, DETAIL_MAX_EDGE, sibling(original, "_detail"));
+            }
+            String thumbPath = write(source, THUMB_MAX_EDGE, sibling(original, "_thumb"));
+            return new ImageRenditions(thumbPath, detailPath);
+        } finally {
+            source.recycle();
+        }
+    }
+
+    private static File sibling(File original, String suffix) {
+        String name = original.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return new File(original.getParentFile(), base + suffix + ".jpg");
+    }
+
+    // Scales source to fit maxEdge and writes it via a temp file and a rename. Two downloads of
+    // the same bytes make the same renditions at the same time, so each gets its own temp file.
+    private static String write(Bitmap source, int maxEdge, File target) throws IOException {
+        float scale = Math.min(1f, (float) maxEdge / Math.max(source.getWidth(), source.getHeight()));
+        Bitmap scaled = scale < 1f
+                ? Bitmap.createScaledBitmap(source, Math.max(1, Math.round(source.getWidth() * scale)),
+                        Math.max(1, Math.round(source.getHeight() * scale)), true)
+                : source;
+        File temp = File.createTempFile("rendition", ".tmp", target.getParentFile());
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                if (!scaled.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                    throw new IOException("Cannot encode " + target);
+                }
+                out.getFD().sync();
+            }
+            if (!temp.renameTo(target)) {
+                throw new IOException("Could not move " + temp + " to " + target);
+            }
+            return target.getPath();
+        } finally {
+            temp.delete();
+            if (scaled != source) {
+                scaled.recycle();
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.falconrepresentator;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Content-addressed store for catalog images. Each distinct image is kept once, as
+ * images/blobs/<sha-256>.jpg with its renditions, however many products and variants show it.
+ * Images downloaded before the store sit directly in images/ as product_<id>.jpg and
+ * variant_<id>.jpg; collectGarbage deletes those once no row shows them either.
+ *
+ * A URL that is already in the store is not fetched again, and bytes from a new URL that match a
+ * stored blob are dropped in favour of it. Products and variants hold a reference to the blob
+ * they show (image_refs); collectGarbage deletes blobs whose last reference has gone, which is
+ * how a deleted product releases its images without touching ones other rows still show.
+ *
+ * add runs on the download threads. Attaching a blob (CatalogRepository.attachImage) and
+ * collectGarbage run on DatabaseWriter, so a blob cannot be released between the two.
+ */
+final class ImageStore {
+
+    private static final String TAG = "ImageStore";
+
+    static final class Blob {
+        final String hash;
+        final String path;
+        final String thumbPath;
+        final String detailPath;
+
+        Blob(String hash, String path, String thumbPath, String detailPath) {
+            this.hash = hash;
+            this.path = path;
+            this.thumbPath = thumbPath;
+            this.detailPath = detailPath;
+        }
+    }
+
+    /** Writes one image's bytes to out; throws if they cannot be had. */
+    interface Source {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private final DatabaseHelper dbHelper;
+    private final File directory;
+
+    ImageStore(Context context) {
+        this(DatabaseHelper.getInstance(context), new File(context.getFilesDir(), "images/blobs"));
+    }
+
+    // Tests pass their own helper and directory.
+    ImageStore(DatabaseHelper dbHelper, File directory) {
+        this.dbHelper = dbHelper;
+        this.directory = directory;
+    }
+
+    /** Whether path is a file of this store rather than a per-product image from before it. */
+    boolean contains(String path) {
+        return path != null && path.startsWith(directory.getPath() + File.separator);
+    }
+
+    /** The blob url was stored as, or null if it has not been, or its file has since been released. */
+    Blob find(String url) {
+        Blob blob = dbHelper.findImageBlobByUrl(url);
+        return blob != null && new File(blob.path).exists() ? blob : null;
+    }
+
+    /**
+     * Stores the bytes source writes under their hash and makes their renditions, or returns the
+     * blob that already holds the same bytes. Nothing refers to the result until
+     * CatalogRepository.attachImage points rows at it.
+     */
+    Blob add(Source source) throws IOException {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        File temp = File.createTempFile("blob", ".tmp", directory);
+        try {
+            MessageDigest digest = sha256();
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                source.writeTo(new DigestOutputStream(out, digest));
+                out.getFD().sync();
+            }
+            String hash = hex(digest.digest());
+
+            Blob known = dbHelper.findImageBlob(hash);
+            if (known != null && new File(known.path).exists()) {
+                return known;
+            }
+            File original = new File(directory, hash + ".jpg");
+            if (!temp.renameTo(original)) {
+                throw new IOException("Could not move " + temp + " to " + original);
+            }
+            String thumbPath = original.getPath();
+            String detailPath = original.getPath();
+            try {
+                ImageRenditions renditions = ImageRenditions.create(original);
+                thumbPath = renditions.thumbPath;
+                detailPath = renditions.detailPath;
+            } catch (IOException e) {
+                // The screens show the original instead.
+                Log.w(TAG, "No renditions for " + hash + ": " + e.getMessage());
+            }
+            return new Blob(hash, original.getPath(), thumbPath, detailPath);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /** Deletes the blobs no product or variant refers to any more; returns how many. */
+    int collectGarbage() {
+        List<Blob> released = dbHelper.releaseUnreferencedImageBlobs();
+        for (Blob blob : released) {
+            delete(blob.thumbPath);
+            delete(blob.detailPath);
+            delete(blob.path);
+        }
+        if (!released.isEmpty()) {
+            Log.d(TAG, "Released " + released.size() + " unreferenced images.");
+        }
+        int swept = sweepOlderImages();
+        if (swept > 0) {
+            Log.d(TAG, "Deleted " + swept + " images from before the store that nothing shows.");
+        }
+        return released.size();
+    }
+
+    // Deletes the files in images/ outside the store that no live or staged row shows: their
+    // product was deleted, their image URL changed, or their image was copied into the store.
+    private int sweepOlderImages() {
+        File[] files = directory.getParentFile() != null ? directory.getParentFile().listFiles() : null;
+        if (files == null) {
+            return 0;
+        }
+        Set<String> shown = dbHelper.getOlderImagePaths(directory.getPath() + File.separator);
+        int deleted = 0;
+        for (File file : files) {
+            if (file.isFile() && !shown.contains(file.getAbsolutePath()) && file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /** A source that copies an image already on disk, for moving older files into the store. */
+    static Source fromFile(File file) {
+        return out -> {
+            byte[] buffer = new byte[16 * 1024];
+            try (InputStream in = new FileInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+        };
+    }
+
+    private static void delete(String path) {
+        if (path != null) {
+            File file = new File(path);
+            if (file.exists()) {
+                file.delete();
+            }
+        }
+    }
+
+    private static MessageDigest sha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder out = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            out.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return out.toString();
+    }
+}
@@ -51,7 +51,8 @@ public class MainActivity extends AppCompatActivity implements OrderManager.OnBi
     private TextView tvOfflineIndicator, tvLastSynced;
     private Button btnStartDay, btnEndDay, btnViewCatalog, btnViewAllProducts, btnViewTodaysBills, btnUploadPendingBills, btnManageCustomers;
     private ExtendedFloatingActionButton fabGoToBill;
-    private DatabaseHelper dbHelper;
+    private OutboxRepository outbox;
+    private CustomerRepository customers;
 
     private TextView tvUserFullName, tvUsername;
 
@@ -75,7 +76,8 @@ public class MainActivity extends AppCompatActivity implements OrderManager.OnBi
         setSupportActionBar(toolbar);
 
         sessionManager = new SessionManager(this);
-        dbHelper = new DatabaseHelper(this);
+        outbox = new OutboxRepository(this);
+        customers = new CustomerRepository(this);
 
         initializeViews();
         setupClickListeners();
@@ -173,7 +175,7 @@ public class MainActivity extends AppCompatActivity implements OrderManager.OnBi
         if (!dayStarted) {
             ExecutorService executor = Executors.newSingleThreadExecutor();
             executor.execute(() -> {
-                boolean hasPending = dbHelper.hasPendingOrders();
+                boolean hasPending = outbox.hasPendingOrders();
                 runOnUiThread(() -> {
                     btnUploadPendingBills.setVisibility(hasPending ? View.VISIBLE : View.GONE);
                 });
@@ -252,7 +254,7 @@ public class MainActivity extends AppCompatActivity implements OrderManager.OnBi
         if (isNetworkAvailable()) {
             ExecutorService executor = Executors.newSingleThreadExecutor();
             executor.execute(() -> {
-                if (dbHelper.hasPendingCustomers()) {
+                if (outbox.hasPendingCustomers()) {
                     runOnUiThread(() -> {
                         Toast.makeText(this, "Syncing new customers in the background...", Toast.LENGTH_SHORT).show();
                         startCustomerUploadWorker();
@@ -306,7 +308,7 @@ public class MainActivity extends AppCompatActivity implements OrderManager.OnBi
         android.os.Handler handler = new android.os.Handler(Looper.getMainLooper());
 
         executor.execute(() -> {
-            List<DatabaseHelper.Route> routes = dbHelper.getAllRoutes();
+            List<DatabaseHelper.Route> routes = customers.getRoutes();
             handler.post(() -> {
                 if (routes.isEmpty()) {
                     Toast.makeText(this, "No routes found. Please sync data first.", Toast.LENGTH_LONG).show();
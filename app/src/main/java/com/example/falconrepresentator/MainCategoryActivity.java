@@ -23,7 +23,7 @@ public class MainCategoryActivity extends AppCompatActivity {
     private RecyclerView rvMainCategories;
     private MainCategoryAdapter adapter;
     private ArrayList<MainCategory> mainCategories = new ArrayList<>();
-    private DatabaseHelper dbHelper;
+    private CatalogRepository catalog;
     private ProgressBar progressBar;
     private SwipeRefreshLayout swipeRefreshLayout;
     private SyncManager syncManager;
@@ -48,7 +48,7 @@ public class MainCategoryActivity extends AppCompatActivity {
         adapter = new MainCategoryAdapter(this, mainCategories);
         rvMainCategories.setAdapter(adapter);
 
-        dbHelper = new DatabaseHelper(this);
+        catalog = new CatalogRepository(this);
         syncManager = new SyncManager(this);
 
         setupPullToRefresh();
@@ -99,7 +99,7 @@ public class MainCategoryActivity extends AppCompatActivity {
         android.os.Handler handler = new android.os.Handler(Looper.getMainLooper());
 
         executor.execute(() -> {
-            ArrayList<MainCategory> categories = dbHelper.getAllMainCategories();
+            ArrayList<MainCategory> categories = catalog.getMainCategories();
             handler.post(() -> {
                 mainCategories.clear();
                 mainCategories.addAll(categories);
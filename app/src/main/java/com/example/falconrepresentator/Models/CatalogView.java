@@ -0,0 +1,42 @@
+package com.example.falconrepresentator.Models;
+
+/**
+ * Read-only, position-indexed view of a product list for the catalog grids. Adapters bind the
+ * list columns straight from it and only build a Product (getProduct) when a row is acted on.
+ *
+ * A paged view may not have every row in memory: check isLoaded before reading a row.
+ */
+public interface CatalogView {
+
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    boolean isLoaded(int position);
+
+    int getItemId(int position);
+
+    String getName(int position);
+
+    double getPrice(int position);
+
+    String getSku(int position);
+
+    String getImageUrl(int position);
+
+    String getLocalPath(int position);
+
+    /** Grid-sized rendition of the local image, or null if there is none yet. */
+    String getThumbPath(int position);
+
+    int getVariantCount(int position);
+
+    String getVariantName(int position, int variant);
+
+    double getVariantPrice(int position, int variant);
+
+    /** The row as a Product with its variants, e.g. to add it to the bill. */
+    Product getProduct(int position);
+}
@@ -0,0 +1,260 @@
+package com.example.falconrepresentator.Models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A product list stored as parallel primitive arrays instead of a Product per row: ids and
+ * prices in int[] and double[], strings deduplicated across the list, and each row's variants
+ * as a range of the variant arrays. Holds the list columns only (see DatabaseHelper
+ * PRODUCT_LIST_COLUMNS); getProduct builds a full Product when one is needed.
+ *
+ * Immutable, so a page can be shared between threads; withImagePaths makes the copy that picks up
+ * a finished download.
+ */
+public final class ColumnarCatalog implements CatalogView {
+
+    public static final ColumnarCatalog EMPTY = new Builder().build();
+
+    private final int size;
+    private final int[] itemIds;
+    private final double[] prices;
+    private final String[] names;
+    private final String[] skus;
+    private final String[] imageUrls;
+    private final String[] localPaths;
+    private final String[] thumbPaths;
+    // Row i owns variants [variantStart[i], variantStart[i + 1]).
+    private final int[] variantStart;
+    private final int[] variantIds;
+    private final double[] variantPrices;
+    private final String[] variantNames;
+    private final String[] variantSkus;
+    private final String[] variantImageUrls;
+
+    private ColumnarCatalog(Builder b) {
+        size = b.size;
+        itemIds = Arrays.copyOf(b.itemIds, b.size);
+        prices = Arrays.copyOf(b.prices, b.size);
+        names = Arrays.copyOf(b.names, b.size);
+        skus = Arrays.copyOf(b.skus, b.size);
+        imageUrls = Arrays.copyOf(b.imageUrls, b.size);
+        localPaths = Arrays.copyOf(b.localPaths, b.size);
+        thumbPaths = Arrays.copyOf(b.thumbPaths, b.size);
+        variantStart = Arrays.copyOf(b.variantStart, b.size + 1);
+        variantStart[b.size] = b.variantCount;
+        variantIds = Arrays.copyOf(b.variantIds, b.variantCount);
+        variantPrices = Arrays.copyOf(b.variantPrices, b.variantCount);
+        variantNames = Arrays.copyOf(b.variantNames, b.variantCount);
+        variantSkus = Arrays.copyOf(b.variantSkus, b.variantCount);
+        variantImageUrls = Arrays.copyOf(b.variantImageUrls, b.variantCount);
+    }
+
+    private ColumnarCatalog(ColumnarCatalog other, String[] localPaths, String[] thumbPaths) {
+        size = other.size;
+        itemIds = other.itemIds;
+        prices = other.prices;
+        names = other.names;
+        skus = other.skus;
+        imageUrls = other.imageUrls;
+        this.localPaths = localPaths;
+        this.thumbPaths = thumbPaths;
+        variantStart = other.variantStart;
+        variantIds = other.variantIds;
+        variantPrices = other.variantPrices;
+        variantNames = other.variantNames;
+        variantSkus = other.variantSkus;
+        variantImageUrls = other.variantImageUrls;
+    }
+
+    public static ColumnarCatalog of(List<Product> products) {
+        Builder builder = new Builder();
+        for (Product product : products) {
+            builder.addProduct(product.getItemId(), product.getName(), product.getPrice(), product.getSku(),
+                    product.getMainImage(), product.getLocalPath(), product.getThumbPath());
+            for (ProductVariant variant : product.getVariants()) {
+                builder.addVariant(variant.getVariantId(), variant.getVariantName(), variant.getSku(),
+                        variant.getPrice(), variant.getImageUrl());
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isLoaded(int position) {
+        return position >= 0 && position < size;
+    }
+
+    @Override
+    public int getItemId(int position) {
+        return itemIds[position];
+    }
+
+    @Override
+    public String getName(int position) {
+        return names[position];
+    }
+
+    @Override
+    public double getPrice(int position) {
+        return prices[position];
+    }
+
+    @Override
+    public String getSku(int position) {
+        return skus[position];
+    }
+
+    @Override
+    public String getImageUrl(int position) {
+        return imageUrls[position];
+    }
+
+    @Override
+    public String getLocalPath(int position) {
+        return localPaths[position];
+    }
+
+    @Override
+    public String getThumbPath(int position) {
+        return thumbPaths[position];
+    }
+
+    @Override
+    public int getVariantCount(int position) {
+        return variantStart[position + 1] - variantStart[position];
+    }
+
+    @Override
+    public String getVariantName(int position, int variant) {
+        return variantNames[variantStart[position] + variant];
+    }
+
+    @Override
+    public double getVariantPrice(int position, int variant) {
+        return variantPrices[variantStart[position] + variant];
+    }
+
+    @Override
+    public Product getProduct(int position) {
+        int itemId = itemIds[position];
+        Product product = new Product(itemId, names[position], prices[position], null, imageUrls[position],
+                localPaths[position], null, 0, 0, null, null, skus[position]);
+        product.setThumbPath(thumbPaths[position]);
+        for (int v = variantStart[position]; v < variantStart[position + 1]; v++) {
+            product.addVariant(new ProductVariant(variantIds[v], itemId, variantNames[v], variantSkus[v],
+                    variantPrices[v], variantImageUrls[v]));
+        }
+        return product;
+    }
+
+    /**
+     * This list with new local image and thumbnail paths for the row with this item id, or this
+     * list itself if it has no such row. Only the two path arrays are copied.
+     */
+    public ColumnarCatalog withImagePaths(int itemId, String localPath, String thumbPath) {
+        String[] newLocalPaths = null;
+        String[] newThumbPaths = null;
+        for (int i = 0; i < size; i++) {
+            if (itemIds[i] == itemId) {
+                if (newLocalPaths == null) {
+                    newLocalPaths = localPaths.clone();
+                    newThumbPaths = thumbPaths.clone();
+                }
+                newLocalPaths[i] = localPath;
+                newThumbPaths[i] = thumbPath;
+            }
+        }
+        return newLocalPaths == null ? this : new ColumnarCatalog(this, newLocalPaths, newThumbPaths);
+    }
+
+    /** Appends rows in list order; each addVariant belongs to the last addProduct. */
+    public static final class Builder {
+        private int size;
+        private int variantCount;
+        private int[] itemIds = new int[16];
+        private double[] prices = new double[16];
+        private String[] names = new String[16];
+        private String[] skus = new String[16];
+        private String[] imageUrls = new String[16];
+        private String[] localPaths = new String[16];
+        private String[] thumbPaths = new String[16];
+        private int[] variantStart = new int[17];
+        private int[] variantIds = new int[16];
+        private double[] variantPrices = new double[16];
+        private String[] variantNames = new String[16];
+        private String[] variantSkus = new String[16];
+        private String[] variantImageUrls = new String[16];
+        private final Map<String, String> strings = new HashMap<>();
+
+        public Builder addProduct(int itemId, String name, double price, String sku, String imageUrl, String localPath, String thumbPath) {
+            if (size == itemIds.length) {
+                int capacity = size * 2;
+                itemIds = Arrays.copyOf(itemIds, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                names = Arrays.copyOf(names, capacity);
+                skus = Arrays.copyOf(skus, capacity);
+                imageUrls = Arrays.copyOf(imageUrls, capacity);
+                localPaths = Arrays.copyOf(localPaths, capacity);
+                thumbPaths = Arrays.copyOf(thumbPaths, capacity);
+                variantStart = Arrays.copyOf(variantStart, capacity + 1);
+            }
+            itemIds[size] = itemId;
+            prices[size] = price;
+            names[size] = intern(name);
+            skus[size] = intern(sku);
+            imageUrls[size] = imageUrl;
+            // Same clean-up as the Product constructor.
+            localPaths[size] = (localPath != null && (localPath.equals("Invalid URL") || localPath.equals("null") || localPath.isEmpty())) ? null : localPath;
+            thumbPaths[size] = thumbPath;
+            variantStart[size] = variantCount;
+            size++;
+            return this;
+        }
+
+        public Builder addVariant(int variantId, String name, String sku, double price, String imageUrl) {
+            if (size == 0) {
+                throw new IllegalStateException("addVariant before addProduct");
+            }
+            if (variantCount == variantIds.length) {
+                int capacity = variantCount * 2;
+                variantIds = Arrays.copyOf(variantIds, capacity);
+                variantPrices = Arrays.copyOf(variantPrices, capacity);
+                variantNames = Arrays.copyOf(variantNames, capacity);
+                variantSkus = Arrays.copyOf(variantSkus, capacity);
+                variantImageUrls = Arrays.copyOf(variantImageUrls, capacity);
+            }
+            variantIds[variantCount] = variantId;
+            variantPrices[variantCount] = price;
+            variantNames[variantCount] = intern(name);
+            variantSkus[variantCount] = intern(sku);
+            variantImageUrls[variantCount] = imageUrl;
+            variantCount++;
+            return this;
+        }
+
+        // Variant names ("Red", "A4") repeat across a catalog; keep one copy of each.
+        private String intern(String value) {
+            if (value == null) {
+                return null;
+            }
+            String shared = strings.get(value);
+            if (shared == null) {
+                strings.put(value, value);
+                shared = value;
+            }
+            return shared;
+        }
+
+        public ColumnarCatalog build() {
+            return new ColumnarCatalog(this);
+        }
+    }
+}
@@ -3,6 +3,11 @@ package com.example.falconrepresentator.Models;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A catalog product. Products from the list and search queries carry only the list columns
+ * (id, name, price, sku, images and variant summaries); description, brand and bulk pricing
+ * are null or 0 until the full record is loaded by id.
+ */
 public class Product {
     private final int itemId;
     private final String name;
@@ -10,6 +15,9 @@ public class Product {
     private final String description;
     private final String mainImage;
     private String localPath; // Made non-final to allow updates
+    // Downscaled copies of localPath for the grids and the detail screen; see ImageRenditions.
+    private String thumbPath;
+    private String detailPath;
 
     // New Fields
     private final String brandName;
@@ -45,6 +53,8 @@ public class Product {
     public String getDescription() { return description; }
     public String getMainImage() { return mainImage; }
     public String getLocalPath() { return localPath; } // Returns already sanitized localPath
+    public String getThumbPath() { return thumbPath; }
+    public String getDetailPath() { return detailPath; }
     public String getBrandName() { return brandName; }
     public int getQtyPerBox() { return qtyPerBox; }
     public double getBulkPrice() { return bulkPrice; }
@@ -63,6 +73,27 @@ public class Product {
         this.localPath = localPath;
     }
 
+    public void setThumbPath(String thumbPath) {
+        this.thumbPath = thumbPath;
+    }
+
+    public void setDetailPath(String detailPath) {
+        this.detailPath = detailPath;
+    }
+
+    /** A copy with copies of its variants, so the two can be updated independently. */
+    public Product copy() {
+        Product copy = new Product(itemId, name, price, description, mainImage, localPath, brandName, qtyPerBox, bulkPrice, cartoonPcs, bulkDescription, sku);
+        copy.thumbPath = thumbPath;
+        copy.detailPath = detailPath;
+        if (variants != null) {
+            for (ProductVariant variant : variants) {
+                copy.addVariant(variant.copy());
+            }
+        }
+        return copy;
+    }
+
     // Getter and Setter for Variants
     public List<ProductVariant> getVariants() { return variants; }
     public void setVariants(List<ProductVariant> variants) { this.variants = variants; }
@@ -8,6 +8,8 @@ public class ProductVariant {
     private final double price;
     private final String imageUrl;
     private String localPath;
+    private String thumbPath;
+    private String detailPath;
 
     public ProductVariant(int variantId, int itemId, String variantName, String sku, double price, String imageUrl) {
         this.variantId = variantId;
@@ -26,9 +28,27 @@ public class ProductVariant {
     public double getPrice() { return price; }
     public String getImageUrl() { return imageUrl; }
     public String getLocalPath() { return localPath; }
+    public String getThumbPath() { return thumbPath; }
+    public String getDetailPath() { return detailPath; }
 
     // Setter for local path after image download
     public void setLocalPath(String localPath) {
         this.localPath = localPath;
     }
+
+    public void setThumbPath(String thumbPath) {
+        this.thumbPath = thumbPath;
+    }
+
+    public void setDetailPath(String detailPath) {
+        this.detailPath = detailPath;
+    }
+
+    public ProductVariant copy() {
+        ProductVariant copy = new ProductVariant(variantId, itemId, variantName, sku, price, imageUrl);
+        copy.localPath = localPath;
+        copy.thumbPath = thumbPath;
+        copy.detailPath = detailPath;
+        return copy;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package com.example.falconrepresentator;
+
+import android.content.Context;
+
+import com.example.falconrepresentator.Models.OrderManager;
+
+import java.util.List;
+
+/**
+ * Bills taken on this device: saving a bill and reading it back for the receipt and the day's
+ * list. Uploading them is OutboxRepository's job.
+ *
+ * Backed by the process-wide DatabaseHelper. Call it off the main thread: saveOrder runs on
+ * DatabaseWriter and waits for it.
+ */
+public class OrderRepository {
+
+    private final DatabaseHelper dbHelper;
+
+    public OrderRepository(Context context) {
+        this.dbHelper = DatabaseHelper.getInstance(context);
+    }
+
+    /** Returns the new order id, or -1 if the bill could not be saved. */
+    public long saveOrder(int customerId, int repId, String orderDate, double total, double billDiscountPercentage, List<OrderManager.OrderItem> items) {
+        return DatabaseWriter.call(() -> dbHelper.saveOrder(customerId, repId, orderDate, total, billDiscountPercentage, items));
+    }
+
+    public OrderManager.OrderDetails getOrderDetails(long orderId) {
+        return dbHelper.getOrderDetailsById(orderId);
+    }
+
+    public List<OrderManager.OrderDetails> getTodaysPendingOrders() {
+        return dbHelper.getTodaysPendingOrders();
+    }
+}
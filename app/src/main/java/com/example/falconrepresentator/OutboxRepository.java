@@ -0,0 +1,62 @@
+package com.example.falconrepresentator;
+
+import android.content.Context;
+
+import com.example.falconrepresentator.Models.PendingCustomer;
+
+import java.util.List;
+
+/**
+ * Everything created offline that still has to reach the server: pending bills and pending
+ * customers. The upload workers drain it; screens add to it and ask whether it is empty.
+ *
+ * Backed by the process-wide DatabaseHelper. Call it off the main thread: the writes run on
+ * DatabaseWriter and wait for it.
+ */
+public class OutboxRepository {
+
+    private final DatabaseHelper dbHelper;
+
+    public OutboxRepository(Context context) {
+        this.dbHelper = DatabaseHelper.getInstance(context);
+    }
+
+    // --- Bills ---
+
+    public boolean hasPendingOrders() {
+        return dbHelper.hasPendingOrders();
+    }
+
+    /** A consistent snapshot of every pending bill with its items. */
+    public List<DatabaseHelper.PendingOrder> getPendingOrders() {
+        return dbHelper.getPendingOrdersForUpload();
+    }
+
+    public void removeUploadedOrders(List<Long> orderIds) {
+        DatabaseWriter.run(() -> dbHelper.deleteSyncedOrdersByIds(orderIds));
+    }
+
+    // --- Customers ---
+
+    public boolean hasPendingCustomers() {
+        return dbHelper.hasPendingCustomers();
+    }
+
+    public List<PendingCustomer> getPendingCustomers() {
+        return dbHelper.getAllPendingCustomers();
+    }
+
+    /** Returns the local id of the queued customer, or -1 if it could not be saved. */
+    public long addPendingCustomer(String shopName, String contact, String address, int routeId, int userId) {
+        return DatabaseWriter.call(() -> dbHelper.savePendingCustomerLocally(shopName, contact, address, routeId, userId));
+    }
+
+    public boolean deletePendingCustomer(long localId) {
+        return DatabaseWriter.call(() -> dbHelper.deletePendingCustomer(localId));
+    }
+
+    /** Replaces a queued customer with the row the server created for it. */
+    public void markCustomerUploaded(long localId, int serverId) {
+        DatabaseWriter.run(() -> dbHelper.movePendingCustomerToMainTable(localId, serverId));
+    }
+}
@@ -22,6 +22,7 @@ import com.bumptech.glide.RequestBuilder;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.load.engine.GlideException;
 import com.bumptech.glide.request.target.CustomTarget;
+import com.bumptech.glide.signature.ObjectKey;
 import com.bumptech.glide.request.transition.Transition;
 import com.example.falconrepresentator.Adapters.ProductVariantAdapter;
 import com.example.falconrepresentator.Models.OrderManager;
@@ -37,7 +38,7 @@ import java.util.concurrent.Executors;
 public class ProductDetailActivity extends AppCompatActivity implements OrderManager.OnBillChangedListener {
 
     private static final String TAG = "ProductDetailActivity"; // Use this tag to filter logs
-    private DatabaseHelper dbHelper;
+    private CatalogRepository catalog;
     private ImageView ivProductImage;
     private TextView tvProductName, tvProductPrice, tvProductDescription,
             tvSku, tvBrand, tvBulkPrice, tvCartoonPcs, tvBulkDescription, tvVariantsHeader, tvQuantity;
@@ -108,7 +109,7 @@ public class ProductDetailActivity extends AppCompatActivity implements OrderMan
 
         executor.execute(() -> {
             Log.d(TAG, "Background thread: Fetching product from database...");
-            currentProduct = dbHelper.getProductById(productId);
+            currentProduct = catalog.getProduct(productId);
             Log.d(TAG, "Background thread: Database fetch complete. Product is " + (currentProduct == null ? "NULL" : "found."));
 
             handler.post(() -> {
@@ -223,7 +224,7 @@ public class ProductDetailActivity extends AppCompatActivity implements OrderMan
     // --- The rest of the file remains the same ---
 
     private void initializeViews() {
-        dbHelper = new DatabaseHelper(this);
+        catalog = new CatalogRepository(this);
         syncManager = new SyncManager(this);
         swipeRefreshLayout = findViewById(R.id.swipeRefreshLayoutDetail);
         ivProductImage = findViewById(R.id.ivDetailProductImage);
@@ -327,9 +328,14 @@ public class ProductDetailActivity extends AppCompatActivity implements OrderMan
         this.currentImageUrl = url;
 
         RequestBuilder<Drawable> requestBuilder;
-
-        if (localPath != null && !localPath.isEmpty() && new File(localPath).exists()) {
-            requestBuilder = Glide.with(this).load(new File(localPath)).diskCacheStrategy(DiskCacheStrategy.NONE).skipMemoryCache(true);
+        // Show the detail-sized rendition; the full-size original is kept for the full-screen view.
+        String detailPath = productObject != null ? productObject.getDetailPath()
+                : variantObject != null ? variantObject.getDetailPath() : null;
+        String shownPath = detailPath != null && new File(detailPath).exists() ? detailPath : localPath;
+
+        if (shownPath != null && !shownPath.isEmpty() && new File(shownPath).exists()) {
+            File shownFile = new File(shownPath);
+            requestBuilder = Glide.with(this).load(shownFile).signature(new ObjectKey(shownFile.lastModified())).diskCacheStrategy(DiskCacheStrategy.NONE);
         } else {
             requestBuilder = Glide.with(this).load(url).diskCacheStrategy(DiskCacheStrategy.DATA);
         }
@@ -15,11 +15,11 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 import com.example.falconrepresentator.Adapters.ProductAdapter;
+import com.example.falconrepresentator.Models.CatalogView;
+import com.example.falconrepresentator.Models.ColumnarCatalog;
 import com.example.falconrepresentator.Models.OrderManager;
-import com.example.falconrepresentator.Models.Product;
 import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton;
 
-import java.util.ArrayList;
 import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -28,15 +28,18 @@ public class ProductListActivity extends AppCompatActivity implements OrderManag
     private static final String TAG = "ProductListActivity";
     private RecyclerView rvProducts;
     private ProductAdapter adapter;
-    private ArrayList<Product> allProducts = new ArrayList<>();
-    private ArrayList<Product> filteredProducts = new ArrayList<>();
-    private DatabaseHelper dbHelper;
+    private CatalogPager catalogPager;
+    private CatalogView filteredProducts = ColumnarCatalog.EMPTY;
+    private CatalogRepository catalog;
     private ProgressBar progressBar;
     private SearchView searchView;
     private SwipeRefreshLayout swipeRefreshLayout;
     private SyncManager syncManager;
     private int subCategoryId;
     private ExtendedFloatingActionButton fabGoToBill;
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+    private final android.os.Handler searchHandler = new android.os.Handler(Looper.getMainLooper());
+    private int searchGeneration = 0;
     private SessionManager sessionManager;
 
     @Override
@@ -46,6 +49,7 @@ public class ProductListActivity extends AppCompatActivity implements OrderManag
 
         String subCategoryName = getIntent().getStringExtra("SUB_CATEGORY_NAME");
         subCategoryId = getIntent().getIntExtra("SUB_CATEGORY_ID", 0);
+        new CategoryUsage(this).subCategoryOpened(subCategoryId);
 
         Toolbar toolbar = findViewById(R.id.toolbar_product_list);
         setSupportActionBar(toolbar);
@@ -84,6 +88,10 @@ public class ProductListActivity extends AppCompatActivity implements OrderManag
     protected void onDestroy() {
         super.onDestroy();
         OrderManager.getInstance().unregisterListener(this);
+        searchExecutor.shutdownNow();
+        if (catalogPager != null) {
+            catalogPager.close();
+        }
     }
 
     private void initializeViews() {
@@ -94,7 +102,7 @@ public class ProductListActivity extends AppCompatActivity implements OrderManag
         rvProducts.setLayoutManager(new GridLayoutManager(this, 2));
         fabGoToBill = findViewById(R.id.fabGoToBill);
 
-        dbHelper = new DatabaseHelper(this);
+        catalog = new CatalogRepository(this);
         syncManager = new SyncManager(this);
         sessionManager = new SessionManager(this);
     }
@@ -145,20 +153,21 @@ public class ProductListActivity extends AppCompatActivity implements OrderManag
     }
 
     private void filter(String text) {
-        filteredProducts.clear();
-        if (text.isEmpty()) {
-            filteredProducts.addAll(allProducts);
-        } else {
-            text = text.toLowerCase(Locale.getDefault());
-            for (Product item : allProducts) {
-                if (item.getName().toLowerCase(Locale.getDefault()).contains(text) ||
-                        (item.getDescription() != null && item.getDescription().toLowerCase(Locale.getDefault()).contains(text)) ||
-                        (item.getSku() != null && item.getSku().toLowerCase(Locale.getDefault()).contains(text))) {
-                    filteredProducts.add(item);
-                }
-            }
+        final int generation = ++searchGeneration;
+        if (text.trim().isEmpty()) {
+            adapter.setProducts(catalogPager != null ? catalogPager : filteredProducts);
+            return;
         }
-        adapter.notifyDataSetChanged();
+
+        searchExecutor.execute(() -> {
+            ColumnarCatalog results = catalog.searchCatalog(text, 0, subCategoryId, DatabaseHelper.SEARCH_RESULT_LIMIT);
+            searchHandler.post(() -> {
+                // Drop results for queries the user has already typed past.
+                if (generation != searchGeneration) return;
+                filteredProducts = results;
+                adapter.setProducts(filteredProducts);
+            });
+        });
     }
 
     private void loadProductsFromDatabase() {
@@ -167,23 +176,36 @@ public class ProductListActivity extends AppCompatActivity implements OrderManag
         }
         rvProducts.setVisibility(View.GONE);
 
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        android.os.Handler handler = new android.os.Handler(Looper.getMainLooper());
-
-        executor.execute(() -> {
-            ArrayList<Product> products = dbHelper.getProductsForSubCategory(subCategoryId);
-            handler.post(() -> {
-                allProducts.clear();
-                allProducts.addAll(products);
-                filter(searchView.getQuery().toString());
+        if (catalogPager != null) {
+            catalogPager.close();
+        }
 
-                progressBar.setVisibility(View.GONE);
-                rvProducts.setVisibility(View.VISIBLE);
+        // Only the first page is read before the grid is shown; the rest is paged in on scroll.
+        final CatalogPager pager = new CatalogPager(catalog, 0, subCategoryId, new CatalogPager.Listener() {
+            @Override
+            public void onPageLoaded(int start, int count) {
+                if (adapter.getProducts() == catalogPager) {
+                    adapter.notifyItemRangeChanged(start, count);
+                }
+            }
 
-                if (allProducts.isEmpty()) {
-                    Toast.makeText(this, "No products found in this category. Pull down to sync.", Toast.LENGTH_LONG).show();
+            @Override
+            public void onSizeChanged() {
+                if (adapter.getProducts() == catalogPager) {
+                    adapter.notifyDataSetChanged();
                 }
-            });
+            }
+        });
+        catalogPager = pager;
+        pager.start(() -> {
+            filter(searchView.getQuery().toString());
+
+            progressBar.setVisibility(View.GONE);
+            rvProducts.setVisibility(View.VISIBLE);
+
+            if (pager.isEmpty()) {
+                Toast.makeText(this, "No products found in this category. Pull down to sync.", Toast.LENGTH_LONG).show();
+            }
         });
     }
 
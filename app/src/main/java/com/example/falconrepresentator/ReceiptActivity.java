@@ -38,7 +38,7 @@ public class ReceiptActivity extends AppCompatActivity {
     private RecyclerView rvReceiptItems;
     private Button btnShareText, btnSharePdf, btnNewOrder;
 
-    private DatabaseHelper dbHelper;
+    private OrderRepository orders;
     private long orderId;
     private OrderManager.OrderDetails currentOrderDetails;
 
@@ -47,7 +47,7 @@ public class ReceiptActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_receipt);
 
-        dbHelper = new DatabaseHelper(this);
+        orders = new OrderRepository(this);
         orderId = getIntent().getLongExtra(EXTRA_ORDER_ID, -1);
 
         initializeViews();
@@ -96,7 +96,7 @@ public class ReceiptActivity extends AppCompatActivity {
         Handler handler = new Handler(Looper.getMainLooper());
 
         executor.execute(() -> {
-            currentOrderDetails = dbHelper.getOrderDetailsById(orderId);
+            currentOrderDetails = orders.getOrderDetails(orderId);
             handler.post(() -> {
                 if (currentOrderDetails != null) {
                     populateUi();
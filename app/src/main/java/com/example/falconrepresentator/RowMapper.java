@@ -0,0 +1,52 @@
+package com.example.falconrepresentator;
+
+import android.database.Cursor;
+
+import java.util.Collection;
+
+/**
+ * Turns the current row of a cursor into an object. A RowMapper belongs to one cursor: its
+ * Binder looks every column index up once, and map() then reads the row by position only.
+ *
+ * Binders resolve columns with getColumnIndex(), so a query may leave out columns its caller
+ * does not use; the opt* readers return a default for a column that is not in the projection.
+ */
+public interface RowMapper<T> {
+
+    T map(Cursor cursor);
+
+    interface Binder<T> {
+        RowMapper<T> bind(Cursor cursor);
+    }
+
+    /** Maps every row of cursor (which may be null) into out and returns out. Does not close the cursor. */
+    static <T, C extends Collection<? super T>> C readAll(Cursor cursor, Binder<T> binder, C out) {
+        if (cursor != null && cursor.moveToFirst()) {
+            RowMapper<T> mapper = binder.bind(cursor);
+            do {
+                out.add(mapper.map(cursor));
+            } while (cursor.moveToNext());
+        }
+        return out;
+    }
+
+    /** Maps the first row, or returns null when there is none. Does not close the cursor. */
+    static <T> T readFirst(Cursor cursor, Binder<T> binder) {
+        if (cursor != null && cursor.moveToFirst()) {
+            return binder.bind(cursor).map(cursor);
+        }
+        return null;
+    }
+
+    static String optString(Cursor cursor, int index) {
+        return index < 0 ? null : cursor.getString(index);
+    }
+
+    static int optInt(Cursor cursor, int index) {
+        return index < 0 ? 0 : cursor.getInt(index);
+    }
+
+    static double optDouble(Cursor cursor, int index) {
+        return index < 0 ? 0 : cursor.getDouble(index);
+    }
+}
@@ -26,7 +26,7 @@ public class SubCategoryActivity extends AppCompatActivity {
     private SubCategoryAdapter adapter;
     private ArrayList<SubCategory> allSubCategories = new ArrayList<>(); // All sub-categories for filtering
     private ArrayList<SubCategory> filteredSubCategories = new ArrayList<>(); // Sub-categories currently displayed
-    private DatabaseHelper dbHelper;
+    private CatalogRepository catalog;
     private ProgressBar progressBar;
     private SearchView searchView;
     private SwipeRefreshLayout swipeRefreshLayout;
@@ -40,6 +40,7 @@ public class SubCategoryActivity extends AppCompatActivity {
 
         String mainCategoryName = getIntent().getStringExtra("MAIN_CATEGORY_NAME");
         mainCategoryId = getIntent().getIntExtra("MAIN_CATEGORY_ID", 0);
+        new CategoryUsage(this).mainCategoryOpened(mainCategoryId);
 
         Toolbar toolbar = findViewById(R.id.toolbar_sub_category);
         setSupportActionBar(toolbar);
@@ -57,7 +58,7 @@ public class SubCategoryActivity extends AppCompatActivity {
         adapter = new SubCategoryAdapter(this, filteredSubCategories);
         rvSubCategories.setAdapter(adapter);
 
-        dbHelper = new DatabaseHelper(this);
+        catalog = new CatalogRepository(this);
         syncManager = new SyncManager(this);
 
         if (mainCategoryId > 0) {
@@ -143,7 +144,7 @@ public class SubCategoryActivity extends AppCompatActivity {
         android.os.Handler handler = new android.os.Handler(Looper.getMainLooper());
 
         executor.execute(() -> {
-            ArrayList<SubCategory> categories = dbHelper.getSubCategoriesForMain(mainCategoryId);
+            ArrayList<SubCategory> categories = catalog.getSubCategories(mainCategoryId);
             handler.post(() -> {
                 allSubCategories.clear();
                 allSubCategories.addAll(categories);
@@ -0,0 +1,169 @@
+package com.example.falconrepresentator;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.JsonArrayRequest;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fetches the sub-categories of many main categories at once.
+ *
+ * It first asks get_sub_categories.php for every category in a single request
+ * (category_ids=1,2,3). Servers that do not understand that parameter, or that do not tag each
+ * row with its MainCategoryID, are handled by falling back to one request per category with at
+ * most MAX_IN_FLIGHT requests outstanding. Either way the caller gets one complete list, or a
+ * single failure if any category could not be fetched. Callbacks arrive on the main thread.
+ */
+public class SubCategoryFetchClient {
+
+    private static final String TAG = "SubCategoryFetchClient";
+    private static final int MAX_IN_FLIGHT = 4;
+
+    public static class SubCategoryRow {
+        public final int subCategoryId;
+        public final String name;
+        public final int mainCategoryId;
+
+        SubCategoryRow(int subCategoryId, String name, int mainCategoryId) {
+            this.subCategoryId = subCategoryId;
+            this.name = name;
+            this.mainCategoryId = mainCategoryId;
+        }
+    }
+
+    public interface Callback {
+        void onFetched(List<SubCategoryRow> rows);
+        void onFailed(String error);
+    }
+
+    private final RequestQueue requestQueue;
+    private final String endpoint;
+
+    public SubCategoryFetchClient(RequestQueue requestQueue, String apiBaseUrl) {
+        this.requestQueue = requestQueue;
+        this.endpoint = apiBaseUrl + "get_sub_categories.php";
+    }
+
+    public void fetch(List<Integer> mainCategoryIds, Callback callback) {
+        if (mainCategoryIds.isEmpty()) {
+            callback.onFetched(new ArrayList<>());
+            return;
+        }
+
+        String url = endpoint + "?category_ids=" + TextUtils.join(",", mainCategoryIds);
+        JsonArrayRequest request = new JsonArrayRequest(Request.Method.GET, url, null,
+                response -> {
+                    List<SubCategoryRow> rows = parseBatch(response);
+                    if (rows != null) {
+                        callback.onFetched(rows);
+                    } else {
+                        Log.d(TAG, "Batched sub-category fetch not supported; falling back to per-category requests.");
+                        fetchPerCategory(mainCategoryIds, callback);
+                    }
+                },
+                error -> {
+                    Log.d(TAG, "Batched sub-category fetch failed; falling back to per-category requests.");
+                    fetchPerCategory(mainCategoryIds, callback);
+                });
+        request.setShouldCache(false);
+        requestQueue.add(request);
+    }
+
+    // Returns null when the response does not look like a batched answer.
+    private List<SubCategoryRow> parseBatch(JSONArray response) {
+        if (response.length() == 0) {
+            return null;
+        }
+        List<SubCategoryRow> rows = new ArrayList<>(response.length());
+        try {
+            for (int i = 0; i < response.length(); i++) {
+                JSONObject subCatObject = response.getJSONObject(i);
+                if (!subCatObject.has("MainCategoryID")) {
+                    return null;
+                }
+                rows.add(new SubCategoryRow(subCatObject.getInt("SubCategoryID"),
+                        subCatObject.getString("SubCategoryName"), subCatObject.getInt("MainCategoryID")));
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error parsing batched sub-categories: " + e.getMessage());
+            return null;
+        }
+        return rows;
+    }
+
+    private void fetchPerCategory(List<Integer> mainCategoryIds, Callback callback) {
+        new PerCategoryFetch(mainCategoryIds, callback).start();
+    }
+
+    // Volley delivers on the main thread, so this state needs no locking.
+    private class PerCategoryFetch {
+        private final List<Integer> mainCategoryIds;
+        private final Callback callback;
+        private final List<SubCategoryRow> rows = new ArrayList<>();
+        private int next = 0;
+        private int inFlight = 0;
+        private boolean failed = false;
+
+        PerCategoryFetch(List<Integer> mainCategoryIds, Callback callback) {
+            this.mainCategoryIds = mainCategoryIds;
+            this.callback = callback;
+        }
+
+        void start() {
+            while (inFlight < MAX_IN_FLIGHT && next < mainCategoryIds.size()) {
+                request(mainCategoryIds.get(next++));
+            }
+        }
+
+        private void request(int mainCategoryId) {
+            inFlight++;
+            String url = endpoint + "?category_id=" + mainCategoryId;
+            JsonArrayRequest request = new JsonArrayRequest(Request.Method.GET, url, null,
+                    response -> {
+                        try {
+                            for (int i = 0; i < response.length(); i++) {
+                                JSONObject subCatObject = response.getJSONObject(i);
+                                rows.add(new SubCategoryRow(subCatObject.getInt("SubCategoryID"),
+                                        subCatObject.getString("SubCategoryName"), mainCategoryId));
+                            }
+                            onRequestDone(null);
+                        } catch (JSONException e) {
+                            Log.e(TAG, "Error parsing sub-categories for main_cat_id: " + mainCategoryId, e);
+                            onRequestDone("Error parsing sub-categories.");
+                        }
+                    },
+                    error -> {
+                        Log.e(TAG, "Volley error fetching sub-categories for main_cat_id: " + mainCategoryId, error);
+                        onRequestDone("Could not fetch sub-categories.");
+                    });
+            request.setShouldCache(false);
+            requestQueue.add(request);
+        }
+
+        private void onRequestDone(String error) {
+            inFlight--;
+            if (failed) {
+                return;
+            }
+            if (error != null) {
+                failed = true;
+                callback.onFailed(error);
+                return;
+            }
+            if (next < mainCategoryIds.size()) {
+                start();
+            } else if (inFlight == 0) {
+                callback.onFetched(rows);
+            }
+        }
+    }
+}
@@ -1,34 +1,35 @@
 package com.example.falconrepresentator;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
-import android.graphics.Bitmap;
-import android.graphics.drawable.Drawable;
+import android.database.sqlite.SQLiteStatement;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.JsonReader;
 import android.util.Log;
-import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.toolbox.JsonArrayRequest;
-import com.android.volley.toolbox.StringRequest;
 import com.android.volley.toolbox.Volley;
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.CustomTarget;
-import com.bumptech.glide.request.transition.Transition;
 import com.example.falconrepresentator.Models.MainCategory;
-import com.example.falconrepresentator.Models.ProductVariant;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -36,21 +37,42 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SyncManager {
     private static final String TAG = "SyncManager";
     private final Context context;
     private final RequestQueue requestQueue;
+    private final SubCategoryFetchClient subCategoryClient;
     private final DatabaseHelper dbHelper;
+    private final CatalogRepository catalog;
+    private final ImageStore imageStore;
+    private final OkHttpClient httpClient;
+    // Chunk downloads run in parallel on FETCH_EXECUTOR; every write goes through DatabaseWriter.
+    // One pool for the process, since a SyncManager is created per sync and never closed.
+    private static final ExecutorService FETCH_EXECUTOR = Executors.newFixedThreadPool(MAX_DETAIL_FETCHES_IN_FLIGHT);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Completion message from the products stage, shown once every stage has finished.
+    private volatile String productSyncSummary;
 
     private static final String API_BASE_URL = "https://representator.falconstationery.com/Api/";
-
-    private interface DataSyncCallback {
-        void onSyncFinished();
-    }
+    private static final String STAGE_MAIN_CATEGORIES = "Main categories";
+    private static final String STAGE_SUB_CATEGORIES = "Sub-categories";
+    private static final String STAGE_CUSTOMERS = "Customers";
+    private static final String STAGE_ROUTES = "Routes";
+    private static final String STAGE_PRODUCTS = "Products";
+    // Product details are fetched in chunks of this many IDs, each committed on its own.
+    private static final int DETAIL_CHUNK_SIZE = 100;
+    private static final int MAX_DETAIL_FETCHES_IN_FLIGHT = 3;
+    private static final int DETAIL_CHUNK_ATTEMPTS = 2;
+    // Catalog photos are a few hundred KB; anything far larger is not one.
+    private static final long MAX_IMAGE_BYTES = 10L * 1024 * 1024;
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
 
     public interface SyncCallback {
         void onSyncProgress(String message);
@@ -61,7 +83,13 @@ public class SyncManager {
     public SyncManager(Context context) {
         this.context = context;
         this.requestQueue = Volley.newRequestQueue(context);
-        this.dbHelper = new DatabaseHelper(context);
+        this.subCategoryClient = new SubCategoryFetchClient(requestQueue, API_BASE_URL);
+        this.dbHelper = DatabaseHelper.getInstance(context);
+        this.catalog = new CatalogRepository(context);
+        this.imageStore = new ImageStore(context);
+        this.httpClient = new OkHttpClient.Builder()
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
     }
 
     public void startSync(SyncCallback syncCallback) {
@@ -70,18 +98,35 @@ public class SyncManager {
             return;
         }
 
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-
-        // Start the sync chain.
-        syncMainCategories(db, syncCallback, () ->
-                syncSubCategories(db, syncCallback, () ->
-                        syncCustomers(db, syncCallback, () ->
-                                syncRoutes(db, syncCallback, () ->
-                                        fetchServerProductTimestamps(db, syncCallback)
-                                )
-                        )
-                )
-        );
+        productSyncSummary = null;
+        DatabaseWriter.execute(() -> {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            mainHandler.post(() -> runStages(db, syncCallback));
+        });
+    }
+
+    private void runStages(final SQLiteDatabase db, final SyncCallback syncCallback) {
+        // Only sub-categories need another stage first; the other branches run side by side.
+        new SyncStageScheduler()
+                .addStage(STAGE_MAIN_CATEGORIES, result -> syncMainCategories(db, syncCallback, result))
+                .addStage(STAGE_SUB_CATEGORIES, result -> syncSubCategories(db, syncCallback, result), STAGE_MAIN_CATEGORIES)
+                .addStage(STAGE_CUSTOMERS, result -> syncCustomers(db, syncCallback, result))
+                .addStage(STAGE_ROUTES, result -> syncRoutes(db, syncCallback, result))
+                .addStage(STAGE_PRODUCTS, result -> fetchServerProductTimestamps(db, syncCallback, result))
+                .start(failures -> {
+                    if (failures.isEmpty()) {
+                        finalizeSync(db, syncCallback, productSyncSummary != null ? productSyncSummary : "Sync Complete!");
+                        return;
+                    }
+                    // Stages that did commit may have dropped the snapshot.
+                    DatabaseWriter.execute(this::restoreCatalogSnapshot);
+                    StringBuilder error = new StringBuilder();
+                    for (Map.Entry<String, String> failure : failures.entrySet()) {
+                        if (error.length() > 0) error.append('\n');
+                        error.append(failure.getKey()).append(": ").append(failure.getValue());
+                    }
+                    syncCallback.onSyncFailed(error.toString());
+                });
     }
 
     private boolean isNetworkAvailable() {
@@ -91,186 +136,196 @@ public class SyncManager {
         return activeNetwork != null && activeNetwork.isConnected();
     }
 
-    private void syncMainCategories(final SQLiteDatabase db, final SyncCallback syncCallback, final DataSyncCallback onFinished) {
+    private void syncMainCategories(final SQLiteDatabase db, final SyncCallback syncCallback, final SyncStageScheduler.StageResult result) {
         syncCallback.onSyncProgress("Syncing Main Categories...");
         String url = API_BASE_URL + "get_main_categories.php";
         JsonArrayRequest request = new JsonArrayRequest(Request.Method.GET, url, null,
-                response -> {
-                    db.beginTransaction();
+                response -> DatabaseWriter.execute(() -> {
+                    BulkIngest ingest = dbHelper.beginBulkIngest(db, "main_categories");
                     try {
+                        catalog.dropSnapshot();
                         db.delete(DatabaseHelper.TABLE_MAIN_CATEGORIES, null, null);
+                        SQLiteStatement insert = ingest.prepareInsert(DatabaseHelper.TABLE_MAIN_CATEGORIES, true,
+                                DatabaseHelper.COLUMN_MC_ID, DatabaseHelper.COLUMN_MC_NAME);
                         for (int i = 0; i < response.length(); i++) {
                             JSONObject catObject = response.getJSONObject(i);
-                            ContentValues values = new ContentValues();
-                            values.put(DatabaseHelper.COLUMN_MC_ID, catObject.getInt("CategoryID"));
-                            values.put(DatabaseHelper.COLUMN_MC_NAME, catObject.getString("CategoryName"));
-                            db.insert(DatabaseHelper.TABLE_MAIN_CATEGORIES, null, values);
+                            insert.bindLong(1, catObject.getInt("CategoryID"));
+                            insert.bindString(2, catObject.getString("CategoryName"));
+                            ingest.insert(insert);
                         }
-                        db.setTransactionSuccessful();
+                        ingest.finish();
+                        CatalogCache.getInstance().invalidateCategories();
                     } catch (JSONException e) {
                         Log.e(TAG, "Error parsing main categories: " + e.getMessage());
-                        syncCallback.onSyncFailed("Error parsing main categories.");
+                        result.failed("Error parsing main categories.");
                         return;
                     } finally {
-                        db.endTransaction();
+                        ingest.close();
                     }
-                    onFinished.onSyncFinished();
-                },
+                    result.succeeded();
+                }),
                 error -> {
                     Log.e(TAG, "Volley error fetching main categories: " + error.getMessage());
-                    syncCallback.onSyncFailed("Could not fetch main categories.");
+                    result.failed("Could not fetch main categories.");
                 });
 
         request.setShouldCache(false);
         requestQueue.add(request);
     }
 
-    private void syncSubCategories(final SQLiteDatabase db, final SyncCallback syncCallback, final DataSyncCallback onFinished) {
+    private void syncSubCategories(final SQLiteDatabase db, final SyncCallback syncCallback, final SyncStageScheduler.StageResult result) {
         syncCallback.onSyncProgress("Syncing Sub-Categories...");
-        db.delete(DatabaseHelper.TABLE_SUB_CATEGORIES, null, null);
-
-        List<MainCategory> mainCategories = dbHelper.getAllMainCategories(db);
-        if (mainCategories.isEmpty()) {
-            onFinished.onSyncFinished();
-            return;
-        }
 
-        final AtomicInteger categoriesToProcess = new AtomicInteger(mainCategories.size());
-        for (MainCategory category : mainCategories) {
-            String url = API_BASE_URL + "get_sub_categories.php?category_id=" + category.getCategoryId();
-            JsonArrayRequest request = new JsonArrayRequest(Request.Method.GET, url, null,
-                    response -> {
-                        db.beginTransaction();
-                        try {
-                            for (int i = 0; i < response.length(); i++) {
-                                JSONObject subCatObject = response.getJSONObject(i);
-                                ContentValues values = new ContentValues();
-                                values.put(DatabaseHelper.COLUMN_SC_ID, subCatObject.getInt("SubCategoryID"));
-                                values.put(DatabaseHelper.COLUMN_SC_NAME, subCatObject.getString("SubCategoryName"));
-                                values.put(DatabaseHelper.COLUMN_SC_MAIN_CATEGORY_ID, category.getCategoryId());
-                                db.insert(DatabaseHelper.TABLE_SUB_CATEGORIES, null, values);
-                            }
-                            db.setTransactionSuccessful();
-                        } catch (JSONException e) {
-                            Log.e(TAG, "Error parsing sub-categories for main_cat_id: " + category.getCategoryId(), e);
-                        } finally {
-                            db.endTransaction();
-                        }
+        DatabaseWriter.execute(() -> {
+            List<Integer> mainCategoryIds = new ArrayList<>();
+            for (MainCategory category : dbHelper.getAllMainCategories(db)) {
+                mainCategoryIds.add(category.getCategoryId());
+            }
+            mainHandler.post(() -> fetchSubCategories(db, mainCategoryIds, result));
+        });
+    }
 
-                        if (categoriesToProcess.decrementAndGet() == 0) {
-                            onFinished.onSyncFinished();
-                        }
-                    },
-                    error -> {
-                        Log.e(TAG, "Volley error fetching sub-categories for main_cat_id: " + category.getCategoryId(), error);
-                        if (categoriesToProcess.decrementAndGet() == 0) {
-                            onFinished.onSyncFinished();
+    private void fetchSubCategories(final SQLiteDatabase db, List<Integer> mainCategoryIds, final SyncStageScheduler.StageResult result) {
+        subCategoryClient.fetch(mainCategoryIds, new SubCategoryFetchClient.Callback() {
+            @Override
+            public void onFetched(List<SubCategoryFetchClient.SubCategoryRow> rows) {
+                DatabaseWriter.execute(() -> {
+                    // Delete and re-insert in one transaction so readers never see an empty table.
+                    BulkIngest ingest = dbHelper.beginBulkIngest(db, "sub_categories");
+                    try {
+                        catalog.dropSnapshot();
+                        db.delete(DatabaseHelper.TABLE_SUB_CATEGORIES, null, null);
+                        SQLiteStatement insert = ingest.prepareInsert(DatabaseHelper.TABLE_SUB_CATEGORIES, true,
+                                DatabaseHelper.COLUMN_SC_ID, DatabaseHelper.COLUMN_SC_NAME, DatabaseHelper.COLUMN_SC_MAIN_CATEGORY_ID);
+                        for (SubCategoryFetchClient.SubCategoryRow row : rows) {
+                            insert.bindLong(1, row.subCategoryId);
+                            insert.bindString(2, row.name);
+                            insert.bindLong(3, row.mainCategoryId);
+                            ingest.insert(insert);
                         }
-                    });
+                        ingest.finish();
+                        CatalogCache.getInstance().invalidateCategories();
+                    } finally {
+                        ingest.close();
+                    }
+                    result.succeeded();
+                });
+            }
 
-            request.setShouldCache(false);
-            requestQueue.add(request);
-        }
+            @Override
+            public void onFailed(String error) {
+                // The previous sub-categories are left in place.
+                result.failed(error);
+            }
+        });
     }
 
-    private void syncCustomers(final SQLiteDatabase db, final SyncCallback syncCallback, final DataSyncCallback onFinished) {
+    private void syncCustomers(final SQLiteDatabase db, final SyncCallback syncCallback, final SyncStageScheduler.StageResult result) {
         syncCallback.onSyncProgress("Syncing Customers...");
         String url = API_BASE_URL + "get_customers.php";
 
         JsonArrayRequest request = new JsonArrayRequest(Request.Method.GET, url, null,
-                response -> {
-                    db.beginTransaction();
+                response -> DatabaseWriter.execute(() -> {
+                    // One transaction: the table is cleared first, so it must never be seen half-filled.
+                    BulkIngest ingest = dbHelper.beginBulkIngest(db, "customers");
                     try {
                         db.delete(DatabaseHelper.TABLE_CUSTOMERS, null, null);
+                        SQLiteStatement insert = ingest.prepareInsert(DatabaseHelper.TABLE_CUSTOMERS, true,
+                                DatabaseHelper.COLUMN_CUST_ID, DatabaseHelper.COLUMN_CUST_SHOP_NAME, DatabaseHelper.COLUMN_CUST_CONTACT_NUMBER,
+                                DatabaseHelper.COLUMN_CUST_ADDRESS, DatabaseHelper.COLUMN_CUST_ROUTE_ID, DatabaseHelper.COLUMN_CUST_USER_ID);
                         for (int i = 0; i < response.length(); i++) {
                             JSONObject custObject = response.getJSONObject(i);
-                            ContentValues values = new ContentValues();
-                            values.put(DatabaseHelper.COLUMN_CUST_ID, custObject.getInt("customer_id"));
-                            values.put(DatabaseHelper.COLUMN_CUST_SHOP_NAME, custObject.getString("shop_name"));
-                            values.put(DatabaseHelper.COLUMN_CUST_CONTACT_NUMBER, custObject.getString("contact_number"));
-                            values.put(DatabaseHelper.COLUMN_CUST_ADDRESS, custObject.getString("address"));
-                            values.put(DatabaseHelper.COLUMN_CUST_ROUTE_ID, custObject.optInt("route_id"));
-                            values.put(DatabaseHelper.COLUMN_CUST_USER_ID, custObject.optInt("user_id"));
-                            db.insert(DatabaseHelper.TABLE_CUSTOMERS, null, values);
+                            insert.bindLong(1, custObject.getInt("customer_id"));
+                            insert.bindString(2, custObject.getString("shop_name"));
+                            insert.bindString(3, custObject.getString("contact_number"));
+                            insert.bindString(4, custObject.getString("address"));
+                            insert.bindLong(5, custObject.optInt("route_id"));
+                            insert.bindLong(6, custObject.optInt("user_id"));
+                            ingest.insert(insert);
                         }
-                        db.setTransactionSuccessful();
+                        ingest.finish();
                     } catch (JSONException e) {
                         Log.e(TAG, "Error parsing customers: " + e.getMessage());
-                        syncCallback.onSyncFailed("Error parsing customer data.");
+                        result.failed("Error parsing customer data.");
                         return;
                     } finally {
-                        db.endTransaction();
+                        ingest.close();
                     }
-                    onFinished.onSyncFinished();
-                },
+                    result.succeeded();
+                }),
                 error -> {
                     Log.e(TAG, "Volley error fetching customers: " + error.getMessage());
-                    syncCallback.onSyncFailed("Could not fetch customer data.");
+                    result.failed("Could not fetch customer data.");
                 });
         request.setShouldCache(false);
         requestQueue.add(request);
     }
 
-    private void syncRoutes(final SQLiteDatabase db, final SyncCallback syncCallback, final DataSyncCallback onFinished) {
+    private void syncRoutes(final SQLiteDatabase db, final SyncCallback syncCallback, final SyncStageScheduler.StageResult result) {
         syncCallback.onSyncProgress("Syncing Routes...");
         String url = API_BASE_URL + "get_routes.php";
 
         JsonArrayRequest request = new JsonArrayRequest(Request.Method.GET, url, null,
-                response -> {
-                    db.beginTransaction();
+                response -> DatabaseWriter.execute(() -> {
+                    BulkIngest ingest = dbHelper.beginBulkIngest(db, "routes");
                     try {
                         db.delete(DatabaseHelper.TABLE_ROUTES, null, null);
+                        SQLiteStatement insert = ingest.prepareInsert(DatabaseHelper.TABLE_ROUTES, true,
+                                DatabaseHelper.COLUMN_ROUTE_ID, DatabaseHelper.COLUMN_ROUTE_NAME, DatabaseHelper.COLUMN_ROUTE_CODE);
                         for (int i = 0; i < response.length(); i++) {
                             JSONObject routeObject = response.getJSONObject(i);
-                            ContentValues values = new ContentValues();
-                            values.put(DatabaseHelper.COLUMN_ROUTE_ID, routeObject.getInt("route_id"));
-                            values.put(DatabaseHelper.COLUMN_ROUTE_NAME, routeObject.getString("route_name"));
-                            values.put(DatabaseHelper.COLUMN_ROUTE_CODE, routeObject.getString("route_code"));
-                            db.insert(DatabaseHelper.TABLE_ROUTES, null, values);
+                            insert.bindLong(1, routeObject.getInt("route_id"));
+                            insert.bindString(2, routeObject.getString("route_name"));
+                            insert.bindString(3, routeObject.getString("route_code"));
+                            ingest.insert(insert);
                         }
-                        db.setTransactionSuccessful();
+                        ingest.finish();
                     } catch (JSONException e) {
                         Log.e(TAG, "Error parsing routes: " + e.getMessage());
-                        syncCallback.onSyncFailed("Error parsing route data.");
+                        result.failed("Error parsing route data.");
                         return;
                     } finally {
-                        db.endTransaction();
+                        ingest.close();
                     }
-                    onFinished.onSyncFinished();
-                },
+                    result.succeeded();
+                }),
                 error -> {
                     Log.e(TAG, "Volley error fetching routes: " + error.getMessage());
-                    syncCallback.onSyncFailed("Could not fetch route data.");
+                    result.failed("Could not fetch route data.");
                 });
         request.setShouldCache(false);
         requestQueue.add(request);
     }
 
-    private void fetchServerProductTimestamps(final SQLiteDatabase db, final SyncCallback syncCallback) {
+    private void fetchServerProductTimestamps(final SQLiteDatabase db, final SyncCallback syncCallback, final SyncStageScheduler.StageResult result) {
         syncCallback.onSyncProgress("Checking for product updates...");
         String url = API_BASE_URL + "products-sync-check.php";
 
         JsonArrayRequest request = new JsonArrayRequest(Request.Method.GET, url, null,
-                response -> {
-                    Map<Integer, String> localTimestamps = fetchLocalProductTimestamps(db);
-                    Log.d(TAG, "Local Product Timestamps: " + localTimestamps.size() + " items");
+                response -> DatabaseWriter.execute(() -> {
+                    // A catalog staged by a sync that failed already holds the chunks it wrote, with
+                    // their server timestamps, so comparing against it fetches only what is left.
+                    boolean resuming = dbHelper.hasCatalogStaging(db);
+                    Map<Integer, String> localTimestamps = fetchLocalProductTimestamps(db,
+                            resuming ? DatabaseHelper.TABLE_PRODUCTS_NEXT : DatabaseHelper.TABLE_PRODUCTS);
+                    Log.d(TAG, "Local Product Timestamps: " + localTimestamps.size() + " items" + (resuming ? " (staged)" : ""));
                     Log.d(TAG, "Server Product Timestamps response: " + response.length() + " items");
-                    compareAndFetchDetails(response, localTimestamps, db, syncCallback);
-                },
+                    compareAndFetchDetails(response, localTimestamps, resuming, db, syncCallback, result);
+                }),
                 error -> {
                     Log.e(TAG, "Volley error fetching product timestamps: " + error.getMessage());
-                    syncCallback.onSyncFailed("Could not connect to the product server. Please check your internet connection.");
+                    result.failed("Could not connect to the product server. Please check your internet connection.");
                 });
 
         request.setShouldCache(false);
         requestQueue.add(request);
     }
 
-    private Map<Integer, String> fetchLocalProductTimestamps(SQLiteDatabase db) {
+    private Map<Integer, String> fetchLocalProductTimestamps(SQLiteDatabase db, String table) {
         Map<Integer, String> localTimestamps = new HashMap<>();
         Cursor cursor = null;
         try {
-            cursor = db.query(DatabaseHelper.TABLE_PRODUCTS, new String[]{DatabaseHelper.COLUMN_ID, DatabaseHelper.COLUMN_LAST_UPDATED}, null, null, null, null, null);
+            cursor = db.query(table, new String[]{DatabaseHelper.COLUMN_ID, DatabaseHelper.COLUMN_LAST_UPDATED}, null, null, null, null, null);
 
             if (cursor != null && cursor.moveToFirst()) {
                 int idIndex = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID);
@@ -291,7 +346,7 @@ public class SyncManager {
         return localTimestamps;
     }
 
-    private void compareAndFetchDetails(JSONArray serverList, Map<Integer, String> localList, final SQLiteDatabase db, final SyncCallback syncCallback) {
+    private void compareAndFetchDetails(JSONArray serverList, Map<Integer, String> localList, boolean resuming, final SQLiteDatabase db, final SyncCallback syncCallback, final SyncStageScheduler.StageResult result) {
         List<Integer> idsToFetch = new ArrayList<>();
         List<Integer> idsToDelete = new ArrayList<>();
         Set<Integer> serverIds = new HashSet<>();
@@ -306,7 +361,10 @@ public class SyncManager {
                 serverIds.add(itemId);
 
                 if ("Not Available".equalsIgnoreCase(availabilityStatus)) {
-                    idsToDelete.add(itemId);
+                    // Only a product we still hold is a change; the rest would stage for nothing.
+                    if (localList.containsKey(itemId)) {
+                        idsToDelete.add(itemId);
+                    }
                     continue;
                 }
 
@@ -317,7 +375,7 @@ public class SyncManager {
             }
         } catch (JSONException e) {
             Log.e(TAG, "Error processing server product data: " + e.getMessage());
-            syncCallback.onSyncFailed("Error processing server product data.");
+            result.failed("Error processing server product data.");
             return;
         }
 
@@ -327,151 +385,385 @@ public class SyncManager {
             }
         }
 
+        if (idsToFetch.isEmpty() && idsToDelete.isEmpty()) {
+            if (resuming) {
+                // The earlier sync wrote everything but did not get to publish it.
+                publishCatalog(db, "Sync Complete! Finished the previous product update.", result);
+            } else {
+                productSyncSummary = "Data is already up to date.";
+                result.succeeded();
+            }
+            return;
+        }
+
+        // From here on sync edits the shadow catalog; the live one only changes when it is published.
+        try {
+            dbHelper.beginCatalogStaging(db);
+        } catch (SQLException e) {
+            Log.e(TAG, "Error staging the product catalog: " + e.getMessage());
+            result.failed("Could not prepare the product catalog for update.");
+            return;
+        }
+
         if (!idsToDelete.isEmpty()) {
-            db.beginTransaction();
             try {
-                for (int id : new HashSet<>(idsToDelete)) {
-                    db.delete(DatabaseHelper.TABLE_PRODUCTS, DatabaseHelper.COLUMN_ID + "=?", new String[]{String.valueOf(id)});
-                    db.delete(DatabaseHelper.TABLE_VARIANTS, DatabaseHelper.COLUMN_VAR_ITEM_ID + "=?", new String[]{String.valueOf(id)});
-                    deleteImagesForProduct(db, id);
-                }
-                db.setTransactionSuccessful();
-            } catch (Exception e) {
+                dbHelper.deleteStagedProducts(db, new HashSet<>(idsToDelete));
+            } catch (SQLException e) {
                 Log.e(TAG, "Error deleting old products: " + e.getMessage());
-            } finally {
-                db.endTransaction();
             }
         }
 
         if (idsToFetch.isEmpty()) {
-            finalizeSync(db, syncCallback, "Data is already up to date.");
+            publishCatalog(db, "Data is already up to date.", result);
         } else {
             Log.d(TAG, "Fetching details for " + idsToFetch.size() + " products: " + idsToFetch.toString());
-            fetchProductDetails(idsToFetch, db, syncCallback);
+            fetchProductDetails(idsToFetch, db, syncCallback, result);
         }
     }
 
-    private void deleteImagesForProduct(final SQLiteDatabase db, int productId) {
-        File directory = new File(context.getFilesDir(), "images");
-        if (directory.exists()) {
-            File mainImage = new File(directory, "product_" + productId + ".jpg");
-            if (mainImage.exists()) {
-                mainImage.delete();
-            }
-
-            List<ProductVariant> variants = dbHelper.getVariantsForProduct(db, productId);
+    // Runs on DatabaseWriter once everything has been written to the staging tables.
+    private void publishCatalog(final SQLiteDatabase db, String summary, final SyncStageScheduler.StageResult result) {
+        try {
+            catalog.dropSnapshot();
+            dbHelper.publishCatalogStaging(db);
+            CatalogCache.getInstance().invalidateProducts();
+        } catch (SQLException e) {
+            // The staging is still whole; the next sync publishes it.
+            Log.e(TAG, "Error publishing the staged catalog: " + e.getMessage());
+            result.failed("Could not apply the product update. The product catalog was left unchanged.");
+            return;
+        }
+        // Releases the images of deleted products, and of products whose image URL changed,
+        // unless a product still in the catalog shows them too; files from before the image
+        // store included.
+        try {
+            imageStore.collectGarbage();
+        } catch (SQLException e) {
+            Log.w(TAG, "Could not release unused images: " + e.getMessage());
+        }
+        productSyncSummary = summary;
+        result.succeeded();
+    }
 
-            for (ProductVariant variant : variants) {
-                if (variant.getLocalPath() != null && !variant.getLocalPath().isEmpty()) {
-                    File variantImage = new File(variant.getLocalPath());
-                    if (variantImage.exists()) {
-                        variantImage.delete();
+    /**
+     * Fetches product details in chunks of DETAIL_CHUNK_SIZE IDs, with up to
+     * MAX_DETAIL_FETCHES_IN_FLIGHT downloads running while earlier chunks are written.
+     * Each chunk is committed to the staging tables as soon as it is parsed, which keeps memory
+     * and transactions small; the catalog is published only once every chunk has landed. After a
+     * failure the live catalog stays as it was and the chunks already written stay staged, so
+     * the next sync fetches only the products still missing from the staging.
+     */
+    private void fetchProductDetails(List<Integer> ids, final SQLiteDatabase db, final SyncCallback syncCallback, final SyncStageScheduler.StageResult result) {
+        final List<List<Integer>> chunks = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += DETAIL_CHUNK_SIZE) {
+            chunks.add(new ArrayList<>(ids.subList(start, Math.min(ids.size(), start + DETAIL_CHUNK_SIZE))));
+        }
+        final int totalProducts = ids.size();
+        final AtomicInteger nextChunk = new AtomicInteger(0);
+        final AtomicInteger savedProducts = new AtomicInteger(0);
+        final AtomicInteger activeFetchers = new AtomicInteger(Math.min(MAX_DETAIL_FETCHES_IN_FLIGHT, chunks.size()));
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        mainHandler.post(() -> syncCallback.onSyncProgress("Downloading product data (0/" + totalProducts + ")"));
+
+        for (int f = activeFetchers.get(); f > 0; f--) {
+            FETCH_EXECUTOR.execute(() -> {
+                boolean finished = false;
+                try {
+                    int index;
+                    while (failure.get() == null && (index = nextChunk.getAndIncrement()) < chunks.size()) {
+                        List<Integer> chunk = chunks.get(index);
+                        try {
+                            byte[] body = downloadDetailChunk(chunk);
+                            // Wait for the write so at most one downloaded chunk per fetcher is held in memory.
+                            int saved = DatabaseWriter.submit(() -> writeDetailChunk(body, db)).get();
+                            int done = savedProducts.addAndGet(saved);
+                            mainHandler.post(() -> syncCallback.onSyncProgress("Downloading product data (" + done + "/" + totalProducts + ")"));
+                        } catch (IOException e) {
+                            Log.e(TAG, "Network error fetching product details chunk " + index + ": " + e.getMessage());
+                            failure.compareAndSet(null, "Could not fetch product details. Please check your internet connection.");
+                        } catch (ExecutionException e) {
+                            // JSONException / IllegalStateException from the parser: the body was not the array we expect.
+                            Log.e(TAG, "Error parsing product details chunk " + index + ": " + e.getCause());
+                            failure.compareAndSet(null, "Error parsing product details from server.");
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            failure.compareAndSet(null, "Product sync was interrupted.");
+                        } catch (RuntimeException e) {
+                            Log.e(TAG, "Error fetching product details chunk " + index, e);
+                            failure.compareAndSet(null, "Error processing product details.");
+                        }
+                    }
+                    finished = true;
+                } finally {
+                    // However this fetcher ended, the last one out must settle the stage or sync never completes.
+                    if (!finished) {
+                        failure.compareAndSet(null, "Error processing product details.");
+                    }
+                    if (activeFetchers.decrementAndGet() == 0) {
+                        int saved = savedProducts.get();
+                        String error = failure.get();
+                        DatabaseWriter.execute(() -> {
+                            if (error != null) {
+                                result.failed(error + " The product catalog was left unchanged.");
+                            } else {
+                                publishCatalog(db, saved == 0
+                                        ? "Sync Complete! No new products to process."
+                                        : "Sync Complete! " + saved + " products updated.", result);
+                            }
+                        });
                     }
                 }
-            }
+            });
         }
     }
 
-    private void fetchProductDetails(List<Integer> ids, final SQLiteDatabase db, final SyncCallback syncCallback) {
-        syncCallback.onSyncProgress("Downloading product data (" + "1/" + ids.size() + ")");
-        String url = API_BASE_URL + "product-details.php";
+    private byte[] downloadDetailChunk(List<Integer> ids) throws IOException {
         JSONObject requestBody = new JSONObject();
         try {
             requestBody.put("ids", new JSONArray(ids));
         } catch (JSONException e) {
-            Log.e(TAG, "Error creating JSON request for product details: " + e.getMessage());
-            syncCallback.onSyncFailed("Error creating product detail request.");
-            return;
+            throw new IOException("Error creating JSON request for product details", e);
+        }
+        okhttp3.Request request = new okhttp3.Request.Builder()
+                .url(API_BASE_URL + "product-details.php")
+                .post(RequestBody.create(requestBody.toString(), JSON_MEDIA_TYPE))
+                .build();
+
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= DETAIL_CHUNK_ATTEMPTS; attempt++) {
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (response.isSuccessful() && response.body() != null) {
+                    return response.body().bytes();
+                }
+                lastError = new IOException("HTTP " + response.code());
+            } catch (IOException e) {
+                lastError = e;
+            }
+            Log.w(TAG, "Product details chunk attempt " + attempt + " failed: " + lastError.getMessage());
         }
+        throw lastError;
+    }
 
-        StringRequest stringRequest = new StringRequest(Request.Method.POST, url,
-                response -> {
-                    try {
-                        JSONArray jsonArrayResponse = new JSONArray(response);
-                        processProductDetails(jsonArrayResponse, db, syncCallback);
-                    } catch (JSONException e) {
-                        Log.e(TAG, "Error parsing product details JSON: " + e.getMessage() + ", Response: " + response);
-                        syncCallback.onSyncFailed("Error parsing product details from server.");
-                    }
-                },
-                error -> {
-                    Log.e(TAG, "Volley error fetching product details: " + error.getMessage());
-                    syncCallback.onSyncFailed("Could not fetch product details. Please check your internet connection.");
-                }) {
-            @Override
-            public byte[] getBody() { return requestBody.toString().getBytes(); }
-            @Override
-            public String getBodyContentType() { return "application/json; charset=utf-8"; }
-        };
-        requestQueue.add(stringRequest);
+    // Parses one chunk's product array one element at a time and commits it to staging as a single transaction.
+    private int writeDetailChunk(byte[] body, final SQLiteDatabase db) throws IOException, JSONException {
+        int saved = 0;
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+        BulkIngest ingest = dbHelper.beginBulkIngest(db, "products");
+        try {
+            ProductStatements statements = new ProductStatements(ingest);
+            reader.beginArray();
+            while (reader.hasNext()) {
+                saveProductAndVariantData(db, ingest, statements, readJsonObject(reader));
+                saved++;
+            }
+            reader.endArray();
+            ingest.finish();
+            Log.d(TAG, "Product chunk: " + statements.imagesKept + " images kept, " + statements.imagesReset + " to download");
+        } finally {
+            ingest.close();
+        }
+        return saved;
     }
 
-    // --- MODIFIED: This method NO LONGER downloads images ---
-    private void processProductDetails(JSONArray products, final SQLiteDatabase db, final SyncCallback syncCallback) {
-        final int totalProducts = products.length();
-        if (totalProducts == 0) {
-            finalizeSync(db, syncCallback, "Sync Complete! No new products to process.");
-            return;
+    // Builds a JSONObject for a single product so the existing opt*/get* coercions still apply.
+    private static JSONObject readJsonObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            object.put(reader.nextName(), readJsonValue(reader));
         }
-        syncCallback.onSyncProgress("Saving " + totalProducts + " product(s)...");
+        reader.endObject();
+        return object;
+    }
 
-        db.beginTransaction();
+    private static Object readJsonValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readJsonObject(reader);
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readJsonValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                // Strings and numbers; JSONObject converts numeric strings on getInt/getDouble.
+                return reader.nextString();
+        }
+    }
+
+    // Compiled once per chunk and rebound for every product. Writes go to the staging tables.
+    private static class ProductStatements {
+        final SQLiteStatement productInsert;
+        final SQLiteStatement variantDelete;
+        final SQLiteStatement variantInsert;
+        final SQLiteStatement searchDelete;
+        final SQLiteStatement searchInsert;
+        int imagesKept;
+        int imagesReset;
+
+        ProductStatements(BulkIngest ingest) {
+            productInsert = ingest.prepareInsert(DatabaseHelper.TABLE_PRODUCTS_NEXT, true,
+                    DatabaseHelper.COLUMN_ID, DatabaseHelper.COLUMN_PROD_SUB_CATEGORY_ID, DatabaseHelper.COLUMN_NAME,
+                    DatabaseHelper.COLUMN_PRICE, DatabaseHelper.COLUMN_DESCRIPTION, DatabaseHelper.COLUMN_IMAGE_URL,
+                    DatabaseHelper.COLUMN_LAST_UPDATED, DatabaseHelper.COLUMN_BRAND_NAME, DatabaseHelper.COLUMN_QTY_PER_BOX,
+                    DatabaseHelper.COLUMN_BULK_PRICE, DatabaseHelper.COLUMN_CARTOON_PCS, DatabaseHelper.COLUMN_BULK_DESCRIPTION,
+                    DatabaseHelper.COLUMN_SKU, DatabaseHelper.COLUMN_LOCAL_PATH, DatabaseHelper.COLUMN_THUMB_PATH,
+                    DatabaseHelper.COLUMN_DETAIL_PATH);
+            variantDelete = ingest.prepare("DELETE FROM " + DatabaseHelper.TABLE_VARIANTS_NEXT + " WHERE " + DatabaseHelper.COLUMN_VAR_ITEM_ID + " = ?");
+            variantInsert = ingest.prepareInsert(DatabaseHelper.TABLE_VARIANTS_NEXT, true,
+                    DatabaseHelper.COLUMN_VAR_ID, DatabaseHelper.COLUMN_VAR_ITEM_ID, DatabaseHelper.COLUMN_VAR_NAME,
+                    DatabaseHelper.COLUMN_VAR_SKU, DatabaseHelper.COLUMN_VAR_PRICE, DatabaseHelper.COLUMN_VAR_IMAGE_URL,
+                    DatabaseHelper.COLUMN_VAR_LOCAL_PATH, DatabaseHelper.COLUMN_VAR_THUMB_PATH,
+                    DatabaseHelper.COLUMN_VAR_DETAIL_PATH);
+            searchDelete = ingest.prepare("DELETE FROM " + DatabaseHelper.TABLE_PRODUCTS_FTS_NEXT + " WHERE docid = ?");
+            searchInsert = ingest.prepareInsert(DatabaseHelper.TABLE_PRODUCTS_FTS_NEXT, false,
+                    "docid", DatabaseHelper.COLUMN_NAME, DatabaseHelper.COLUMN_SKU, DatabaseHelper.COLUMN_BRAND_NAME,
+                    DatabaseHelper.COLUMN_DESCRIPTION, DatabaseHelper.COLUMN_FTS_VARIANT_TEXT);
+        }
+    }
+
+    // The image URL and downloaded paths of a product or variant as the staged catalog has them.
+    private static class StoredImage {
+        final String url;
+        final String localPath;
+        final String thumbPath;
+        final String detailPath;
+
+        StoredImage(String url, String localPath, String thumbPath, String detailPath) {
+            this.url = url;
+            this.localPath = localPath;
+            this.thumbPath = thumbPath;
+            this.detailPath = detailPath;
+        }
+    }
+
+    private static final String SQL_STAGED_IMAGES =
+            "SELECT 'product_' || " + DatabaseHelper.COLUMN_ID + ", " + DatabaseHelper.COLUMN_IMAGE_URL + ", " +
+                    DatabaseHelper.COLUMN_LOCAL_PATH + ", " + DatabaseHelper.COLUMN_THUMB_PATH + ", " + DatabaseHelper.COLUMN_DETAIL_PATH +
+                    " FROM " + DatabaseHelper.TABLE_PRODUCTS_NEXT + " WHERE " + DatabaseHelper.COLUMN_ID + " = ?" +
+                    " UNION ALL" +
+                    " SELECT 'variant_' || " + DatabaseHelper.COLUMN_VAR_ID + ", " + DatabaseHelper.COLUMN_VAR_IMAGE_URL + ", " +
+                    DatabaseHelper.COLUMN_VAR_LOCAL_PATH + ", " + DatabaseHelper.COLUMN_VAR_THUMB_PATH + ", " + DatabaseHelper.COLUMN_VAR_DETAIL_PATH +
+                    " FROM " + DatabaseHelper.TABLE_VARIANTS_NEXT + " WHERE " + DatabaseHelper.COLUMN_VAR_ITEM_ID + " = ?";
+
+    // Keyed "product_<id>" / "variant_<id>", read before the rows are replaced.
+    private static Map<String, StoredImage> loadStagedImages(SQLiteDatabase db, int itemId) {
+        Map<String, StoredImage> images = new HashMap<>();
+        String id = String.valueOf(itemId);
+        Cursor cursor = null;
         try {
-            for (int i = 0; i < products.length(); i++) {
-                JSONObject productJson = products.getJSONObject(i);
-                saveProductAndVariantData(db, productJson);
+            cursor = db.rawQuery(SQL_STAGED_IMAGES, new String[]{id, id});
+            while (cursor.moveToNext()) {
+                images.put(cursor.getString(0), new StoredImage(cursor.getString(1), cursor.getString(2),
+                        cursor.getString(3), cursor.getString(4)));
             }
-            db.setTransactionSuccessful();
-        } catch (JSONException e) {
-            Log.e(TAG, "Failed to save product/variant data to DB: " + e.getMessage());
-            syncCallback.onSyncFailed("Failed to process product details data (DB write error).");
-            return; // Exit on failure
         } finally {
-            db.endTransaction();
+            if (cursor != null) cursor.close();
         }
-
-        // Sync is now complete after saving data.
-        finalizeSync(db, syncCallback, "Sync Complete! " + totalProducts + " products updated.");
+        return images;
     }
 
+    // Binds the local, thumb and detail paths from firstIndex on: kept if the image URL is the one
+    // already downloaded, otherwise null so ImageDownloadWorker fetches the new image.
+    private static void bindImagePaths(ProductStatements statements, SQLiteStatement statement, int firstIndex, StoredImage stored, String url) {
+        if (stored != null && stored.localPath != null && !stored.localPath.isEmpty() && stored.url != null && stored.url.equals(url)) {
+            BulkIngest.bindString(statement, firstIndex, stored.localPath);
+            BulkIngest.bindString(statement, firstIndex + 1, stored.thumbPath);
+            BulkIngest.bindString(statement, firstIndex + 2, stored.detailPath);
+            statements.imagesKept++;
+        } else {
+            statement.bindNull(firstIndex);
+            statement.bindNull(firstIndex + 1);
+            statement.bindNull(firstIndex + 2);
+            statements.imagesReset++;
+        }
+    }
 
-    private void saveProductAndVariantData(SQLiteDatabase db, JSONObject productJson) throws JSONException {
-        ContentValues values = new ContentValues();
+    private void saveProductAndVariantData(SQLiteDatabase db, BulkIngest ingest, ProductStatements statements, JSONObject productJson) throws JSONException {
         int itemId = productJson.getInt("ItemID");
-        values.put(DatabaseHelper.COLUMN_ID, itemId);
-        values.put(DatabaseHelper.COLUMN_PROD_SUB_CATEGORY_ID, productJson.getInt("SubCategoryID"));
-        values.put(DatabaseHelper.COLUMN_NAME, productJson.getString("Name"));
-        values.put(DatabaseHelper.COLUMN_PRICE, productJson.optDouble("Price"));
-        values.put(DatabaseHelper.COLUMN_DESCRIPTION, productJson.optString("Description"));
-        values.put(DatabaseHelper.COLUMN_IMAGE_URL, productJson.optString("MainImage"));
-        values.put(DatabaseHelper.COLUMN_LAST_UPDATED, productJson.optString("LastUpdated"));
-        values.put(DatabaseHelper.COLUMN_BRAND_NAME, productJson.optString("BrandName"));
-        values.put(DatabaseHelper.COLUMN_QTY_PER_BOX, productJson.optInt("QtyPerBox"));
-        values.put(DatabaseHelper.COLUMN_BULK_PRICE, productJson.optDouble("BulkPrice"));
-        values.put(DatabaseHelper.COLUMN_CARTOON_PCS, productJson.optString("CartoonPcs"));
-        values.put(DatabaseHelper.COLUMN_BULK_DESCRIPTION, productJson.optString("Bulk_Description"));
-        values.put(DatabaseHelper.COLUMN_SKU, productJson.optString("SKU"));
-        // IMPORTANT: local_path is NOT set here. The ImageDownloadWorker will set it later.
-        values.putNull(DatabaseHelper.COLUMN_LOCAL_PATH);
-        db.insertWithOnConflict(DatabaseHelper.TABLE_PRODUCTS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        String name = productJson.getString("Name");
+        String description = productJson.optString("Description");
+        String brandName = productJson.optString("BrandName");
+        String sku = productJson.optString("SKU");
+        String mainImage = productJson.optString("MainImage");
+        // Metadata-only changes (price, stock text, ...) keep the images already on disk.
+        Map<String, StoredImage> stagedImages = loadStagedImages(db, itemId);
+
+        SQLiteStatement product = statements.productInsert;
+        product.bindLong(1, itemId);
+        product.bindLong(2, productJson.getInt("SubCategoryID"));
+        product.bindString(3, name);
+        product.bindDouble(4, productJson.optDouble("Price"));
+        product.bindString(5, description);
+        product.bindString(6, mainImage);
+        product.bindString(7, productJson.optString("LastUpdated"));
+        product.bindString(8, brandName);
+        product.bindLong(9, productJson.optInt("QtyPerBox"));
+        product.bindDouble(10, productJson.optDouble("BulkPrice"));
+        product.bindString(11, productJson.optString("CartoonPcs"));
+        product.bindString(12, productJson.optString("Bulk_Description"));
+        product.bindString(13, sku);
+        bindImagePaths(statements, product, 14, stagedImages.get("product_" + itemId), mainImage);
+        ingest.insert(product);
 
         JSONArray variants = productJson.optJSONArray("variants");
-        db.delete(DatabaseHelper.TABLE_VARIANTS, DatabaseHelper.COLUMN_VAR_ITEM_ID + "=?", new String[]{String.valueOf(itemId)});
+        statements.variantDelete.bindLong(1, itemId);
+        ingest.execute(statements.variantDelete);
+        StringBuilder variantSearchText = new StringBuilder();
         if (variants != null) {
+            SQLiteStatement variant = statements.variantInsert;
             for (int j = 0; j < variants.length(); j++) {
                 JSONObject variantJson = variants.getJSONObject(j);
-                ContentValues variantValues = new ContentValues();
-                variantValues.put(DatabaseHelper.COLUMN_VAR_ID, variantJson.getInt("VariantID"));
-                variantValues.put(DatabaseHelper.COLUMN_VAR_ITEM_ID, itemId);
-                variantValues.put(DatabaseHelper.COLUMN_VAR_NAME, variantJson.getString("VariantName"));
-                variantValues.put(DatabaseHelper.COLUMN_VAR_SKU, variantJson.optString("SKU"));
-                variantValues.put(DatabaseHelper.COLUMN_VAR_PRICE, variantJson.getDouble("Price"));
-                variantValues.put(DatabaseHelper.COLUMN_VAR_IMAGE_URL, variantJson.optString("ProductPhoto"));
-                // IMPORTANT: variant_local_path is NOT set here.
-                variantValues.putNull(DatabaseHelper.COLUMN_VAR_LOCAL_PATH);
-                db.insertWithOnConflict(DatabaseHelper.TABLE_VARIANTS, null, variantValues, SQLiteDatabase.CONFLICT_REPLACE);
+                String variantName = variantJson.getString("VariantName");
+                String variantSku = variantJson.optString("SKU");
+                int variantId = variantJson.getInt("VariantID");
+                String photo = variantJson.optString("ProductPhoto");
+                variant.bindLong(1, variantId);
+                variant.bindLong(2, itemId);
+                variant.bindString(3, variantName);
+                variant.bindString(4, variantSku);
+                variant.bindDouble(5, variantJson.getDouble("Price"));
+                variant.bindString(6, photo);
+                bindImagePaths(statements, variant, 7, stagedImages.get("variant_" + variantId), photo);
+                ingest.insert(variant);
+                appendSearchText(variantSearchText, variantJson, "VariantName");
+                appendSearchText(variantSearchText, variantJson, "SKU");
             }
         }
+
+        // Re-index in the same transaction as the product so search never drifts from the catalog.
+        statements.searchDelete.bindLong(1, itemId);
+        ingest.execute(statements.searchDelete);
+        SQLiteStatement search = statements.searchInsert;
+        search.bindLong(1, itemId);
+        search.bindString(2, name);
+        BulkIngest.bindString(search, 3, searchText(productJson, "SKU"));
+        BulkIngest.bindString(search, 4, searchText(productJson, "BrandName"));
+        BulkIngest.bindString(search, 5, searchText(productJson, "Description"));
+        search.bindString(6, variantSearchText.toString());
+        ingest.insert(search);
+    }
+
+    // A field's text for the search index, or null when the server sent null or nothing, so the
+    // index never holds the word "null".
+    private static String searchText(JSONObject json, String key) {
+        return json.isNull(key) ? null : json.optString(key);
+    }
+
+    private static void appendSearchText(StringBuilder text, JSONObject json, String key) {
+        String value = searchText(json, key);
+        if (value != null && !value.isEmpty()) {
+            text.append(value).append(' ');
+        }
     }
 
     // --- NEW: Centralized method to finish the sync process ---
@@ -479,69 +771,77 @@ public class SyncManager {
         SessionManager sessionManager = new SessionManager(context);
         sessionManager.updateLastSyncTimestamp();
         Log.d(TAG, "Data sync finished. Last sync timestamp has been updated.");
-        if (db.isOpen()) {
-            db.close();
-        }
-        syncCallback.onSyncComplete(message);
-    }
-
-
-    // --- This method is now only used by the ImageDownloadWorker ---
-    public interface ImageDownloadCallback {
-        void onDownloadComplete(String localPath);
+        // The database is shared with every screen, so it is left open; only the WAL is folded back.
+        DatabaseWriter.execute(() -> {
+            restoreCatalogSnapshot();
+            dbHelper.checkpointWal(db);
+            mainHandler.post(() -> syncCallback.onSyncComplete(message));
+        });
     }
 
-    public void saveImageToInternalStorage(String imageUrl, int id, String prefix, ImageDownloadCallback callback) {
-        saveImageToInternalStorageWithRetry(imageUrl, id, prefix, callback, 0);
+    // Runs on DatabaseWriter. Every catalog commit deletes the snapshot first, so a missing file
+    // means the catalog changed since it was written, or that there never was one.
+    private void restoreCatalogSnapshot() {
+        if (!CatalogSnapshot.file(context).exists()) {
+            catalog.writeSnapshot();
+        }
     }
 
-    private void saveImageToInternalStorageWithRetry(String imageUrl, int id, String prefix, ImageDownloadCallback callback, int currentRetryCount) {
-        final int MAX_IMAGE_DOWNLOAD_RETRIES = 3;
-        final long IMAGE_RETRY_DELAY_MS = 1000;
 
-        Log.d(TAG, "Attempting to download image (WITH RETRY) for " + prefix + id + " from URL: " + imageUrl + " (Retry: " + currentRetryCount + ")");
+    // --- Used by the ImageDownloadWorker's download threads ---
 
+    /**
+     * Streams one image from the server into out, byte for byte, and returns how many bytes it
+     * wrote; ImageStore hashes them on the way and files them. The image is only decoded for its
+     * renditions. Blocks for at most timeoutMs; throws if the URL is unusable, or the download
+     * fails, times out, is not an image or is larger than MAX_IMAGE_BYTES. Failures a retry cannot
+     * fix are thrown as UnavailableImageException.
+     */
+    long downloadImage(String imageUrl, OutputStream out, long timeoutMs) throws IOException {
         if (imageUrl == null || imageUrl.isEmpty() || imageUrl.equals("null") || imageUrl.equals("Invalid URL")) {
-            Log.d(TAG, "Skipping image download for ID " + id + " due to empty/null/invalid URL.");
-            callback.onDownloadComplete("");
-            return;
+            throw new ImageDownloadPipeline.UnavailableImageException("No usable image URL: " + imageUrl);
         }
 
-        Glide.with(context).asBitmap().load(imageUrl).into(new CustomTarget<Bitmap>() {
-            @Override
-            public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
-                File directory = new File(context.getFilesDir(), "images");
-                if (!directory.exists()) {
-                    directory.mkdirs();
-                }
-                File file = new File(directory, prefix + id + ".jpg");
-                try (FileOutputStream out = new FileOutputStream(file)) {
-                    resource.compress(Bitmap.CompressFormat.JPEG, 90, out);
-                    Log.d(TAG, "Image saved successfully for ID: " + id + " at " + file.getAbsolutePath());
-                    callback.onDownloadComplete(file.getAbsolutePath());
-                } catch (IOException e) {
-                    Log.e(TAG, "Failed to save image file for ID: " + id + ", Error: " + e.getMessage());
-                    callback.onDownloadComplete("");
-                }
+        okhttp3.Call call = httpClient.newCall(new okhttp3.Request.Builder().url(imageUrl).build());
+        call.timeout().timeout(timeoutMs, TimeUnit.MILLISECONDS);
+        try (Response response = call.execute()) {
+            ResponseBody body = response.body();
+            if (isPermanentHttpFailure(response.code())) {
+                throw new ImageDownloadPipeline.UnavailableImageException("HTTP " + response.code() + " for " + imageUrl);
             }
-
-            @Override
-            public void onLoadCleared(@Nullable Drawable placeholder) {
-                callback.onDownloadComplete("");
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("HTTP " + response.code() + " for " + imageUrl);
+            }
+            MediaType type = body.contentType();
+            if (type == null || !"image".equals(type.type())) {
+                throw new ImageDownloadPipeline.UnavailableImageException("Not an image (" + type + ") at " + imageUrl);
+            }
+            if (body.contentLength() > MAX_IMAGE_BYTES) {
+                throw new ImageDownloadPipeline.UnavailableImageException("Image of " + body.contentLength() + " bytes at " + imageUrl);
             }
 
-            @Override
-            public void onLoadFailed(@Nullable Drawable errorDrawable) {
-                Log.e(TAG, "Glide failed to download image (WITH RETRY) for ID: " + id + " from URL: " + imageUrl + ". Error: " + errorDrawable);
-                if (currentRetryCount < MAX_IMAGE_DOWNLOAD_RETRIES) {
-                    new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                        saveImageToInternalStorageWithRetry(imageUrl, id, prefix, callback, currentRetryCount + 1);
-                    }, IMAGE_RETRY_DELAY_MS);
-                } else {
-                    Log.e(TAG, "Max retries reached for image ID: " + id + ". Giving up on download.");
-                    callback.onDownloadComplete("");
+            long written = 0;
+            byte[] buffer = new byte[16 * 1024];
+            try (InputStream in = body.byteStream()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    written += read;
+                    if (written > MAX_IMAGE_BYTES) {
+                        throw new ImageDownloadPipeline.UnavailableImageException("Image over " + MAX_IMAGE_BYTES + " bytes at " + imageUrl);
+                    }
+                    out.write(buffer, 0, read);
                 }
             }
-        });
+            if (written == 0 || (body.contentLength() >= 0 && written != body.contentLength())) {
+                throw new IOException("Got " + written + " of " + body.contentLength() + " bytes from " + imageUrl);
+            }
+            Log.d(TAG, "Downloaded " + written + " bytes from " + imageUrl);
+            return written;
+        }
+    }
+
+    // A 4xx other than a timeout or rate limit will be the same on the next attempt.
+    private static boolean isPermanentHttpFailure(int code) {
+        return code >= 400 && code < 500 && code != 408 && code != 429;
     }
 }
@@ -0,0 +1,167 @@
+package com.example.falconrepresentator;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the sync stages as a small dependency graph: a stage starts as soon as every stage it
+ * depends on has succeeded, so independent stages overlap and the whole sync takes about as
+ * long as its slowest branch. A failed stage skips everything downstream of it, but unrelated
+ * branches still run to completion.
+ *
+ * Stages report back through their StageResult from any thread; all bookkeeping happens on the
+ * main thread.
+ */
+public class SyncStageScheduler {
+
+    private static final String TAG = "SyncStageScheduler";
+
+    public interface StageTask {
+        void run(StageResult result);
+    }
+
+    public interface StageResult {
+        void succeeded();
+        void failed(String error);
+    }
+
+    public interface Listener {
+        /** failures maps stage name to its error, in declaration order; empty when every stage succeeded. */
+        void onAllStagesFinished(Map<String, String> failures);
+    }
+
+    private enum State { WAITING, RUNNING, SUCCEEDED, FAILED }
+
+    private static class Stage {
+        final String name;
+        final StageTask task;
+        final List<String> dependsOn;
+        State state = State.WAITING;
+        String error;
+        long startedAt;
+
+        Stage(String name, StageTask task, List<String> dependsOn) {
+            this.name = name;
+            this.task = task;
+            this.dependsOn = dependsOn;
+        }
+    }
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Listener listener;
+    private long startedAt;
+    private boolean started = false;
+
+    public SyncStageScheduler addStage(String name, StageTask task, String... dependsOn) {
+        for (String dependency : dependsOn) {
+            if (!stages.containsKey(dependency)) {
+                throw new IllegalArgumentException("Stage '" + name + "' depends on unknown stage '" + dependency + "'");
+            }
+        }
+        stages.put(name, new Stage(name, task, Arrays.asList(dependsOn)));
+        return this;
+    }
+
+    /** Starts every stage whose dependencies are met. Call on the main thread. */
+    public void start(Listener listener) {
+        if (started) {
+            throw new IllegalStateException("Scheduler already started");
+        }
+        started = true;
+        this.listener = listener;
+        this.startedAt = SystemClock.elapsedRealtime();
+        advance();
+    }
+
+    private void advance() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Stage stage : stages.values()) {
+                if (stage.state != State.WAITING) continue;
+
+                String failedDependency = null;
+                boolean ready = true;
+                for (String dependency : stage.dependsOn) {
+                    State dependencyState = stages.get(dependency).state;
+                    if (dependencyState == State.FAILED) {
+                        failedDependency = dependency;
+                        break;
+                    }
+                    if (dependencyState != State.SUCCEEDED) {
+                        ready = false;
+                    }
+                }
+
+                if (failedDependency != null) {
+                    stage.state = State.FAILED;
+                    stage.error = "Skipped because " + failedDependency + " failed.";
+                    changed = true;
+                } else if (ready) {
+                    launch(stage);
+                }
+            }
+        }
+
+        for (Stage stage : stages.values()) {
+            if (stage.state == State.WAITING || stage.state == State.RUNNING) {
+                return;
+            }
+        }
+        finish();
+    }
+
+    private void launch(Stage stage) {
+        stage.state = State.RUNNING;
+        stage.startedAt = SystemClock.elapsedRealtime();
+        Log.d(TAG, "Starting stage: " + stage.name);
+        stage.task.run(new StageResult() {
+            private boolean reported = false;
+
+            @Override
+            public void succeeded() {
+                report(null);
+            }
+
+            @Override
+            public void failed(String error) {
+                report(error != null ? error : "Unknown error.");
+            }
+
+            private void report(String error) {
+                handler.post(() -> {
+                    if (reported) return;
+                    reported = true;
+                    stage.state = error == null ? State.SUCCEEDED : State.FAILED;
+                    stage.error = error;
+                    Log.d(TAG, "Stage " + stage.name + (error == null ? " succeeded" : " failed: " + error) +
+                            " in " + (SystemClock.elapsedRealtime() - stage.startedAt) + " ms");
+                    advance();
+                });
+            }
+        });
+    }
+
+    private void finish() {
+        Map<String, String> failures = new LinkedHashMap<>();
+        for (Stage stage : stages.values()) {
+            if (stage.state == State.FAILED) {
+                failures.put(stage.name, stage.error);
+            }
+        }
+        Log.d(TAG, "All stages finished in " + (SystemClock.elapsedRealtime() - startedAt) + " ms, " + failures.size() + " failed.");
+        Listener done = listener;
+        listener = null;
+        if (done != null) {
+            done.onAllStagesFinished(failures);
+        }
+    }
+}
@@ -20,7 +20,7 @@ public class TodaysBillsActivity extends AppCompatActivity {
 
     private RecyclerView rvTodaysBills;
     private TodaysBillsAdapter adapter;
-    private DatabaseHelper dbHelper;
+    private OrderRepository orders;
     private ProgressBar progressBar;
     private TextView tvNoBills;
 
@@ -36,7 +36,7 @@ public class TodaysBillsActivity extends AppCompatActivity {
             getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         }
 
-        dbHelper = new DatabaseHelper(this);
+        orders = new OrderRepository(this);
         rvTodaysBills = findViewById(R.id.rvTodaysBills);
         progressBar = findViewById(R.id.progressBarTodaysBills);
         tvNoBills = findViewById(R.id.tvNoBills);
@@ -53,7 +53,7 @@ public class TodaysBillsActivity extends AppCompatActivity {
         android.os.Handler handler = new android.os.Handler(Looper.getMainLooper());
 
         executor.execute(() -> {
-            List<OrderManager.OrderDetails> bills = dbHelper.getTodaysPendingOrders();
+            List<OrderManager.OrderDetails> bills = orders.getTodaysPendingOrders();
             handler.post(() -> {
                 progressBar.setVisibility(View.GONE);
                 if (bills.isEmpty()) {
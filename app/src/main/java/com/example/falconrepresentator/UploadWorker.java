@@ -64,16 +64,20 @@ public class UploadWorker extends Worker {
         Log.d(TAG, "UploadWorker started.");
 
         SessionManager sessionManager = new SessionManager(context);
-        DatabaseHelper dbHelper = new DatabaseHelper(context);
+        OutboxRepository outbox = new OutboxRepository(context);
 
-        List<DatabaseHelper.PendingOrder> pendingOrders = dbHelper.getPendingOrdersForUpload();
+        List<DatabaseHelper.PendingOrder> pendingOrders = outbox.getPendingOrders();
         if (pendingOrders.isEmpty()) {
             Log.d(TAG, "No pending orders to upload. Worker finishing.");
             sessionManager.clearDailyRouteData();
             return Result.success();
         }
 
-        double totalSales = dbHelper.getTotalSalesForPendingOrders();
+        // Summed from the snapshot so the summary always matches the bills being uploaded.
+        double totalSales = 0;
+        for (DatabaseHelper.PendingOrder order : pendingOrders) {
+            totalSales += order.totalAmount;
+        }
         int repId = sessionManager.getRepId();
         String currentDate = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
 
@@ -152,7 +156,7 @@ public class UploadWorker extends Worker {
                     }
 
                     if (!syncedOrderIds.isEmpty()) {
-                        dbHelper.deleteSyncedOrdersByIds(syncedOrderIds);
+                        outbox.removeUploadedOrders(syncedOrderIds);
                     }
                 }
 
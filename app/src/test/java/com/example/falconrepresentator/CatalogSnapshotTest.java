@@ -0,0 +1,191 @@
+package com.example.falconrepresentator;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.falconrepresentator.Models.CatalogView;
+import com.example.falconrepresentator.Models.Product;
+import com.example.falconrepresentator.Models.ProductVariant;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes a snapshot of a small catalog and checks it pages, counts and looks products up
+ * exactly like the SQLite queries it stands in for.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class CatalogSnapshotTest {
+
+    private static final int PRODUCTS = 300;
+    private static final int PAGE_SIZE = 7;
+
+    private DatabaseHelper dbHelper;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        DatabaseHelper.mainThreadWriteCheckEnabled = false;
+        dbHelper = new DatabaseHelper(RuntimeEnvironment.getApplication());
+        insertCatalog(dbHelper.getWritableDatabase());
+        file = CatalogSnapshot.file(RuntimeEnvironment.getApplication());
+        CatalogSnapshot.write(dbHelper.getReadableDatabase(), file);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        file.delete();
+    }
+
+    @Test
+    public void pagesAndCounts_matchSqlite() throws IOException {
+        CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+        assertEquals(PRODUCTS, snapshot.productCount());
+
+        int[][] filters = {{0, 0}, {1, 0}, {2, 0}, {0, 3}, {1, 3}, {0, 99}};
+        for (int[] filter : filters) {
+            assertEquals(dbHelper.countProducts(filter[0], filter[1]), snapshot.countProducts(filter[0], filter[1]));
+
+            String anchorName = null;
+            int anchorItemId = 0;
+            int paged = 0;
+            while (true) {
+                List<Product> expected = dbHelper.getProductsPage(filter[0], filter[1], anchorName, anchorItemId, PAGE_SIZE);
+                List<Product> actual = rows(snapshot.getProductsPage(filter[0], filter[1], anchorName, anchorItemId, PAGE_SIZE));
+                assertSameProducts(expected, actual);
+                paged += expected.size();
+                if (expected.size() < PAGE_SIZE) {
+                    break;
+                }
+                Product last = expected.get(expected.size() - 1);
+                anchorName = last.getName();
+                anchorItemId = last.getItemId();
+            }
+            // Pages that end on a product without a name must not skip the rest of those.
+            assertEquals(dbHelper.countProducts(filter[0], filter[1]), paged);
+        }
+    }
+
+    @Test
+    public void getProducts_matchesListQueryAndSkipsUnknownIds() throws IOException {
+        CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+        List<Integer> ids = Arrays.asList(250, 3, 100000, 42, 1);
+        assertSameProducts(dbHelper.getListProducts(ids), rows(snapshot.getProducts(ids)));
+    }
+
+    @Test
+    public void open_rejectsTruncatedFile() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        try {
+            CatalogSnapshot.open(file);
+            fail("A truncated snapshot was opened");
+        } catch (IOException expected) {
+            // The repository falls back to SQLite.
+        }
+    }
+
+    private static List<Product> rows(CatalogView view) {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < view.size(); i++) {
+            products.add(view.getProduct(i));
+        }
+        return products;
+    }
+
+    private static void assertSameProducts(List<Product> expected, List<Product> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Product e = expected.get(i);
+            Product a = actual.get(i);
+            assertEquals(e.getItemId(), a.getItemId());
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getPrice(), a.getPrice(), 0);
+            assertEquals(e.getSku(), a.getSku());
+            assertEquals(e.getMainImage(), a.getMainImage());
+            assertEquals(e.getLocalPath(), a.getLocalPath());
+            assertEquals(e.getThumbPath(), a.getThumbPath());
+            assertEquals(e.getVariants().size(), a.getVariants().size());
+            for (int v = 0; v < e.getVariants().size(); v++) {
+                ProductVariant ev = e.getVariants().get(v);
+                ProductVariant av = a.getVariants().get(v);
+                assertEquals(ev.getVariantId(), av.getVariantId());
+                assertEquals(ev.getVariantName(), av.getVariantName());
+                assertEquals(ev.getPrice(), av.getPrice(), 0);
+            }
+        }
+    }
+
+    // Duplicate, accented and missing names exercise the (name, item_id) ordering.
+    private void insertCatalog(SQLiteDatabase db) {
+        BulkIngest ingest = dbHelper.beginBulkIngest(db, "snapshot_test");
+        try {
+            SQLiteStatement sub = ingest.prepareInsert(DatabaseHelper.TABLE_SUB_CATEGORIES, true,
+                    DatabaseHelper.COLUMN_SC_ID, DatabaseHelper.COLUMN_SC_NAME, DatabaseHelper.COLUMN_SC_MAIN_CATEGORY_ID);
+            for (int sc = 1; sc <= 4; sc++) {
+                sub.bindLong(1, sc);
+                sub.bindString(2, "Sub " + sc);
+                sub.bindLong(3, sc <= 2 ? 1 : 2);
+                ingest.insert(sub);
+            }
+            SQLiteStatement product = ingest.prepareInsert(DatabaseHelper.TABLE_PRODUCTS, true,
+                    DatabaseHelper.COLUMN_ID, DatabaseHelper.COLUMN_PROD_SUB_CATEGORY_ID, DatabaseHelper.COLUMN_NAME,
+                    DatabaseHelper.COLUMN_PRICE, DatabaseHelper.COLUMN_SKU, DatabaseHelper.COLUMN_IMAGE_URL,
+                    DatabaseHelper.COLUMN_LOCAL_PATH, DatabaseHelper.COLUMN_THUMB_PATH);
+            SQLiteStatement variant = ingest.prepareInsert(DatabaseHelper.TABLE_VARIANTS, true,
+                    DatabaseHelper.COLUMN_VAR_ID, DatabaseHelper.COLUMN_VAR_ITEM_ID,
+                    DatabaseHelper.COLUMN_VAR_NAME, DatabaseHelper.COLUMN_VAR_PRICE);
+            String[] names = {"Pen", "Pencil", "\u00c9cran", "pen", "Ruler"};
+            for (int itemId = 1; itemId <= PRODUCTS; itemId++) {
+                product.bindLong(1, itemId);
+                product.bindLong(2, itemId % 5); // sub-category 0 has no row, so no main category
+                if (itemId % 37 == 0) {
+                    product.bindNull(3);
+                } else {
+                    product.bindString(3, names[itemId % names.length] + " " + (itemId % 11));
+                }
+                product.bindDouble(4, itemId * 0.5);
+                product.bindString(5, "SKU-" + itemId);
+                product.bindString(6, "https://example.com/" + itemId + ".jpg");
+                if (itemId % 2 == 0) {
+                    product.bindString(7, "/images/product_" + itemId + ".jpg");
+                    product.bindString(8, "/images/product_" + itemId + "_thumb.jpg");
+                } else {
+                    product.bindNull(7);
+                    product.bindNull(8);
+                }
+                ingest.insert(product);
+                for (int v = 0; v < itemId % 3; v++) {
+                    variant.bindLong(1, itemId * 10 + v);
+                    variant.bindLong(2, itemId);
+                    variant.bindString(3, "Colour " + v);
+                    variant.bindDouble(4, itemId + v);
+                    ingest.insert(variant);
+                }
+            }
+            ingest.finish();
+        } finally {
+            ingest.close();
+        }
+    }
+}
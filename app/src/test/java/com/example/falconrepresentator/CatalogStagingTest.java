@@ -0,0 +1,171 @@
+package com.example.falconrepresentator;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stages and publishes a 20k-product catalog the way product sync does. Checks the staging
+ * copies are indexed before publish, so publishing only drops and renames tables, and that a
+ * staging outlives the sync that started it until it is published and keeps images attached
+ * meanwhile.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class CatalogStagingTest {
+
+    private static final int PRODUCTS = 20_000;
+    private static final int VARIANTS_PER_PRODUCT = 2;
+
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.mainThreadWriteCheckEnabled = false;
+        dbHelper = new DatabaseHelper(RuntimeEnvironment.getApplication());
+        insertCatalog(dbHelper.getWritableDatabase());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void staging_isIndexedBeforePublish() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        // Twice, so the second staging has to take the names the first one left on the live tables.
+        for (int sync = 0; sync < 2; sync++) {
+            dbHelper.beginCatalogStaging(db);
+            assertEquals(2, countIndexes(db, DatabaseHelper.TABLE_PRODUCTS_NEXT));
+            assertEquals(1, countIndexes(db, DatabaseHelper.TABLE_VARIANTS_NEXT));
+
+            dbHelper.publishCatalogStaging(db);
+            assertEquals(2, countIndexes(db, DatabaseHelper.TABLE_PRODUCTS));
+            assertEquals(1, countIndexes(db, DatabaseHelper.TABLE_VARIANTS));
+        }
+        assertEquals(PRODUCTS, dbHelper.countProducts(0, 0));
+    }
+
+    @Test
+    public void staging_isKeptForTheNextSyncUntilPublished() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        dbHelper.beginCatalogStaging(db);
+        // What a chunk written before the sync failed leaves behind.
+        db.execSQL("UPDATE " + DatabaseHelper.TABLE_PRODUCTS_NEXT + " SET " + DatabaseHelper.COLUMN_LAST_UPDATED +
+                " = '2024-02-01 00:00:00' WHERE " + DatabaseHelper.COLUMN_ID + " = 1");
+
+        dbHelper.beginCatalogStaging(db);
+        assertTrue(dbHelper.hasCatalogStaging(db));
+        assertEquals("2024-02-01 00:00:00", lastUpdated(db, DatabaseHelper.TABLE_PRODUCTS_NEXT, 1));
+        assertEquals("2024-01-01 00:00:00", lastUpdated(db, DatabaseHelper.TABLE_PRODUCTS, 1));
+
+        dbHelper.publishCatalogStaging(db);
+        assertFalse(dbHelper.hasCatalogStaging(db));
+        assertEquals("2024-02-01 00:00:00", lastUpdated(db, DatabaseHelper.TABLE_PRODUCTS, 1));
+    }
+
+    @Test
+    public void imageAttachedWhileStaged_survivesPublish() throws Exception {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        dbHelper.beginCatalogStaging(db);
+        // Sync has given product 2 a new image in the staging; the old one must not land on it.
+        db.execSQL("UPDATE " + DatabaseHelper.TABLE_PRODUCTS_NEXT + " SET " + DatabaseHelper.COLUMN_IMAGE_URL +
+                " = 'https://example.com/images/2-new.jpg' WHERE " + DatabaseHelper.COLUMN_ID + " = 2");
+
+        File file = File.createTempFile("blob", ".jpg");
+        file.deleteOnExit();
+        ImageStore.Blob blob = new ImageStore.Blob("hash", file.getPath(), file.getPath() + ".thumb", null);
+        assertTrue(dbHelper.attachImageBlob("https://example.com/images/1.jpg", blob, Collections.singletonList(
+                new DatabaseHelper.MissingImage("product_", 1, "https://example.com/images/1.jpg", null, 0, 0))));
+        assertTrue(dbHelper.attachImageBlob("https://example.com/images/2.jpg", blob, Collections.singletonList(
+                new DatabaseHelper.MissingImage("product_", 2, "https://example.com/images/2.jpg", null, 0, 0))));
+
+        dbHelper.publishCatalogStaging(db);
+        assertEquals(file.getPath(), localPath(db, 1));
+        assertNull(localPath(db, 2));
+    }
+
+    private static String lastUpdated(SQLiteDatabase db, String table, int itemId) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_LAST_UPDATED + " FROM " + table +
+                    " WHERE " + DatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(itemId)});
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static String localPath(SQLiteDatabase db, int itemId) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_LOCAL_PATH + " FROM " + DatabaseHelper.TABLE_PRODUCTS +
+                    " WHERE " + DatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(itemId)});
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static int countIndexes(SQLiteDatabase db, String table) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND tbl_name = ? AND name LIKE 'idx_%'",
+                    new String[]{table});
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private void insertCatalog(SQLiteDatabase db) {
+        BulkIngest ingest = dbHelper.beginBulkIngest(db, "staging_test");
+        try {
+            SQLiteStatement product = ingest.prepareInsert(DatabaseHelper.TABLE_PRODUCTS, true,
+                    DatabaseHelper.COLUMN_ID, DatabaseHelper.COLUMN_PROD_SUB_CATEGORY_ID,
+                    DatabaseHelper.COLUMN_NAME, DatabaseHelper.COLUMN_PRICE, DatabaseHelper.COLUMN_IMAGE_URL,
+                    DatabaseHelper.COLUMN_LAST_UPDATED);
+            SQLiteStatement variant = ingest.prepareInsert(DatabaseHelper.TABLE_VARIANTS, true,
+                    DatabaseHelper.COLUMN_VAR_ID, DatabaseHelper.COLUMN_VAR_ITEM_ID,
+                    DatabaseHelper.COLUMN_VAR_NAME, DatabaseHelper.COLUMN_VAR_PRICE);
+            for (int itemId = 1; itemId <= PRODUCTS; itemId++) {
+                product.bindLong(1, itemId);
+                product.bindLong(2, itemId % 40);
+                product.bindString(3, "Product " + itemId);
+                product.bindDouble(4, itemId * 1.5);
+                product.bindString(5, "https://example.com/images/" + itemId + ".jpg");
+                product.bindString(6, "2024-01-01 00:00:00");
+                ingest.insert(product);
+                for (int v = 0; v < VARIANTS_PER_PRODUCT; v++) {
+                    variant.bindLong(1, itemId * VARIANTS_PER_PRODUCT + v);
+                    variant.bindLong(2, itemId);
+                    variant.bindString(3, "Variant " + v);
+                    variant.bindDouble(4, itemId + v);
+                    ingest.insert(variant);
+                }
+            }
+            ingest.finish();
+        } finally {
+            ingest.close();
+        }
+    }
+}
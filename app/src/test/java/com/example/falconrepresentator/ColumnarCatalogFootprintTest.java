@@ -0,0 +1,92 @@
+package com.example.falconrepresentator;
+
+import com.example.falconrepresentator.Models.ColumnarCatalog;
+import com.example.falconrepresentator.Models.Product;
+import com.example.falconrepresentator.Models.ProductVariant;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Holds a 50k-product catalog (two variants per product) as a list of Products and as a
+ * ColumnarCatalog. Every row gets freshly built strings, as rows read from a cursor do, and the
+ * columnar form must keep one copy of each repeated variant name where the Products keep one
+ * per row.
+ */
+public class ColumnarCatalogFootprintTest {
+
+    private static final int PRODUCTS = 50_000;
+    private static final String[] COLOURS = {"Red", "Blue", "Green", "Black"};
+
+    @Test
+    public void columnarCatalog_keepsOneCopyOfRepeatedVariantNames() {
+        List<Product> graph = buildGraph();
+        ColumnarCatalog columnar = buildColumnar();
+
+        assertEquals(graph.size(), columnar.size());
+        Product first = columnar.getProduct(0);
+        assertEquals(graph.get(0).getName(), first.getName());
+        assertEquals(graph.get(0).getVariants().size(), first.getVariants().size());
+
+        Set<String> graphNames = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Product product : graph) {
+            for (ProductVariant variant : product.getVariants()) {
+                graphNames.add(variant.getVariantName());
+            }
+        }
+        Set<String> columnarNames = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < columnar.size(); i++) {
+            for (int v = 0; v < columnar.getVariantCount(i); v++) {
+                columnarNames.add(columnar.getVariantName(i, v));
+            }
+        }
+        assertEquals(2 * PRODUCTS, graphNames.size());
+        assertEquals(COLOURS.length, columnarNames.size());
+    }
+
+    private static List<Product> buildGraph() {
+        List<Product> products = new ArrayList<>(PRODUCTS);
+        for (int i = 1; i <= PRODUCTS; i++) {
+            Product product = new Product(i, name(i), i * 0.5, null, imageUrl(i), null, null, 0, 0, null, null, sku(i));
+            for (int v = 0; v < 2; v++) {
+                product.addVariant(new ProductVariant(i * 10 + v, i, colour(i + v), sku(i) + "-" + v, i + v, null));
+            }
+            products.add(product);
+        }
+        return products;
+    }
+
+    private static ColumnarCatalog buildColumnar() {
+        ColumnarCatalog.Builder builder = new ColumnarCatalog.Builder();
+        for (int i = 1; i <= PRODUCTS; i++) {
+            builder.addProduct(i, name(i), i * 0.5, sku(i), imageUrl(i), null, null);
+            for (int v = 0; v < 2; v++) {
+                builder.addVariant(i * 10 + v, colour(i + v), sku(i) + "-" + v, i + v, null);
+            }
+        }
+        return builder.build();
+    }
+
+    private static String name(int i) {
+        return "Product " + i;
+    }
+
+    private static String sku(int i) {
+        return "SKU-" + i;
+    }
+
+    private static String imageUrl(int i) {
+        return "https://example.com/images/" + i + ".jpg";
+    }
+
+    private static String colour(int i) {
+        return new String(COLOURS[i % COLOURS.length]);
+    }
+}
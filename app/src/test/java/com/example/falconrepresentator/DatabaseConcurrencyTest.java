@@ -0,0 +1,152 @@
+package com.example.falconrepresentator;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads the catalog while another thread writes it the way sync does, and checks that a read
+ * completes while a sync transaction is held open and never sees a chunk that is only half written.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class DatabaseConcurrencyTest {
+
+    private static final int SYNC_PRODUCTS = 6000;
+    private static final int CHUNK_PRODUCTS = 500;
+    private static final int VARIANTS_PER_PRODUCT = 3;
+
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.mainThreadWriteCheckEnabled = false;
+        dbHelper = new DatabaseHelper(RuntimeEnvironment.getApplication());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void catalogReads_doNotWaitForAnOpenSyncTransaction() throws Exception {
+        assertTrue(dbHelper.getWritableDatabase().isWriteAheadLoggingEnabled());
+
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch readDone = new CountDownLatch(1);
+        AtomicBoolean readFinishedWhileHeld = new AtomicBoolean();
+        AtomicReference<Throwable> writerError = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                writeChunk(db, 0);
+                holding.countDown();
+                // The transaction stays open until the read is done, so a read that needed the
+                // write lock could never finish in here.
+                readFinishedWhileHeld.set(readDone.await(30, TimeUnit.SECONDS));
+                db.setTransactionSuccessful();
+            } catch (Throwable t) {
+                writerError.set(t);
+            } finally {
+                db.endTransaction();
+            }
+        });
+
+        writer.start();
+        holding.await();
+        int count = dbHelper.countProducts(0, 0);
+        dbHelper.getProductsPage(0, 0, null, 0, CatalogPager.PAGE_SIZE);
+        readDone.countDown();
+        writer.join();
+
+        assertNull(writerError.get());
+        assertTrue("Read waited for the sync transaction to commit", readFinishedWhileHeld.get());
+        assertEquals("Reader saw uncommitted rows", 0, count);
+        assertEquals(CHUNK_PRODUCTS, dbHelper.countProducts(0, 0));
+    }
+
+    @Test
+    public void catalogReads_stayConsistentDuringSync() throws Exception {
+        AtomicReference<Throwable> writerError = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                simulateFullSync();
+            } catch (Throwable t) {
+                writerError.set(t);
+            }
+        });
+
+        int reads = 0;
+        writer.start();
+        while (writer.isAlive()) {
+            int count = dbHelper.countProducts(0, 0);
+            dbHelper.getProductsPage(0, 0, null, 0, CatalogPager.PAGE_SIZE);
+            reads++;
+
+            assertEquals("Reader saw a partially committed chunk", 0, count % CHUNK_PRODUCTS);
+        }
+        writer.join();
+
+        assertNull(writerError.get());
+        assertEquals(SYNC_PRODUCTS, dbHelper.countProducts(0, 0));
+        assertTrue("No reads overlapped the sync", reads > 1);
+    }
+
+    // Writes the catalog the way product sync does: one committed transaction per chunk.
+    private void simulateFullSync() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        for (int chunkStart = 0; chunkStart < SYNC_PRODUCTS; chunkStart += CHUNK_PRODUCTS) {
+            writeChunk(db, chunkStart);
+        }
+        dbHelper.checkpointWal(db);
+    }
+
+    private void writeChunk(SQLiteDatabase db, int chunkStart) {
+        BulkIngest ingest = dbHelper.beginBulkIngest(db, "test_sync");
+        try {
+            SQLiteStatement product = ingest.prepareInsert(DatabaseHelper.TABLE_PRODUCTS, true,
+                    DatabaseHelper.COLUMN_ID, DatabaseHelper.COLUMN_PROD_SUB_CATEGORY_ID,
+                    DatabaseHelper.COLUMN_NAME, DatabaseHelper.COLUMN_PRICE);
+            SQLiteStatement variant = ingest.prepareInsert(DatabaseHelper.TABLE_VARIANTS, true,
+                    DatabaseHelper.COLUMN_VAR_ID, DatabaseHelper.COLUMN_VAR_ITEM_ID,
+                    DatabaseHelper.COLUMN_VAR_NAME, DatabaseHelper.COLUMN_VAR_PRICE);
+            for (int itemId = chunkStart + 1; itemId <= chunkStart + CHUNK_PRODUCTS; itemId++) {
+                product.bindLong(1, itemId);
+                product.bindLong(2, itemId % 20);
+                product.bindString(3, "Product " + itemId);
+                product.bindDouble(4, itemId);
+                ingest.insert(product);
+                for (int v = 0; v < VARIANTS_PER_PRODUCT; v++) {
+                    variant.bindLong(1, itemId * VARIANTS_PER_PRODUCT + v);
+                    variant.bindLong(2, itemId);
+                    variant.bindString(3, "Variant " + v);
+                    variant.bindDouble(4, itemId + v);
+                    ingest.insert(variant);
+                }
+            }
+            ingest.finish();
+        } finally {
+            ingest.close();
+        }
+    }
+}
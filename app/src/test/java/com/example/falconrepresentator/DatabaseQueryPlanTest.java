@@ -0,0 +1,130 @@
+package com.example.falconrepresentator;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Runs EXPLAIN QUERY PLAN over the keyed DatabaseHelper queries and fails if any of them
+ * falls back to scanning a whole table instead of using an index.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class DatabaseQueryPlanTest {
+
+    private DatabaseHelper dbHelper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.mainThreadWriteCheckEnabled = false;
+        dbHelper = new DatabaseHelper(RuntimeEnvironment.getApplication());
+        db = dbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void catalogLookups_useIndexes() {
+        assertNoTableScan(DatabaseHelper.SQL_SUB_CATEGORIES_FOR_MAIN, "1");
+        assertNoTableScan(DatabaseHelper.SQL_PRODUCT_BY_ID, "1");
+        assertNoTableScan(DatabaseHelper.SQL_VARIANTS_FOR_PRODUCT, "1");
+    }
+
+    @Test
+    public void pageVariants_readInItemOrder() {
+        assertNoTableScan(DatabaseHelper.buildVariantsForKeysetQuery(
+                DatabaseHelper.buildProductsPageQuery(0, 0, true)), "A", "A", "1", "40");
+        assertNoTableScan(DatabaseHelper.buildVariantsForKeysetQuery(
+                DatabaseHelper.buildProductsPageQuery(0, 1, false)), "1", "40");
+        assertNoSort(DatabaseHelper.buildVariantsForKeysetQuery(
+                DatabaseHelper.buildProductsPageQuery(0, 0, true)), "A", "A", "1", "40");
+    }
+
+    @Test
+    public void catalogPages_useIndexes() {
+        assertNoTableScan(DatabaseHelper.buildProductsPageQuery(0, 0, false), "40");
+        assertNoTableScan(DatabaseHelper.buildProductsPageQuery(0, 0, true), "A", "A", "1", "40");
+        assertNoTableScan(DatabaseHelper.buildProductsPageQuery(0, 1, true), "1", "A", "A", "1", "40");
+        assertNoTableScan(DatabaseHelper.buildProductsPageQuery(1, 0, false), "1", "40");
+        assertNoTableScan(DatabaseHelper.buildProductsPageQuery(1, 0, true), "1", "A", "A", "1", "40");
+        assertNoTableScan(DatabaseHelper.buildProductsPageQuery(0, 0, DatabaseHelper.KEYSET_AFTER_NULL_NAME), "1", "40");
+        assertNoTableScan(DatabaseHelper.buildProductsPageQuery(0, 1, DatabaseHelper.KEYSET_NAMED), "1", "40");
+    }
+
+    @Test
+    public void catalogPages_readInPageOrder() {
+        assertNoSort(DatabaseHelper.buildProductsPageQuery(0, 0, true), "A", "A", "1", "40");
+        assertNoSort(DatabaseHelper.buildProductsPageQuery(0, 1, true), "1", "A", "A", "1", "40");
+        assertNoSort(DatabaseHelper.buildProductsPageQuery(1, 0, false), "1", "40");
+        assertNoSort(DatabaseHelper.buildProductsPageQuery(1, 0, true), "1", "A", "A", "1", "40");
+        assertNoSort(DatabaseHelper.buildProductsPageQuery(1, 0, DatabaseHelper.KEYSET_AFTER_NULL_NAME), "1", "1", "40");
+        assertNoSort(DatabaseHelper.buildProductsPageQuery(0, 0, DatabaseHelper.KEYSET_NAMED), "40");
+    }
+
+    @Test
+    public void orderLookups_useIndexes() {
+        assertNoTableScan(DatabaseHelper.SQL_ORDER_BY_ID, "1");
+        assertNoTableScan(DatabaseHelper.SQL_ORDER_ITEMS_FOR_ORDER, "1");
+        assertNoTableScan(DatabaseHelper.SQL_CUSTOMER_BY_ID, "1");
+        assertNoTableScan(DatabaseHelper.SQL_PENDING_ORDERS_NEWEST_FIRST, "pending");
+        assertNoTableScan(DatabaseHelper.SQL_PENDING_ORDERS_WITH_CUSTOMERS, "pending");
+        assertNoTableScan(DatabaseHelper.SQL_PENDING_ORDER_ITEMS, "pending");
+        assertNoTableScan(DatabaseHelper.SQL_PENDING_UPLOAD_SNAPSHOT, "pending");
+        assertNoTableScan(DatabaseHelper.SQL_PENDING_ORDERS, "pending");
+        assertNoTableScan(DatabaseHelper.SQL_HAS_PENDING_ORDERS);
+        assertNoTableScan("DELETE FROM " + DatabaseHelper.TABLE_OFFLINE_ORDER_ITEMS +
+                " WHERE " + DatabaseHelper.COLUMN_ITEM_ORDER_ID + " IN (?,?)", "1", "2");
+    }
+
+    @Test
+    public void customersByRoute_useIndex() {
+        assertNoTableScan("SELECT * FROM " + DatabaseHelper.TABLE_CUSTOMERS +
+                " WHERE " + DatabaseHelper.COLUMN_CUST_ROUTE_ID + " = ? ORDER BY " + DatabaseHelper.COLUMN_CUST_SHOP_NAME, "1");
+    }
+
+    private void assertNoTableScan(String sql, String... args) {
+        List<String> plan = explain(sql, args);
+        for (String detail : plan) {
+            // Older SQLite prints "SCAN TABLE x", newer prints "SCAN x". Index-backed scans are fine.
+            if (detail.startsWith("SCAN") && !detail.contains("INDEX")) {
+                fail("Query falls back to a table scan (" + detail + "):\n" + sql + "\nPlan: " + plan);
+            }
+        }
+    }
+
+    private void assertNoSort(String sql, String... args) {
+        List<String> plan = explain(sql, args);
+        for (String detail : plan) {
+            if (detail.contains("TEMP B-TREE")) {
+                fail("Query sorts its rows instead of reading them in order (" + detail + "):\n" + sql + "\nPlan: " + plan);
+            }
+        }
+    }
+
+    private List<String> explain(String sql, String... args) {
+        List<String> details = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args)) {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                details.add(cursor.getString(detailIndex));
+            }
+        }
+        return details;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.falconrepresentator;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives ImageDownloadPipeline with a fake downloader: order, retries, failures and the
+ * in-flight limit.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ImageDownloadPipelineTest {
+
+    @Test
+    public void run_downloadsHighestPriorityFirst_productsBeforeVariants() throws Exception {
+        List<ImageDownloadPipeline.Item> items = new ArrayList<>();
+        items.add(item(1, "variant_", 0));
+        items.add(item(2, "product_", 0));
+        items.add(item(3, "variant_", 5));
+        items.add(item(4, "product_", 1));
+        items.add(item(5, "product_", 5));
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        ImageDownloadPipeline pipeline = new ImageDownloadPipeline(1, 1000, (item, timeoutMs) -> {
+            order.add(item.prefix + item.id);
+            // Product 2's image was already stored, so nothing was fetched for it.
+            return item.id == 2 ? 0 : 10;
+        });
+        ImageDownloadPipeline.Stats stats = pipeline.run(items, new CountingListener());
+
+        assertEquals(5, stats.succeeded);
+        assertEquals(40, stats.bytes);
+        assertEquals(Arrays.asList("product_5", "variant_3", "product_4", "product_2", "variant_1"), order);
+    }
+
+    @Test
+    public void run_retriesFailuresThenGivesUp() throws Exception {
+        List<ImageDownloadPipeline.Item> items = new ArrayList<>();
+        items.add(item(1, "product_", 0)); // fails once, then downloads
+        items.add(item(2, "product_", 0)); // always times out
+
+        AtomicInteger firstAttempts = new AtomicInteger();
+        ImageDownloadPipeline pipeline = new ImageDownloadPipeline(2, 1000, (item, timeoutMs) -> {
+            if (item.id == 2) throw new TimeoutException();
+            if (firstAttempts.incrementAndGet() == 1) throw new IOException("connection reset");
+            return 1L;
+        });
+        CountingListener listener = new CountingListener();
+        ImageDownloadPipeline.Stats stats = pipeline.run(items, listener);
+
+        assertEquals(1, stats.succeeded);
+        assertEquals(1, stats.failed);
+        assertEquals(2, items.get(0).attempts);
+        assertEquals(3, items.get(1).attempts);
+        assertEquals(1, listener.downloaded.get());
+        assertEquals(1, listener.failed.get());
+    }
+
+    @Test
+    public void run_doesNotRetryUnavailableImages() throws Exception {
+        List<ImageDownloadPipeline.Item> items = new ArrayList<>();
+        items.add(item(1, "product_", 0));
+        items.add(item(2, "product_", 0)); // the server answers 404
+
+        ImageDownloadPipeline pipeline = new ImageDownloadPipeline(2, 1000, (item, timeoutMs) -> {
+            if (item.id == 2) throw new ImageDownloadPipeline.UnavailableImageException("HTTP 404");
+            return 1L;
+        });
+        CountingListener listener = new CountingListener();
+        ImageDownloadPipeline.Stats stats = pipeline.run(items, listener);
+
+        assertEquals(1, stats.succeeded);
+        assertEquals(0, stats.failed);
+        assertEquals(1, stats.unavailable);
+        assertEquals(1, items.get(1).attempts);
+        assertEquals(1, listener.failed.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void run_finishesWhenListenerThrows() throws Exception {
+        List<ImageDownloadPipeline.Item> items = new ArrayList<>();
+        items.add(item(1, "product_", 0));
+        items.add(item(2, "product_", 0));
+
+        ImageDownloadPipeline pipeline = new ImageDownloadPipeline(2, 1000, (item, timeoutMs) -> {
+            if (item.id == 2) throw new IOException("not found");
+            return 1L;
+        });
+        ImageDownloadPipeline.Stats stats = pipeline.run(items, new ImageDownloadPipeline.Listener() {
+            @Override
+            public void onDownloaded(ImageDownloadPipeline.Item item) {
+                throw new IllegalStateException("listener bug");
+            }
+
+            @Override
+            public void onFailed(ImageDownloadPipeline.Item item) {
+                throw new IllegalStateException("listener bug");
+            }
+        });
+
+        assertEquals(1, stats.succeeded);
+        assertEquals(1, stats.failed);
+    }
+
+    @Test
+    public void run_neverExceedsThreadCount() throws Exception {
+        List<ImageDownloadPipeline.Item> items = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            items.add(item(i, "product_", i % 3));
+        }
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ImageDownloadPipeline pipeline = new ImageDownloadPipeline(3, 1000, (item, timeoutMs) -> {
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            Thread.sleep(2);
+            inFlight.decrementAndGet();
+            return 1L;
+        });
+        ImageDownloadPipeline.Stats stats = pipeline.run(items, new CountingListener());
+
+        assertEquals(40, stats.succeeded);
+        assertTrue("Saw " + maxInFlight.get() + " downloads at once", maxInFlight.get() <= 3);
+        assertTrue(stats.imagesPerSecond() > 0);
+    }
+
+    private static ImageDownloadPipeline.Item item(int id, String prefix, double priority) {
+        ImageDownloadPipeline.Item item = new ImageDownloadPipeline.Item(id, prefix, "https://example.com/" + id + ".jpg", 0, 0);
+        item.priority = priority;
+        return item;
+    }
+
+    private static final class CountingListener implements ImageDownloadPipeline.Listener {
+        final AtomicInteger downloaded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        @Override
+        public void onDownloaded(ImageDownloadPipeline.Item item) {
+            downloaded.incrementAndGet();
+        }
+
+        @Override
+        public void onFailed(ImageDownloadPipeline.Item item) {
+            failed.incrementAndGet();
+        }
+    }
+}
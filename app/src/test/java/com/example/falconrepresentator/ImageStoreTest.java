@@ -0,0 +1,166 @@
+package com.example.falconrepresentator;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stores the same bytes under two URLs for three catalog rows and checks they end up as one
+ * file, found again by URL, and released only once the last row showing it is deleted; and that
+ * image files from before the store go once no row shows them.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class ImageStoreTest {
+
+    private static final String URL_A = "https://example.com/images/a.jpg";
+    private static final String URL_B = "https://example.com/images/copy-of-a.jpg";
+    private static final byte[] BYTES = "not really a jpeg".getBytes(StandardCharsets.US_ASCII);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DatabaseHelper dbHelper;
+    private ImageStore store;
+    private File directory;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.mainThreadWriteCheckEnabled = false;
+        dbHelper = new DatabaseHelper(RuntimeEnvironment.getApplication());
+        directory = new File(folder.getRoot(), "blobs");
+        store = new ImageStore(dbHelper, directory);
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        insertProduct(db, 1, URL_A);
+        insertVariant(db, 10, 1, URL_A);
+        insertProduct(db, 2, URL_B);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void identicalImages_areStoredOnceAndReleasedWithTheirLastRow() throws Exception {
+        ImageStore.Blob first = store.add(out -> out.write(BYTES));
+        assertTrue(dbHelper.attachImageBlob(URL_A, first, Arrays.asList(
+                new DatabaseHelper.MissingImage("product_", 1, URL_A, null, 0, 0),
+                new DatabaseHelper.MissingImage("variant_", 10, URL_A, null, 0, 0))));
+
+        // Another URL serving the same bytes resolves to the blob already stored.
+        ImageStore.Blob second = store.add(out -> out.write(BYTES));
+        assertEquals(first.hash, second.hash);
+        assertEquals(first.path, second.path);
+        assertTrue(dbHelper.attachImageBlob(URL_B, second, Collections.singletonList(
+                new DatabaseHelper.MissingImage("product_", 2, URL_B, null, 0, 0))));
+
+        assertEquals(1, directory.listFiles().length);
+        assertEquals(3, countRefs(first.hash));
+        assertNotNull(store.find(URL_A));
+        assertNotNull(store.find(URL_B));
+        assertEquals(first.path, dbHelper.getProductById(1).getLocalPath());
+
+        // Product 2 still shows the image, so deleting product 1 releases nothing.
+        deleteProduct(1);
+        assertEquals(0, store.collectGarbage());
+        assertEquals(1, countRefs(first.hash));
+        assertTrue(new File(first.path).exists());
+
+        deleteProduct(2);
+        assertEquals(1, store.collectGarbage());
+        assertEquals(0, countRefs(first.hash));
+        assertFalse(new File(first.path).exists());
+        assertNull(store.find(URL_A));
+        assertNull(store.find(URL_B));
+    }
+
+    @Test
+    public void attach_refusesBlobReleasedSinceItWasFound() throws Exception {
+        ImageStore.Blob blob = store.add(out -> out.write(BYTES));
+        assertTrue(new File(blob.path).delete());
+
+        assertFalse(dbHelper.attachImageBlob(URL_A, blob, Collections.singletonList(
+                new DatabaseHelper.MissingImage("product_", 1, URL_A, null, 0, 0))));
+        assertEquals(0, countRefs(blob.hash));
+        assertNull(dbHelper.getProductById(1).getLocalPath());
+    }
+
+    @Test
+    public void olderImages_areDeletedOnceNoRowShowsThem() throws Exception {
+        File shown = new File(folder.getRoot(), "product_1.jpg");
+        File deleted = new File(folder.getRoot(), "product_3.jpg");
+        File deletedThumb = new File(folder.getRoot(), "product_3_thumb.jpg");
+        assertTrue(shown.createNewFile());
+        assertTrue(deleted.createNewFile());
+        assertTrue(deletedThumb.createNewFile());
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_LOCAL_PATH, shown.getAbsolutePath());
+        dbHelper.getWritableDatabase().update(DatabaseHelper.TABLE_PRODUCTS, values,
+                DatabaseHelper.COLUMN_ID + "=?", new String[]{"1"});
+
+        store.collectGarbage();
+        assertTrue(shown.exists());
+        assertFalse(deleted.exists());
+        assertFalse(deletedThumb.exists());
+    }
+
+    // How many products and variants show the blob; 0 once it has been released.
+    private int countRefs(String hash) {
+        Cursor cursor = null;
+        try {
+            cursor = dbHelper.getReadableDatabase().rawQuery("SELECT COUNT(*) FROM " + DatabaseHelper.TABLE_IMAGE_REFS +
+                    " WHERE " + DatabaseHelper.COLUMN_REF_HASH + " = ?", new String[]{hash});
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static void insertProduct(SQLiteDatabase db, int id, String url) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_ID, id);
+        values.put(DatabaseHelper.COLUMN_NAME, "Product " + id);
+        values.put(DatabaseHelper.COLUMN_IMAGE_URL, url);
+        db.insertOrThrow(DatabaseHelper.TABLE_PRODUCTS, null, values);
+    }
+
+    private static void insertVariant(SQLiteDatabase db, int id, int productId, String url) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_VAR_ID, id);
+        values.put(DatabaseHelper.COLUMN_VAR_ITEM_ID, productId);
+        values.put(DatabaseHelper.COLUMN_VAR_IMAGE_URL, url);
+        db.insertOrThrow(DatabaseHelper.TABLE_VARIANTS, null, values);
+    }
+
+    private void deleteProduct(int id) {
+        String[] args = new String[]{String.valueOf(id)};
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.delete(DatabaseHelper.TABLE_PRODUCTS, DatabaseHelper.COLUMN_ID + "=?", args);
+        db.delete(DatabaseHelper.TABLE_VARIANTS, DatabaseHelper.COLUMN_VAR_ITEM_ID + "=?", args);
+    }
+}
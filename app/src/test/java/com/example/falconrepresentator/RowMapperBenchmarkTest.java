@@ -0,0 +1,135 @@
+package com.example.falconrepresentator;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.falconrepresentator.Models.Product;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Maps a 20k-product catalog with the old per-row column lookups and with
+ * DatabaseHelper.PRODUCT_MAPPER and checks both read the same products.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class RowMapperBenchmarkTest {
+
+    private static final int PRODUCTS = 20_000;
+    private static final String QUERY = "SELECT * FROM " + DatabaseHelper.TABLE_PRODUCTS +
+            " ORDER BY " + DatabaseHelper.COLUMN_NAME + " ASC";
+
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.mainThreadWriteCheckEnabled = false;
+        dbHelper = new DatabaseHelper(RuntimeEnvironment.getApplication());
+        insertCatalog(dbHelper.getWritableDatabase());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void productMapper_readsSameRowsAsPerRowLookups() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        List<Product> before = readPerRow(db);
+        List<Product> after = readWithMapper(db);
+
+        assertEquals(PRODUCTS, before.size());
+        assertEquals(before.size(), after.size());
+        for (int i = 0; i < before.size(); i++) {
+            Product expected = before.get(i);
+            Product actual = after.get(i);
+            assertEquals(expected.getItemId(), actual.getItemId());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getPrice(), actual.getPrice(), 0);
+            assertEquals(expected.getBrandName(), actual.getBrandName());
+            assertEquals(expected.getQtyPerBox(), actual.getQtyPerBox());
+            assertEquals(expected.getSku(), actual.getSku());
+        }
+    }
+
+    // How DatabaseHelper mapped products before the row mappers: every column looked up on every row.
+    private static List<Product> readPerRow(SQLiteDatabase db) {
+        List<Product> products = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(QUERY, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    products.add(new Product(
+                            cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)),
+                            cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_NAME)),
+                            cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PRICE)),
+                            cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DESCRIPTION)),
+                            cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_IMAGE_URL)),
+                            cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_LOCAL_PATH)),
+                            cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_BRAND_NAME)),
+                            cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_QTY_PER_BOX)),
+                            cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_BULK_PRICE)),
+                            cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CARTOON_PCS)),
+                            cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_BULK_DESCRIPTION)),
+                            cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_SKU))));
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        return products;
+    }
+
+    private static List<Product> readWithMapper(SQLiteDatabase db) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(QUERY, null);
+            return RowMapper.readAll(cursor, DatabaseHelper.PRODUCT_MAPPER, new ArrayList<Product>());
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private void insertCatalog(SQLiteDatabase db) {
+        BulkIngest ingest = dbHelper.beginBulkIngest(db, "benchmark");
+        try {
+            SQLiteStatement product = ingest.prepareInsert(DatabaseHelper.TABLE_PRODUCTS, true,
+                    DatabaseHelper.COLUMN_ID, DatabaseHelper.COLUMN_PROD_SUB_CATEGORY_ID,
+                    DatabaseHelper.COLUMN_NAME, DatabaseHelper.COLUMN_PRICE, DatabaseHelper.COLUMN_DESCRIPTION,
+                    DatabaseHelper.COLUMN_IMAGE_URL, DatabaseHelper.COLUMN_BRAND_NAME,
+                    DatabaseHelper.COLUMN_QTY_PER_BOX, DatabaseHelper.COLUMN_BULK_PRICE, DatabaseHelper.COLUMN_SKU);
+            for (int itemId = 1; itemId <= PRODUCTS; itemId++) {
+                product.bindLong(1, itemId);
+                product.bindLong(2, itemId % 40);
+                product.bindString(3, "Product " + itemId);
+                product.bindDouble(4, itemId * 1.5);
+                product.bindString(5, "Description of product " + itemId);
+                product.bindString(6, "https://example.com/images/" + itemId + ".jpg");
+                product.bindString(7, "Brand " + (itemId % 25));
+                product.bindLong(8, 12);
+                product.bindDouble(9, itemId * 1.25);
+                product.bindString(10, "SKU-" + itemId);
+                ingest.insert(product);
+            }
+            ingest.finish();
+        } finally {
+            ingest.close();
+        }
+    }
+}
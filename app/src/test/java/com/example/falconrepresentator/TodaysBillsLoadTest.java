@@ -0,0 +1,89 @@
+package com.example.falconrepresentator;
+
+import android.database.sqlite.SQLiteCursor;
+
+import com.example.falconrepresentator.Models.OrderManager;
+import com.example.falconrepresentator.Models.ProductVariant;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that getTodaysPendingOrders runs a fixed number of queries however many bills
+ * are pending, and still assembles each bill's customer and items correctly.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class TodaysBillsLoadTest {
+
+    private int queryCount;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.mainThreadWriteCheckEnabled = false;
+        dbHelper = new DatabaseHelper(RuntimeEnvironment.getApplication(), (db, driver, editTable, query) -> {
+            queryCount++;
+            return new SQLiteCursor(driver, editTable, query);
+        });
+        dbHelper.insertSyncedCustomer(1, "Shop One", "0771234567", "Main Street", 0, 1);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void queryCount_doesNotGrowWithBills() {
+        addBills(5);
+        int queriesForFive = countQueries();
+
+        addBills(75);
+        int queriesForEighty = countQueries();
+
+        assertEquals(queriesForFive, queriesForEighty);
+    }
+
+    @Test
+    public void assemblesCustomersAndItems() {
+        addBills(3);
+        dbHelper.saveOrder(99, 1, "2026-01-01", 10.0, 0, new ArrayList<>());
+
+        List<OrderManager.OrderDetails> bills = dbHelper.getTodaysPendingOrders();
+
+        assertEquals(4, bills.size());
+        // Newest first; the last bill points at a customer that does not exist.
+        assertEquals("Customer Not Found", bills.get(0).getCustomer().getShopName());
+        assertEquals(0, bills.get(0).getItems().size());
+        for (int i = 1; i < bills.size(); i++) {
+            assertEquals("Shop One", bills.get(i).getCustomer().getShopName());
+            assertEquals(2, bills.get(i).getItems().size());
+        }
+    }
+
+    private int countQueries() {
+        queryCount = 0;
+        dbHelper.getTodaysPendingOrders();
+        return queryCount;
+    }
+
+    private void addBills(int count) {
+        for (int i = 0; i < count; i++) {
+            List<OrderManager.OrderItem> items = new ArrayList<>();
+            items.add(new OrderManager.OrderItem(new ProductVariant(1, 1, "Item A", "A", 100.0, ""), 2));
+            items.add(new OrderManager.OrderItem(new ProductVariant(2, 1, "Item B", "B", 50.0, ""), 1));
+            dbHelper.saveOrder(1, 1, "2026-01-01", 250.0, 0, items);
+        }
+    }
+}